@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.sshd.common.file.virtualfs.VirtualFileSystemFactory;
+import org.apache.sshd.scp.server.ScpCommandFactory;
+import org.apache.sshd.server.Environment;
+import org.apache.sshd.server.ExitCallback;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.auth.pubkey.AcceptAllPublickeyAuthenticator;
+import org.apache.sshd.server.channel.ChannelSession;
+import org.apache.sshd.server.command.Command;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
+import org.codehaus.plexus.util.FileUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * An SSH server on localhost which stands in for a load generator. SCP transfers and bundles go to a temporary
+ * directory which plays the home directory of the remote user, so the benchmarks measure the SSH and SCP code paths of
+ * the plugin without the network and disk of an EC2 instance.
+ */
+class EmbeddedSshServer implements Closeable {
+
+    private static final String USER = "ec2-user";
+    private static final String UNPACK_BUNDLE_COMMAND = "tar xzf -";
+
+    private final File home;
+    private final File privateKey;
+    private final SshServer server;
+
+    EmbeddedSshServer() throws IOException {
+        this.home = Files.createTempDirectory("gatling-bench-home").toFile();
+        this.privateKey = File.createTempFile("gatling-bench-key", ".pem");
+        writePrivateKey(this.privateKey);
+
+        this.server = SshServer.setUpDefaultServer();
+        this.server.setHost("localhost");
+        this.server.setPort(0);
+        this.server.setKeyPairProvider(new SimpleGeneratorHostKeyProvider());
+        this.server.setPublickeyAuthenticator(AcceptAllPublickeyAuthenticator.INSTANCE);
+        this.server.setFileSystemFactory(new VirtualFileSystemFactory(this.home.toPath()));
+        this.server.setCommandFactory(new ScpCommandFactory.Builder()
+                .withDelegate((channel, command) -> {
+                    if (!UNPACK_BUNDLE_COMMAND.equals(command)) {
+                        throw new IOException("Unsupported command: " + command);
+                    }
+                    return new UnpackBundleCommand(this.home);
+                })
+                .build());
+        this.server.start();
+        System.out.format("Embedded SSH server listening on port %d with home directory %s%n", this.server.getPort(), this.home);
+    }
+
+    public SshClient.HostInfo getHostInfo() {
+        return new SshClient.HostInfo("localhost", this.server.getPort(), USER, this.privateKey.getAbsolutePath());
+    }
+
+    public File getHome() {
+        return this.home;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.server.stop(true);
+        FileUtils.deleteDirectory(this.home);
+        Files.deleteIfExists(this.privateKey.toPath());
+    }
+
+    private static void writePrivateKey(final File file) throws IOException {
+        try {
+            final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            try (JcaPEMWriter writer = new JcaPEMWriter(new FileWriter(file))) {
+                writer.writeObject(generator.generateKeyPair().getPrivate());
+            }
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Unpacks a bundle like tar on a load generator, but in the server process. A forked tar doesn't get to see the end
+     * of its input through the process shell of the server.
+     */
+    private static class UnpackBundleCommand implements Command, Runnable {
+        private final File home;
+        private InputStream in;
+        private OutputStream err;
+        private ExitCallback exitCallback;
+
+        UnpackBundleCommand(final File home) {
+            this.home = home;
+        }
+
+        @Override
+        public void setInputStream(final InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public void setOutputStream(final OutputStream out) {
+        }
+
+        @Override
+        public void setErrorStream(final OutputStream err) {
+            this.err = err;
+        }
+
+        @Override
+        public void setExitCallback(final ExitCallback exitCallback) {
+            this.exitCallback = exitCallback;
+        }
+
+        @Override
+        public void start(final ChannelSession channel, final Environment env) {
+            new Thread(this, "unpack-bundle").start();
+        }
+
+        @Override
+        public void run() {
+            try (TarArchiveInputStream tar = new TarArchiveInputStream(new GzipCompressorInputStream(this.in))) {
+                TarArchiveEntry entry;
+                while ((entry = tar.getNextTarEntry()) != null) {
+                    final File file = new File(this.home, entry.getName());
+                    if (entry.isDirectory()) {
+                        file.mkdirs();
+                    } else {
+                        file.getParentFile().mkdirs();
+                        Files.copy(tar, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+                this.exitCallback.onExit(0);
+            } catch (final IOException e) {
+                try {
+                    this.err.write((e + "\n").getBytes(StandardCharsets.UTF_8));
+                    this.err.flush();
+                } catch (final IOException ignored) {
+                }
+                this.exitCallback.onExit(1, e.getMessage());
+            }
+        }
+
+        @Override
+        public void destroy(final ChannelSession channel) {
+        }
+    }
+}
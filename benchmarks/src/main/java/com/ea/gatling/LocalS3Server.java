@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import com.amazonaws.util.BinaryUtils;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.Executors;
+
+/**
+ * A minimal S3 endpoint on localhost which accepts and discards PUT object requests. It answers with the MD5 of the
+ * content as ETag, which the S3 client checks, so uploads complete like against S3 without leaving the machine.
+ */
+class LocalS3Server implements Closeable {
+
+    private static final String STREAMING_PAYLOAD = "STREAMING-AWS4-HMAC-SHA256-PAYLOAD";
+
+    private final HttpServer server;
+
+    LocalS3Server() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.server.createContext("/", this::handle);
+        this.server.setExecutor(Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, "local-s3");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        this.server.start();
+    }
+
+    public String getEndpoint() {
+        return "http://localhost:" + this.server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        this.server.stop(0);
+    }
+
+    /**
+     * The S3 client signs every chunk of the body when it talks plain HTTP. Each chunk is preceded by a line with its
+     * size in hex and its signature and followed by a line break, and the last chunk is empty.
+     */
+    private void readChunked(final InputStream is, final MessageDigest md5) throws IOException {
+        while (true) {
+            final String header = readLine(is);
+            final long size = Long.parseLong(header.substring(0, header.indexOf(';') < 0 ? header.length() : header.indexOf(';')), 16);
+            this.read(is, md5, size);
+            readLine(is);
+            if (size == 0) {
+                return;
+            }
+        }
+    }
+
+    private void read(final InputStream is, final MessageDigest md5, final long size) throws IOException {
+        final byte[] buffer = new byte[64 * 1024];
+        long remaining = size;
+        int read;
+        while (remaining > 0 && (read = is.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+            md5.update(buffer, 0, read);
+            remaining -= read;
+        }
+    }
+
+    private static String readLine(final InputStream is) throws IOException {
+        final StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = is.read()) != -1 && c != '\n') {
+            if (c != '\r') {
+                line.append((char) c);
+            }
+        }
+        return line.toString();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try {
+            final MessageDigest md5 = MessageDigest.getInstance("MD5");
+            try (InputStream is = exchange.getRequestBody()) {
+                if (STREAMING_PAYLOAD.equals(exchange.getRequestHeaders().getFirst("x-amz-content-sha256"))) {
+                    this.readChunked(is, md5);
+                } else {
+                    this.read(is, md5, Long.MAX_VALUE);
+                }
+            }
+            if ("PUT".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().add("ETag", "\"" + BinaryUtils.toHex(md5.digest()) + "\"");
+            }
+            exchange.sendResponseHeaders(200, -1);
+        } catch (final NoSuchAlgorithmException e) {
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+}
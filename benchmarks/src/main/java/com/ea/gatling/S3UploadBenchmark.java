@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.amazonaws.services.s3.transfer.TransferManager;
+import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
+import org.codehaus.plexus.util.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Uploading a Gatling report, i.e. many small and compressible files, through S3ReportUploader at different
+ * concurrency levels. The uploads go to a local stand-in for S3, so the benchmark measures the client side: gzip,
+ * request signing, the transfer manager and the thread pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class S3UploadBenchmark {
+
+    private static final String BUCKET = "gatling-bench";
+    private static final int REPORT_FILES = 300;
+    private static final long TIMEOUT_MS = 60 * 1000;
+
+    @Param({"4", "16", "64"})
+    private int concurrency;
+
+    private LocalS3Server server;
+    private TransferManager transferManager;
+    private File reportDirectory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.server = new LocalS3Server();
+        final AmazonS3 s3Client = AmazonS3ClientBuilder.standard()
+                .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(this.server.getEndpoint(), "us-east-1"))
+                .withPathStyleAccessEnabled(true)
+                .withCredentials(new AWSStaticCredentialsProvider(new BasicAWSCredentials("bench", "bench")))
+                .build();
+        this.transferManager = TransferManagerBuilder.standard().withS3Client(s3Client).build();
+
+        this.reportDirectory = Files.createTempDirectory("gatling-bench-report").toFile();
+        final File jsDirectory = new File(this.reportDirectory, "js");
+        jsDirectory.mkdirs();
+        for (int i = 0; i < REPORT_FILES; i++) {
+            final File file = i % 3 == 0 ? new File(jsDirectory, "stats-" + i + ".js") : new File(this.reportDirectory, "req_" + i + ".html");
+            try (OutputStream os = new FileOutputStream(file)) {
+                final StringBuilder content = new StringBuilder();
+                while (content.length() < 32 * 1024) {
+                    content.append("<tr><td class=\"value\">").append(content.length() % 997).append("</td></tr>\n");
+                }
+                os.write(content.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        this.transferManager.shutdownNow(true);
+        this.server.close();
+        FileUtils.deleteDirectory(this.reportDirectory);
+    }
+
+    @Benchmark
+    public List<String> uploadReport() {
+        return new S3ReportUploader(this.transferManager, this.concurrency, TIMEOUT_MS).upload(BUCKET, "bench/report", this.reportDirectory);
+    }
+}
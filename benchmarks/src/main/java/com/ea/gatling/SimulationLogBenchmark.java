@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing, merging and summarizing the simulation logs of several load generators, which the plugin does for every
+ * run before the report is generated. The logs are synthetic but shaped like Gatling's: a RUN header, USER start and
+ * end records, and REQUEST records with a few distinct request names and some failures.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SimulationLogBenchmark {
+
+    private static final String[] REQUEST_NAMES = {"login", "home", "search", "product", "add to cart", "checkout", "logout"};
+    private static final long SUMMARY_BUCKET_MS = 1000;
+
+    @Param({"4"})
+    private int hosts;
+
+    @Param({"250000"})
+    private int requestsPerHost;
+
+    private File directory;
+    private File[] logs;
+    private File mergedLog;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.directory = Files.createTempDirectory("gatling-bench-logs").toFile();
+        this.logs = new File[this.hosts];
+        for (int i = 0; i < this.hosts; i++) {
+            this.logs[i] = new File(this.directory, "simulation-" + i + ".log");
+            writeSyntheticLog(this.logs[i], i, this.requestsPerHost);
+        }
+        this.mergedLog = new File(this.directory, "simulation.log");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(this.directory);
+    }
+
+    @Benchmark
+    public void parse(final Blackhole blackhole) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(this.logs[0]), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                blackhole.consume(new SimulationLogRecord(line).getTimestamp());
+            }
+        }
+    }
+
+    @Benchmark
+    public long merge() throws IOException {
+        final SimulationLogMerger merger = new SimulationLogMerger();
+        for (int i = 0; i < this.logs.length; i++) {
+            merger.addInput(this.logs[i], i * 7);
+        }
+        merger.merge(this.mergedLog);
+        return merger.getMergedRecords();
+    }
+
+    @Benchmark
+    public SimulationLogSummary summarize() throws IOException {
+        return SimulationLogSummary.summarize(this.logs[0], SUMMARY_BUCKET_MS);
+    }
+
+    /**
+     * Write a simulation log of one load generator. Users run a fixed sequence of requests, and every load generator
+     * starts its users at slightly different times, so merging has to interleave the logs.
+     */
+    static void writeSyntheticLog(final File file, final int host, final int requests) throws IOException {
+        final Random random = new Random(host);
+        final long startMs = 1500000000000L + host * 13;
+
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            writer.write(String.join("\t", SimulationLogRecord.RUN, "com.example.BenchSimulation", "benchsimulation", "benchsimulation-" + startMs,
+                    Long.toString(startMs), " ", "2.0"));
+            writer.write('\n');
+
+            long timeMs = startMs;
+            for (int request = 0, user = 0; request < requests; user++) {
+                final String userId = host + "-" + user;
+                writer.write(String.join("\t", SimulationLogRecord.USER, "shop", userId, "START", Long.toString(timeMs), Long.toString(timeMs)));
+                writer.write('\n');
+                for (int i = 0; i < REQUEST_NAMES.length && request < requests; i++, request++) {
+                    final long endMs = timeMs + 5 + random.nextInt(200);
+                    final boolean ok = random.nextInt(100) != 0;
+                    writer.write(String.join("\t", SimulationLogRecord.REQUEST, "shop", userId, "", REQUEST_NAMES[i],
+                            Long.toString(timeMs), Long.toString(endMs), ok ? "OK" : "KO", ok ? " " : "status.find.is(200), but actually found 503"));
+                    writer.write('\n');
+                    timeMs = endMs;
+                }
+                writer.write(String.join("\t", SimulationLogRecord.USER, "shop", userId, "END", Long.toString(timeMs), Long.toString(timeMs)));
+                writer.write('\n');
+                // Users overlap, so timestamps only roughly increase.
+                timeMs -= random.nextInt(500);
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import net.schmizz.sshj.SSHClient;
+import org.codehaus.plexus.util.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the SSH handshake compared to reusing a pooled connection, and of uploading many small files one by one over
+ * SCP compared to a single tar bundle, e.g. the simulation sources and data files of a test.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SshConnectionBenchmark {
+
+    private static final int SMALL_FILES = 200;
+    private static final int SMALL_FILE_SIZE = 4 * 1024;
+    /**
+     * Remote directory of the uploaded files. Bundles are unpacked relative to the home directory of the server.
+     */
+    private static final String REMOTE_DIRECTORY = "bench-upload";
+
+    private EmbeddedSshServer server;
+    private SshClient.HostInfo hostInfo;
+    private File localDirectory;
+    private List<SshClient.FromTo> fromTos;
+    private List<AssetManifest.Entry> bundleEntries;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.server = new EmbeddedSshServer();
+        this.hostInfo = this.server.getHostInfo();
+        this.localDirectory = Files.createTempDirectory("gatling-bench-files").toFile();
+        new File(this.server.getHome(), REMOTE_DIRECTORY).mkdirs();
+
+        this.fromTos = new ArrayList<>();
+        for (int i = 0; i < SMALL_FILES; i++) {
+            final File file = new File(this.localDirectory, String.format("data-%03d.csv", i));
+            try (OutputStream os = new FileOutputStream(file)) {
+                final StringBuilder content = new StringBuilder();
+                while (content.length() < SMALL_FILE_SIZE) {
+                    content.append("user").append(content.length()).append(",secret,").append(i).append('\n');
+                }
+                os.write(content.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            this.fromTos.add(new SshClient.FromTo(file.getAbsolutePath(), REMOTE_DIRECTORY));
+        }
+        this.bundleEntries = new ArrayList<>(AssetManifest.fromUploads(this.fromTos).getEntries());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        SshClient.getConnectionPool().closeAll();
+        this.server.close();
+        FileUtils.deleteDirectory(this.localDirectory);
+    }
+
+    @Benchmark
+    public SSHClient acquirePooled() throws IOException {
+        return SshClient.getConnectionPool().acquire(this.hostInfo);
+    }
+
+    @Benchmark
+    public void connectFresh() throws IOException {
+        final SshConnectionPool pool = new SshConnectionPool();
+        try {
+            pool.acquire(this.hostInfo);
+        } finally {
+            pool.closeAll();
+        }
+    }
+
+    @Benchmark
+    public void uploadPerFile() throws IOException {
+        SshClient.scpUpload(this.hostInfo, this.fromTos);
+    }
+
+    @Benchmark
+    public void uploadBundle() throws IOException {
+        SshClient.uploadBundle(this.hostInfo, this.bundleEntries, false);
+    }
+}
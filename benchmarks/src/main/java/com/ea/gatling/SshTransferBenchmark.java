@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of SCP uploads and downloads of a single file, e.g. the simulation jar to and the simulation log from a
+ * load generator. The file is random, so it doesn't compress over the SSH connection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SshTransferBenchmark {
+
+    private static final String REMOTE_FILE = "transfer.bin";
+
+    @Param({"1048576", "16777216"})
+    private int fileSize;
+
+    private EmbeddedSshServer server;
+    private SshClient.HostInfo hostInfo;
+    private File localFile;
+    private File downloadedFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.server = new EmbeddedSshServer();
+        this.hostInfo = this.server.getHostInfo();
+        this.localFile = File.createTempFile("gatling-bench-upload", ".bin");
+        this.downloadedFile = File.createTempFile("gatling-bench-download", ".bin");
+
+        final byte[] content = new byte[this.fileSize];
+        new Random(42).nextBytes(content);
+        try (OutputStream os = new FileOutputStream(this.localFile)) {
+            os.write(content);
+        }
+        // The download benchmark needs the file on the server.
+        SshClient.scpUpload(this.hostInfo, new SshClient.FromTo(this.localFile.getAbsolutePath(), REMOTE_FILE));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        SshClient.getConnectionPool().closeAll();
+        this.server.close();
+        Files.deleteIfExists(this.localFile.toPath());
+        Files.deleteIfExists(this.downloadedFile.toPath());
+    }
+
+    @Benchmark
+    public void scpUpload() throws IOException {
+        SshClient.scpUpload(this.hostInfo, new SshClient.FromTo(this.localFile.getAbsolutePath(), REMOTE_FILE));
+    }
+
+    @Benchmark
+    public long scpDownload() throws IOException {
+        SshClient.scpDownload(this.hostInfo, new SshClient.FromTo(REMOTE_FILE, this.downloadedFile.getAbsolutePath()));
+        return this.downloadedFile.length();
+    }
+}
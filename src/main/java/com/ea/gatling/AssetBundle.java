@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Packs the files of a load test into a single gzip compressed tar stream. Entry names are the remote paths relative
+ * to the home directory of the SSH user, so unpacking the stream in the home directory reproduces the same layout as
+ * copying each file individually.
+ */
+public class AssetBundle {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int EXECUTABLE_MODE = 0100755;
+
+    private long rawBytes;
+    private long compressedBytes;
+    private int fileCount;
+
+    /**
+     * Write all entries to the given stream. The stream is finished but not closed.
+     */
+    public void write(final Collection<AssetManifest.Entry> entries, final OutputStream outputStream) throws IOException {
+        final CountingOutputStream counter = new CountingOutputStream(outputStream);
+        // Most of the payload is either already compressed (jars) or small text files, so favour speed over ratio.
+        final GZIPOutputStream gzip = new GZIPOutputStream(counter, BUFFER_SIZE) {
+            {
+                this.def.setLevel(Deflater.BEST_SPEED);
+            }
+        };
+        final TarArchiveOutputStream tar = new TarArchiveOutputStream(gzip, BUFFER_SIZE);
+        tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+        tar.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+
+        for (final AssetManifest.Entry entry : entries) {
+            final TarArchiveEntry tarEntry = new TarArchiveEntry(entry.getLocalFile(), entry.getRemotePath());
+            if (entry.getLocalFile().canExecute()) {
+                tarEntry.setMode(EXECUTABLE_MODE);
+            }
+            tar.putArchiveEntry(tarEntry);
+            Files.copy(entry.getLocalFile().toPath(), tar);
+            tar.closeArchiveEntry();
+
+            this.rawBytes += entry.getLocalFile().length();
+            this.fileCount++;
+        }
+
+        tar.finish();
+        gzip.finish();
+        gzip.flush();
+        this.compressedBytes = counter.count;
+    }
+
+    /**
+     * @return The total size of all files written to the bundle.
+     */
+    public long getRawBytes() {
+        return this.rawBytes;
+    }
+
+    /**
+     * @return The size of the bundle after compression, i.e. the number of bytes sent over the wire.
+     */
+    public long getCompressedBytes() {
+        return this.compressedBytes;
+    }
+
+    public int getFileCount() {
+        return this.fileCount;
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(final OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            this.out.write(b);
+            this.count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            this.out.write(b, off, len);
+            this.count += len;
+        }
+    }
+}
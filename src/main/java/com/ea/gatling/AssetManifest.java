@@ -0,0 +1,209 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Content hashes of the files that make up a load test, keyed by their path on the load generator relative to the
+ * home directory of the SSH user. The text form uses the sha256sum format so it can be checked on the remote host.
+ */
+public class AssetManifest {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * All executors hash the same local files, so remember hashes by path, size and modification time.
+     */
+    private static final Map<String, String> HASH_CACHE = new ConcurrentHashMap<>();
+
+    private final Map<String, Entry> entries = new TreeMap<>();
+
+    /**
+     * Build a manifest for files about to be uploaded. Directories are expanded recursively the same way SCP would
+     * copy them, i.e. into a sub directory of the target with the same name.
+     */
+    public static AssetManifest fromUploads(final List<SshClient.FromTo> fromTos) throws IOException {
+        final AssetManifest manifest = new AssetManifest();
+        for (final SshClient.FromTo fromTo : fromTos) {
+            final File file = new File(fromTo.getFrom());
+            if (file.exists()) {
+                manifest.add(file, remotePath(fromTo.getTo(), file.getName()));
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * Parse a manifest in sha256sum format. Lines that do not look like manifest entries are ignored.
+     */
+    public static AssetManifest parse(final Collection<String> lines) {
+        final AssetManifest manifest = new AssetManifest();
+        for (final String line : lines) {
+            final String[] parts = line.trim().split("\\s+\\*?", 2);
+            if (parts.length == 2 && parts[0].matches("[0-9a-f]{64}")) {
+                manifest.entries.put(parts[1], new Entry(null, parts[1], parts[0]));
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * @return Entries of this manifest which are missing or different in the given manifest.
+     */
+    public List<Entry> changedSince(final AssetManifest other) {
+        final List<Entry> changed = new ArrayList<>();
+        for (final Entry entry : this.entries.values()) {
+            final Entry otherEntry = other.entries.get(entry.remotePath);
+            if (otherEntry == null || !otherEntry.sha256.equals(entry.sha256)) {
+                changed.add(entry);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @return A new manifest with all entries of this manifest, overwritten by the entries of the given one.
+     */
+    public AssetManifest mergedWith(final AssetManifest other) {
+        final AssetManifest merged = new AssetManifest();
+        merged.entries.putAll(this.entries);
+        merged.entries.putAll(other.entries);
+        return merged;
+    }
+
+    public Collection<Entry> getEntries() {
+        return this.entries.values();
+    }
+
+    public boolean isEmpty() {
+        return this.entries.isEmpty();
+    }
+
+    public String format() {
+        final StringBuilder builder = new StringBuilder();
+        for (final Entry entry : this.entries.values()) {
+            builder.append(entry.sha256).append("  ").append(entry.remotePath).append('\n');
+        }
+        return builder.toString();
+    }
+
+    public static String sha256(final File file) throws IOException {
+        final String cacheKey = file.getAbsolutePath() + ':' + file.length() + ':' + file.lastModified();
+        final String cached = HASH_CACHE.get(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+
+        final MessageDigest digest = newSha256Digest();
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream is = new FileInputStream(file)) {
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+
+        final String hash = toHex(digest.digest());
+        HASH_CACHE.put(cacheKey, hash);
+        return hash;
+    }
+
+    static MessageDigest newSha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    static String toHex(final byte[] bytes) {
+        final StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (final byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private void add(final File file, final String remotePath) throws IOException {
+        if (file.isDirectory()) {
+            final File[] children = file.listFiles();
+            if (children != null) {
+                for (final File child : children) {
+                    this.add(child, remotePath + "/" + child.getName());
+                }
+            }
+        } else if (file.isFile()) {
+            this.entries.put(remotePath, new Entry(file, remotePath, sha256(file)));
+        }
+    }
+
+    private static String remotePath(final String remoteDir, final String name) {
+        return remoteDir == null || remoteDir.isEmpty() ? name : remoteDir + "/" + name;
+    }
+
+    public static class Entry {
+        private final File localFile;
+        private final String remotePath;
+        private final String sha256;
+
+        Entry(final File localFile, final String remotePath, final String sha256) {
+            this.localFile = localFile;
+            this.remotePath = remotePath;
+            this.sha256 = sha256;
+        }
+
+        /**
+         * @return The local file, or null for entries read from a remote manifest.
+         */
+        public File getLocalFile() {
+            return this.localFile;
+        }
+
+        public String getRemotePath() {
+            return this.remotePath;
+        }
+
+        /**
+         * @return The remote directory this entry will be placed in, or an empty string for the home directory.
+         */
+        public String getRemoteDirectory() {
+            final int index = this.remotePath.lastIndexOf('/');
+            return index < 0 ? "" : this.remotePath.substring(0, index);
+        }
+
+        public String getSha256() {
+            return this.sha256;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            final Entry other = (Entry) o;
+            return this.remotePath.equals(other.remotePath) && this.sha256.equals(other.sha256);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.remotePath, this.sha256);
+        }
+    }
+}
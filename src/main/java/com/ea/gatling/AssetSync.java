@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Uploads only those files to a load generator which are new or changed since the last run. The remote host keeps a
+ * manifest with the hashes of everything previously uploaded, which is compared to the hashes of the local files.
+ */
+public class AssetSync {
+
+    static final String MANIFEST_FILE = ".gatling-assets.sha256";
+
+    private final SshClient.HostInfo hostInfo;
+    private final boolean debugOutputEnabled;
+    private final boolean bundleUpload;
+    private final String stagedBundleUrl;
+    private AssetManifest remoteManifest;
+
+    /**
+     * @param stagedBundleUrl URL of a bundle with all files of the load test staged in S3, or null to upload everything via SSH.
+     */
+    public AssetSync(final SshClient.HostInfo hostInfo, final boolean debugOutputEnabled, final boolean bundleUpload, final String stagedBundleUrl) {
+        this.hostInfo = hostInfo;
+        this.debugOutputEnabled = debugOutputEnabled;
+        this.bundleUpload = bundleUpload;
+        this.stagedBundleUrl = stagedBundleUrl;
+    }
+
+    /**
+     * Read the manifest left behind by previous runs. Fresh instances have none, in which case everything is uploaded.
+     */
+    public AssetManifest fetchRemoteManifest() throws IOException {
+        final CollectingOutputSink output = new CollectingOutputSink();
+        SshClient.executeCommand(this.hostInfo, String.format("cat %s 2>/dev/null || true", MANIFEST_FILE), this.debugOutputEnabled, output);
+        this.remoteManifest = AssetManifest.parse(output.getLines());
+        return this.remoteManifest;
+    }
+
+    /**
+     * @return Entries of the local manifest which need to be uploaded to the remote host.
+     */
+    public List<AssetManifest.Entry> changedEntries(final AssetManifest localManifest) throws IOException {
+        if (this.remoteManifest == null) {
+            this.fetchRemoteManifest();
+        }
+        return localManifest.changedSince(this.remoteManifest);
+    }
+
+    /**
+     * Upload all new or changed files of the given manifest.
+     *
+     * @return The entries that were uploaded.
+     */
+    public List<AssetManifest.Entry> upload(final AssetManifest localManifest) throws IOException {
+        final List<AssetManifest.Entry> changed = this.changedEntries(localManifest);
+        final int unchangedCount = localManifest.getEntries().size() - changed.size();
+        System.out.format("%s > %d of %d files changed, skipping upload of %d unchanged files%n",
+                this.hostInfo.getHost(), changed.size(), localManifest.getEntries().size(), unchangedCount);
+
+        if (changed.isEmpty()) {
+            return changed;
+        }
+
+        this.transfer(changed);
+        return changed;
+    }
+
+    /**
+     * Copy the given files to the remote host. Files are fetched from the staged bundle if there is one, and uploaded
+     * via SSH otherwise or if fetching the staged bundle failed.
+     */
+    public void transfer(final Collection<AssetManifest.Entry> entries) throws IOException {
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        if (this.stagedBundleUrl != null && this.fetchStagedBundle(entries)) {
+            return;
+        }
+
+        if (this.bundleUpload) {
+            SshClient.uploadBundle(this.hostInfo, entries, this.debugOutputEnabled);
+            return;
+        }
+
+        this.createRemoteDirectories(entries);
+
+        final List<SshClient.FromTo> fromTos = new ArrayList<>();
+        for (final AssetManifest.Entry entry : entries) {
+            fromTos.add(new SshClient.FromTo(entry.getLocalFile().getAbsolutePath(), entry.getRemotePath()));
+        }
+        SshClient.scpUpload(this.hostInfo, fromTos);
+    }
+
+    /**
+     * Record the given files as present on the remote host, so the next run can skip them.
+     */
+    public void record(final AssetManifest uploaded) throws IOException {
+        if (this.remoteManifest == null) {
+            this.fetchRemoteManifest();
+        }
+        this.remoteManifest = this.remoteManifest.mergedWith(uploaded);
+
+        final File manifestFile = File.createTempFile("gatling-assets", ".sha256");
+        try {
+            Files.write(manifestFile.toPath(), this.remoteManifest.format().getBytes(StandardCharsets.UTF_8));
+            SshClient.scpUpload(this.hostInfo, new SshClient.FromTo(manifestFile.getAbsolutePath(), MANIFEST_FILE));
+        } finally {
+            if (!manifestFile.delete()) {
+                manifestFile.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Let the load generator download the staged bundle itself and extract the given files from it.
+     *
+     * @return True if all files were extracted, false if the caller needs to fall back to uploading them.
+     */
+    private boolean fetchStagedBundle(final Collection<AssetManifest.Entry> entries) throws IOException {
+        final StringBuilder members = new StringBuilder();
+        for (final AssetManifest.Entry entry : entries) {
+            members.append(' ').append(SshClient.quote(entry.getRemotePath()));
+        }
+
+        final long startTimeMs = System.currentTimeMillis();
+        final String command = String.format("set -o pipefail; curl -fsS --retry 3 %s | tar xzf -%s", SshClient.quote(this.stagedBundleUrl), members);
+        final int resultCode = SshClient.executeCommand(this.hostInfo, String.format("bash -c %s", SshClient.quote(command)), this.debugOutputEnabled);
+
+        if (resultCode != 0) {
+            System.out.format("%s > Failed to fetch staged bundle, falling back to uploading %d files via SSH%n", this.hostInfo.getHost(), entries.size());
+            return false;
+        }
+
+        System.out.format("%s > Extracted %d files from staged bundle in %d ms%n", this.hostInfo.getHost(), entries.size(), System.currentTimeMillis() - startTimeMs);
+        return true;
+    }
+
+    private void createRemoteDirectories(final Collection<AssetManifest.Entry> entries) throws IOException {
+        final Set<String> directories = new LinkedHashSet<>();
+        for (final AssetManifest.Entry entry : entries) {
+            if (!entry.getRemoteDirectory().isEmpty()) {
+                directories.add(SshClient.quote(entry.getRemoteDirectory()));
+            }
+        }
+
+        if (!directories.isEmpty()) {
+            SshClient.executeCommand(this.hostInfo, "mkdir -p " + String.join(" ", directories), this.debugOutputEnabled);
+        }
+    }
+}
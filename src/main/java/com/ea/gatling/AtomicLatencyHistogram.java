@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of response times in milliseconds, used for live metrics while a test is running. Values are
+ * counted in the same {@link LatencyBuckets} as the {@link LatencyHistogram} of the summaries, in a fixed array so
+ * recording never allocates. Values above {@link #MAX_VALUE_MS} are counted in the last bucket.
+ * Use {@link #snapshot()} and {@link #valueAtPercentile(long[], double)} to read percentiles, e.g. of the difference of
+ * two snapshots for an interval.
+ */
+public class AtomicLatencyHistogram {
+
+    /**
+     * Over four hours, far beyond any request timeout.
+     */
+    static final long MAX_VALUE_MS = (1L << 24) - 1;
+
+    private static final LatencyBuckets BUCKETS = LatencyBuckets.MILLISECONDS;
+    private static final int BUCKET_COUNT = BUCKETS.bucketCount(MAX_VALUE_MS);
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    public void record(final long value) {
+        this.counts.incrementAndGet(indexOf(value));
+    }
+
+    public long[] snapshot() {
+        final long[] snapshot = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = this.counts.get(i);
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return Counts of the newer snapshot minus the counts of the older one.
+     */
+    public static long[] difference(final long[] newer, final long[] older) {
+        final long[] difference = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            difference[i] = newer[i] - (older == null ? 0 : older[i]);
+        }
+        return difference;
+    }
+
+    public static long totalCount(final long[] counts) {
+        long total = 0;
+        for (final long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * @return The highest value equivalent to the value at the given percentile (0-100), or 0 if there are no values.
+     */
+    public static long valueAtPercentile(final long[] counts, final double percentile) {
+        final long totalCount = totalCount(counts);
+        if (totalCount == 0) {
+            return 0;
+        }
+
+        final long countAtPercentile = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+        long cumulativeCount = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulativeCount += counts[i];
+            if (cumulativeCount >= countAtPercentile) {
+                return BUCKETS.highestValueAt(i);
+            }
+        }
+        return BUCKETS.highestValueAt(counts.length - 1);
+    }
+
+    static int indexOf(final long value) {
+        return Math.min(BUCKETS.indexOf(value), BUCKET_COUNT - 1);
+    }
+}
@@ -5,15 +5,18 @@ package com.ea.gatling;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 
 public class AwsGatlingExecutor implements Runnable {
 
-    private static final String[] GATLING_RESOURCES = {"data", "bodies"};
     private static final String DEFAULT_JVM_ARGS = "-Dsun.net.inetaddr.ttl=60";
+    private static final String SPOT_INTERRUPTION_MARKER = "spot-interruption-pending";
+    // IMDSv2 needs a session token, the instance-action document only exists once an interruption is scheduled.
+    private static final String SPOT_INTERRUPTION_CHECK_COMMAND = "TOKEN=$(curl -s -m 2 -X PUT http://169.254.169.254/latest/api/token -H 'X-aws-ec2-metadata-token-ttl-seconds: 60'); "
+            + "curl -s -f -m 2 -H \"X-aws-ec2-metadata-token: $TOKEN\" http://169.254.169.254/latest/meta-data/spot/instance-action -o /dev/null && echo " + SPOT_INTERRUPTION_MARKER + " || true";
+    static final String INSTALL_COMMAND = "chmod +x install-gatling.sh; ./install-gatling.sh";
 
     private final String host;
     private final String sshUser;
@@ -26,145 +29,363 @@ public class AwsGatlingExecutor implements Runnable {
     private final File gatlingLocalResultsDir;
     private final File simulationConfig;
     private final List<String> additionalFiles;
-    private final int numInstance;
-    private final int instanceCount;
+    private final LoadShare loadShare;
     private final ConcurrentHashMap<String, Integer> completedHosts;
     private final String gatlingRoot;
     private final String inheritedGatlingJavaOpts;
     private final boolean debugOutputEnabled;
     private final boolean runDetached;
+    private final boolean incrementalSync;
+    private final boolean bundleUpload;
+    private final String stagedBundleUrl;
+    private final boolean summaryOnly;
+    private final int summaryBucketSeconds;
+    private final boolean rawLogsOnFailure;
+    private final LiveMetrics liveMetrics;
+    private final StartCoordinator startCoordinator;
+    private final GeneratorStats generatorStats;
+    private final int generatorStatsIntervalSeconds;
+    private final boolean jvmProfileEnabled;
+    private final boolean gcLogsEnabled;
+    private final int logHarvestIntervalSeconds;
+    private final boolean compactLogTransfer;
+    private final SshClient.HostInfo hostInfo;
+    private final RunTimeline timeline;
 
-    public AwsGatlingExecutor(final String host,final String sshUser, final File sshPrivateKey, final String testName, final File installScript, final File gatlingSourceDir, final String gatlingSimulation, final File simulationConfig, final File gatlingResourcesDir, final File gatlingLocalResultsDir, final List<String> additionalFiles, final int numInstance, final int instanceCount, final ConcurrentHashMap<String, Integer> completedHosts, final String gatlingRoot, final String inheritedGatlingJavaOpts, final boolean debugOutputEnabled, final boolean runDetached) {
+    private String javaOpts;
+    private int resultCode = -1;
+    private IncrementalLogHarvester logHarvester;
+
+    /**
+     * @param settings The settings shared by all load generators of the test.
+     * @param loadShare The share of the load this load generator runs.
+     */
+    public AwsGatlingExecutor(final String host, final ExecutorSettings settings, final LoadShare loadShare, final ConcurrentHashMap<String, Integer> completedHosts, final LiveMetrics liveMetrics, final StartCoordinator startCoordinator, final GeneratorStats generatorStats, final RunTimeline timeline) {
         this.host = host;
-        this.sshUser = sshUser;
-        this.sshPrivateKey = sshPrivateKey.getAbsolutePath();
-        this.testName = testName;
-        this.installScript = installScript;
-        this.additionalFiles = additionalFiles;
-        this.gatlingSourceDir = gatlingSourceDir;
-        this.gatlingSimulation = gatlingSimulation;
-        this.simulationConfig = simulationConfig;
-        this.gatlingResourcesDir = gatlingResourcesDir;
-        this.gatlingLocalResultsDir = gatlingLocalResultsDir;
-        this.numInstance = numInstance;
-        this.instanceCount = instanceCount;
+        this.sshUser = settings.getSshUser();
+        this.sshPrivateKey = settings.getSshPrivateKey().getAbsolutePath();
+        this.testName = settings.getTestName();
+        this.installScript = settings.getInstallScript();
+        this.additionalFiles = settings.getAdditionalFiles();
+        this.gatlingSourceDir = settings.getGatlingSourceDir();
+        this.gatlingSimulation = settings.getGatlingSimulation();
+        this.simulationConfig = settings.getSimulationConfig();
+        this.gatlingResourcesDir = settings.getGatlingResourcesDir();
+        this.gatlingLocalResultsDir = settings.getGatlingLocalResultsDir();
+        this.loadShare = loadShare;
         this.completedHosts = completedHosts;
-        this.gatlingRoot = gatlingRoot;
-        this.inheritedGatlingJavaOpts = inheritedGatlingJavaOpts;
-        this.debugOutputEnabled = debugOutputEnabled;
-        this.runDetached = runDetached;
+        this.gatlingRoot = settings.getGatlingRoot();
+        this.inheritedGatlingJavaOpts = settings.getGatlingJavaOpts();
+        this.debugOutputEnabled = settings.isDebugOutputEnabled();
+        this.runDetached = settings.isRunDetached();
+        this.incrementalSync = settings.isIncrementalSync();
+        this.bundleUpload = settings.isBundleUpload();
+        this.stagedBundleUrl = settings.getStagedBundleUrl();
+        this.summaryOnly = settings.isSummaryOnly();
+        this.summaryBucketSeconds = settings.getSummaryBucketSeconds();
+        this.rawLogsOnFailure = settings.isRawLogsOnFailure();
+        this.liveMetrics = liveMetrics;
+        this.startCoordinator = startCoordinator;
+        this.generatorStats = generatorStats;
+        this.generatorStatsIntervalSeconds = settings.getGeneratorStatsIntervalSeconds();
+        this.jvmProfileEnabled = settings.isJvmProfileEnabled();
+        this.gcLogsEnabled = settings.isGcLogsEnabled();
+        this.logHarvestIntervalSeconds = settings.getLogHarvestIntervalSeconds();
+        this.compactLogTransfer = settings.isCompactLogTransfer();
+        this.hostInfo = new SshClient.HostInfo(host, this.sshUser, this.sshPrivateKey);
+        this.timeline = timeline;
     }
 
     public void runGatlingTest() throws IOException {
+        this.stage();
+        this.runSimulation();
+        this.harvest();
+    }
+
+    /**
+     * Install Gatling if needed and upload the simulation and its resources.
+     */
+    public void stage() throws IOException {
         this.log("started");
-        final SshClient.HostInfo hostInfo = new SshClient.HostInfo(this.host, this.sshUser, this.sshPrivateKey);
 
-        int resultCode = -1;
-        resultCode = this.runProcess(hostInfo);
+        // Reused instances keep a manifest of previously uploaded files, which allows skipping unchanged files.
+        final AssetSync assetSync = new AssetSync(this.hostInfo, this.debugOutputEnabled, this.bundleUpload, this.stagedBundleUrl);
 
-        // Indicate success to the caller. This key will be missing from the map if there were any exceptions.
-        this.completedHosts.put(this.host, resultCode);
+        // copy scripts
+        final SshClient.FromTo installScriptUpload = new SshClient.FromTo(this.installScript.getAbsolutePath(), "");
+        this.run("install", span -> this.install(assetSync, installScriptUpload));
+        this.run("upload", span -> this.upload(assetSync, span));
+        this.javaOpts = this.call("jvm profile", span -> this.getJavaOpts());
     }
 
-    private int runProcess(final SshClient.HostInfo hostInfo) throws IOException {
-
-        // copy scripts
-        SshClient.scpUpload(hostInfo, new SshClient.FromTo(this.installScript.getAbsolutePath(), ""));
-        SshClient.executeCommand(hostInfo, "chmod +x install-gatling.sh; ./install-gatling.sh", this.debugOutputEnabled);
-        // write information about the instance into a text file to allow the load test to read it if necessary.
-        SshClient.executeCommand(hostInfo, String.format("echo \"num_instance=%s%ninstance_count=%s\" >> instance.txt", this.numInstance, this.instanceCount), this.debugOutputEnabled);
-
-        final List<SshClient.FromTo> files = new ArrayList<>();
-        files.addAll(this.additionalFiles.stream().map(path -> new SshClient.FromTo(path, "")).collect(Collectors.toList()));
-
-        final File targetFolder = new File("target");
-        if (this.isValidDirectory(targetFolder)) {
-            this.log("Copying additional JAR files");
-
-            for (final File file : targetFolder.listFiles()) {
-                final String path = file.getAbsolutePath();
-                if (path.endsWith("-jar-with-dependencies.jar")) {
-                    this.log("Copying JAR file " + path);
-                    files.add(new SshClient.FromTo(path, this.gatlingRoot + "/lib"));
+    private void install(final AssetSync assetSync, final SshClient.FromTo installScriptUpload) throws IOException {
+        if (!this.incrementalSync) {
+            SshClient.scpUpload(this.hostInfo, installScriptUpload);
+            SshClient.executeCommand(this.hostInfo, INSTALL_COMMAND, this.debugOutputEnabled);
+        } else {
+            final AssetManifest installManifest = AssetManifest.fromUploads(Arrays.asList(installScriptUpload));
+            if (assetSync.changedEntries(installManifest).isEmpty()) {
+                this.log("Install script unchanged since last successful installation, skipping installation");
+            } else {
+                assetSync.upload(installManifest);
+                final int installResultCode = SshClient.executeCommand(this.hostInfo, INSTALL_COMMAND, this.debugOutputEnabled);
+                if (installResultCode == 0) {
+                    // Only remember the script once it ran successfully, so a failed installation is retried next time.
+                    assetSync.record(installManifest);
                 }
             }
         }
+    }
 
-        // copy resource files
-        for (final String resource : GATLING_RESOURCES) {
-            this.log("Copying resource " + resource);
-            final String resourceDir = this.gatlingResourcesDir.getAbsolutePath() + "/" + resource;
-            files.add(new SshClient.FromTo(resourceDir, this.gatlingRoot + "/user-files"));
-        }
-
-        // copy simulation config
-        files.add(new SshClient.FromTo(this.simulationConfig.getAbsolutePath(), ""));
+    private void upload(final AssetSync assetSync, final RunTimeline.Span span) throws IOException {
+        final List<SshClient.FromTo> files = LoadTestFiles.collect(this.additionalFiles, this.gatlingResourcesDir, this.simulationConfig, this.gatlingSourceDir, this.gatlingRoot, this.debugOutputEnabled);
+        final AssetManifest filesManifest = AssetManifest.fromUploads(files);
 
-        // copy simulation files
-        if (this.isValidDirectory(this.gatlingSourceDir)) {
-            this.log("Copying simulation files");
-            files.addAll(this.filesToFromToList(this.gatlingSourceDir.listFiles(), this.gatlingRoot + "/user-files/simulations"));
+        if (this.incrementalSync) {
+            assetSync.upload(filesManifest);
+            assetSync.record(filesManifest);
+        } else if (this.bundleUpload || this.stagedBundleUrl != null) {
+            assetSync.transfer(filesManifest.getEntries());
+        } else {
+            // Copy all files via a single SCP session.
+            SshClient.scpUpload(this.hostInfo, files);
         }
-
-        // copy simulation gatling configuration files if it exists
-        final File configFolder = new File("src/test/resources/conf");
-        if (this.isValidDirectory(configFolder)) {
-            this.log("Copying gatling configuration files");
-            files.addAll(this.filesToFromToList(configFolder.listFiles(), this.gatlingRoot + "/conf"));
+        for (final AssetManifest.Entry entry : filesManifest.getEntries()) {
+            span.addBytes(entry.getLocalFile().length());
         }
+    }
 
-        // Copy all files via a single SCP session.
-        SshClient.scpUpload(hostInfo, files);
+    /**
+     * Wait for the other load generators and run the simulation. Returns once the simulation is done, or right away if
+     * it runs detached.
+     */
+    public void runSimulation() throws IOException {
+        final String startDelay = this.call("wait for start", span -> {
+            // Wait for the other load generators, then start at the same wall clock time as them.
+            final String delay = this.startCoordinator != null && this.startCoordinator.isCoordinated() ? this.waitForStart() : "";
+
+            // Load generators lost before the start hand their share to the others, so the share is only known now.
+            final LoadShare share = this.startCoordinator != null ? this.startCoordinator.getLoadShare(this.host, this.loadShare) : this.loadShare;
+            if (share == null) {
+                throw new IOException(String.format("%s arrived after the start, its load was redistributed to the other load generators", this.host));
+            }
+            // write information about the instance into a text file to allow the load test to read it if necessary.
+            SshClient.executeCommand(this.hostInfo, String.format("echo %s >> %s", SshClient.quote(share.format().trim()), LoadShare.FILE_NAME), this.debugOutputEnabled);
+            return delay;
+        });
 
         // start test
         // TODO add parameters for test name and description
-        final String coreCommand = String.format("%s %s/bin/gatling.sh -s %s -on %s -rd test -nr -rf results/%s", this.getJavaOpts(), this.gatlingRoot, this.gatlingSimulation, this.testName, this.testName);
-        // On CentOS, the CLOSE signal is sent prior to completion of the startup of the nohup.  The sleep call needs the return value of the &, and so causes the wait.  We don't need to sleep, but we do need to guarantee process creation.
-        final String command = String.format("%s%s%s", (this.runDetached ? "nohup sh -c '" : ""), coreCommand, (this.runDetached ? "' > /dev/null 2>&1 & sleep 0" : ""));
-        final int resultCode = SshClient.executeCommand(hostInfo, command, this.debugOutputEnabled);
+        final String coreCommand = String.format("%s%s %s/bin/gatling.sh -s %s -on %s -rd test -nr -rf results/%s", startDelay, this.javaOpts, this.gatlingRoot, this.gatlingSimulation, this.testName, this.testName);
+        // Detached runs record their process and exit code on the host for the collect goal.
+        final String command = this.runDetached ? DetachedRun.wrap(coreCommand, this.testName) : coreCommand;
+        final boolean harvestLog = this.logHarvestIntervalSeconds > 0 && !this.runDetached && !this.summaryOnly;
+        if (harvestLog || (this.liveMetrics != null && !this.runDetached)) {
+            // A log left behind by an earlier attempt of the same test would be followed instead of the new one.
+            SshClient.executeCommand(this.hostInfo, String.format("rm -f %s", this.getRemoteLogPattern()), this.debugOutputEnabled);
+        }
+        // Follow the simulation log while the test is running to feed the cluster wide live metrics.
+        final BackgroundCommand logTail = this.liveMetrics != null && !this.runDetached
+                ? SshClient.startCommand(this.hostInfo, this.getLogTailCommand(), this.debugOutputEnabled, new LiveMetricsSink(this.liveMetrics))
+                : null;
+        // Sample the resource usage of the host to tell whether the load generator itself is the bottleneck.
+        final BackgroundCommand statsSampler = this.generatorStats != null && !this.runDetached
+                ? SshClient.startCommand(this.hostInfo, GeneratorStats.samplerCommand(this.generatorStatsIntervalSeconds), this.debugOutputEnabled, new GeneratorStatsSink(this.generatorStats))
+                : null;
+        // Download the simulation log while it grows, so only its tail is left to download at the end.
+        if (harvestLog) {
+            this.logHarvester = new IncrementalLogHarvester(this.hostInfo, this.getRemoteLogPattern(), this.getLocalLog(), this.debugOutputEnabled);
+            this.logHarvester.start(this.logHarvestIntervalSeconds);
+        }
+        try {
+            this.resultCode = this.call("simulation", span -> SshClient.executeCommand(this.hostInfo, command, this.debugOutputEnabled));
+        } finally {
+            if (logTail != null) {
+                logTail.stop();
+            }
+            if (statsSampler != null) {
+                statsSampler.stop();
+            }
+            if (this.logHarvester != null) {
+                this.logHarvester.stop();
+            }
+        }
+    }
 
+    /**
+     * Download the results of the simulation and report the result code to the caller.
+     */
+    public void harvest() throws IOException {
         if (!this.runDetached) {
-            // download report
-            this.log(this.testName);
-            SshClient.executeCommand(hostInfo,
-                    String.format("mv %s/results/%s/*/simulation.log simulation.log", this.gatlingRoot, this.testName),
+            this.run("download", this::downloadSimulationLog);
+            if (this.gcLogsEnabled) {
+                this.run("gc log", this::downloadGcLog);
+            }
+        }
+
+        // Indicate success to the caller. This key will be missing from the map if there were any exceptions.
+        this.completedHosts.put(this.host, this.resultCode);
+    }
+
+    private void downloadSimulationLog(final RunTimeline.Span span) throws IOException {
+        // download report
+        this.log(this.testName);
+        if (this.logHarvester != null) {
+            // Most of the log was downloaded during the test already.
+            final long harvestedBytes = this.logHarvester.getHarvestedBytes();
+            this.logHarvester.finish();
+            span.addBytes(this.logHarvester.getHarvestedBytes() - harvestedBytes);
+        } else {
+            SshClient.executeCommand(this.hostInfo,
+                    String.format("mv %s simulation.log", this.getRemoteLogPattern()),
                     this.debugOutputEnabled);
-            SshClient.scpDownload(hostInfo, new SshClient.FromTo("simulation.log",
-                    String.format("%s/%s/simulation-%s.log", this.gatlingLocalResultsDir.getAbsolutePath(), this.testName, this.host)));
+
+            final boolean summarized = this.summaryOnly && this.summarizeSimulationLog(span);
+            if (!summarized || (this.rawLogsOnFailure && this.resultCode != 0)) {
+                span.addBytes(CompactLogTransfer.download(this.hostInfo, "simulation.log", this.getLocalLog(), this.compactLogTransfer, this.debugOutputEnabled));
+            }
         }
+    }
 
-        return resultCode;
+    /**
+     * Reduce the simulation log to a summary on the load generator and download only the summary.
+     *
+     * @return False if the summary could not be created, in which case the caller should download the raw log.
+     */
+    private boolean summarizeSimulationLog(final RunTimeline.Span span) throws IOException {
+        final File pluginJar = PluginJar.locate();
+        if (pluginJar == null) {
+            System.out.format("%s > Plugin is not running from a jar, downloading raw simulation log instead of a summary%n", this.host);
+            return false;
+        }
+
+        SshClient.scpUpload(this.hostInfo, new SshClient.FromTo(pluginJar.getAbsolutePath(), PluginJar.REMOTE_NAME));
+        final int summarizeResultCode = SshClient.executeCommand(this.hostInfo,
+                String.format("java -cp %s %s simulation.log simulation-summary.gz %d", PluginJar.REMOTE_NAME, SimulationLogSummarizer.class.getName(), this.summaryBucketSeconds),
+                this.debugOutputEnabled);
+        if (summarizeResultCode != 0) {
+            System.out.format("%s > Failed to summarize simulation log, downloading raw simulation log instead%n", this.host);
+            return false;
+        }
+
+        final File summary = new File(String.format("%s/%s/summary-%s.gz", this.gatlingLocalResultsDir.getAbsolutePath(), this.testName, this.host));
+        SshClient.scpDownload(this.hostInfo, new SshClient.FromTo("simulation-summary.gz", summary.getAbsolutePath()));
+        span.addBytes(summary.length());
+        return true;
     }
 
-    private String getJavaOpts() {
-        return String.format("JAVA_OPTS=\"%s %s\"", DEFAULT_JVM_ARGS, this.inheritedGatlingJavaOpts);
+    /**
+     * Measure the clock offset of the host and wait until all load generators are staged. A Spot instance which is
+     * about to be interrupted does not arrive, so its load goes to the other load generators.
+     *
+     * @return A command prefix which sleeps on the host until the common start time, according to the host's clock.
+     */
+    private String waitForStart() throws IOException {
+        if (this.isSpotInterruptionPending()) {
+            throw new IOException(String.format("%s received a Spot interruption notice before the start", this.host));
+        }
+
+        ClockOffset clockOffset = null;
+        try {
+            clockOffset = ClockOffset.measure(this.hostInfo, this.debugOutputEnabled);
+            this.log("clock offset " + clockOffset);
+        } catch (final IOException e) {
+            System.err.format("%s > Can't measure clock offset: %s%n", this.host, e.getMessage());
+        }
+
+        final long startTimeMs = this.startCoordinator.arrive(this.host, this.loadShare, clockOffset);
+        if (startTimeMs < 0) {
+            return "";
+        }
+        final long remoteStartTimeMs = startTimeMs + (clockOffset != null ? clockOffset.getOffsetMs() : 0);
+        return String.format("t=%d; while [ $(date +%%s%%3N) -lt $t ]; do sleep 0.05; done; ", remoteStartTimeMs);
     }
 
-    private void log(final String message) {
-        if (this.debugOutputEnabled) {
-            System.out.format("%s > %s%n", this.host, message);
+    /**
+     * @return True if the instance metadata service announces a Spot interruption. Always false for on-demand instances.
+     */
+    private boolean isSpotInterruptionPending() throws IOException {
+        final CollectingOutputSink output = new CollectingOutputSink();
+        SshClient.executeCommand(this.hostInfo, SPOT_INTERRUPTION_CHECK_COMMAND, this.debugOutputEnabled, output);
+        for (final String line : output.getLines()) {
+            if (line.trim().equals(SPOT_INTERRUPTION_MARKER)) {
+                return true;
+            }
         }
+        return false;
     }
 
-    private boolean isValidDirectory(final File directory) {
-        return directory.exists() && directory.isDirectory() && directory.listFiles() != null && directory.listFiles().length > 0;
+    /**
+     * @return The path of the simulation log on the host. Gatling writes it into a directory named after the test and its start time.
+     */
+    private String getRemoteLogPattern() {
+        return String.format("%s/results/%s/*/simulation.log", this.gatlingRoot, this.testName);
     }
 
-    public void run() {
+    private File getLocalLog() {
+        return new File(String.format("%s/%s/simulation-%s.log", this.gatlingLocalResultsDir.getAbsolutePath(), this.testName, this.host));
+    }
+
+    /**
+     * @return A command which waits for Gatling to create the simulation log and then follows that one file from the
+     * first line.
+     */
+    private String getLogTailCommand() {
+        final String script = String.format("while f=$(ls -1t %s 2>/dev/null | head -n 1); [ -z \"$f\" ]; do sleep 1; done; exec tail -n +1 -F \"$f\"",
+                this.getRemoteLogPattern());
+        return "sh -c " + SshClient.quote(script);
+    }
+
+    private String getJavaOpts() {
+        String javaOpts = this.inheritedGatlingJavaOpts == null || this.inheritedGatlingJavaOpts.trim().isEmpty()
+                ? JvmProfile.DEFAULT_JAVA_OPTS
+                : this.inheritedGatlingJavaOpts;
+        if (this.jvmProfileEnabled || this.gcLogsEnabled) {
+            try {
+                final JvmProfile profile = JvmProfile.detect(this.hostInfo, this.debugOutputEnabled);
+                javaOpts = profile.getJavaOpts(this.inheritedGatlingJavaOpts, this.jvmProfileEnabled, this.gcLogsEnabled);
+                System.out.format("%s > %s, JVM options: %s%n", this.host, profile, javaOpts);
+            } catch (final IOException e) {
+                System.err.format("%s > Can't derive JVM options, using %s: %s%n", this.host, javaOpts, e.getMessage());
+            }
+        }
+        return String.format("JAVA_OPTS=\"%s %s\"", DEFAULT_JVM_ARGS, javaOpts);
+    }
+
+    /**
+     * Download the GC log of the simulation next to the simulation log and print its pause times and allocation rate.
+     * The log is saved as .txt because the Gatling report treats all .log files as simulation logs.
+     */
+    private void downloadGcLog(final RunTimeline.Span span) {
+        final File gcLog = new File(String.format("%s/%s/gc-%s.txt", this.gatlingLocalResultsDir.getAbsolutePath(), this.testName, this.host));
         try {
-            this.runGatlingTest();
+            SshClient.scpDownload(this.hostInfo, new SshClient.FromTo(JvmProfile.GC_LOG_FILE, gcLog.getAbsolutePath()));
+            span.addBytes(gcLog.length());
+            System.out.format("%s > %s%n", this.host, GcLogSummary.read(gcLog));
         } catch (final IOException e) {
-            e.printStackTrace();
+            System.err.format("%s > Can't download GC log: %s%n", this.host, e.getMessage());
         }
     }
 
-    private List<SshClient.FromTo> filesToFromToList(final File[] files, final String remoteDir) {
-        final List<SshClient.FromTo> fromTos = new ArrayList<>();
+    private void run(final String phase, final RunTimeline.Action<IOException> action) throws IOException {
+        this.timeline.run(this.host, phase, () -> SshClient.getConnectionPool().getFailedAttempts(this.hostInfo), action);
+    }
+
+    private <R> R call(final String phase, final RunTimeline.Call<R, IOException> action) throws IOException {
+        return this.timeline.call(this.host, phase, () -> SshClient.getConnectionPool().getFailedAttempts(this.hostInfo), action);
+    }
 
-        for (final File file : files) {
-            fromTos.add(new SshClient.FromTo(file.getAbsolutePath(), remoteDir));
+    private void log(final String message) {
+        if (this.debugOutputEnabled) {
+            System.out.format("%s > %s%n", this.host, message);
         }
+    }
 
-        return fromTos;
+    public void run() {
+        try {
+            this.runGatlingTest();
+        } catch (final IOException e) {
+            e.printStackTrace();
+        }
     }
 }
@@ -3,28 +3,50 @@
  */
 package com.ea.gatling;
 
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.auth.*;
 import com.amazonaws.auth.profile.ProfileCredentialsProvider;
 import com.amazonaws.services.ec2.AmazonEC2Client;
 import com.amazonaws.services.ec2.model.*;
-import com.amazonaws.services.s3.model.CannedAccessControlList;
-import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
 import com.amazonaws.services.s3.transfer.TransferManager;
-import com.amazonaws.services.s3.transfer.Upload;
+import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
 
 import java.io.File;
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
 
 public class AwsGatlingRunner {
 
-    private static final int INSTANCE_STATUS_SLEEP_MS = 16 * 1000;
-    private static final long S3_UPLOAD_TIMEOUT_MS = 60 * 1000;
+    private static final int INSTANCE_POLL_INTERVAL_MS = 2 * 1000;
+    private static final long INSTANCE_START_TIMEOUT_MS = 10 * 60 * 1000;
+    private static final int IMAGE_POLL_INTERVAL_MS = 15 * 1000;
+    private static final long IMAGE_CREATION_TIMEOUT_MS = 60 * 60 * 1000;
+    private static final long S3_UPLOAD_TIMEOUT_MS = 10 * 60 * 1000;
+    private static final int S3_UPLOAD_CONCURRENCY = 32;
+    private static final int S3_TRANSFER_THREADS = 32;
+    private static final long S3_MULTIPART_UPLOAD_THRESHOLD_BYTES = 16 * 1024 * 1024;
+    private static final long S3_STAGING_URL_EXPIRATION_MS = 6 * 60 * 60 * 1000;
 
     private final AmazonEC2Client ec2client;
+    private final AWSCredentialsProvider credentials;
     private TransferManager transferManager;
+    private int s3UploadConcurrency = S3_UPLOAD_CONCURRENCY;
+    private long s3UploadTimeoutMs = S3_UPLOAD_TIMEOUT_MS;
     private Tag instanceTag = new Tag("Name", "Gatling Load Generator");
 
     public AwsGatlingRunner(final String endpoint) {
@@ -36,7 +58,50 @@ public class AwsGatlingRunner {
                 new InstanceProfileCredentialsProvider());
         this.ec2client = new AmazonEC2Client(credentials);
         this.ec2client.setEndpoint(endpoint);
-        this.transferManager = new TransferManager(credentials);
+        this.credentials = credentials;
+        this.transferManager = buildTransferManager(new AmazonS3Client(credentials));
+    }
+
+    /**
+     * Use a specific S3 endpoint, e.g. a local S3 compatible server for testing. Path style access is used since such
+     * servers usually do not support virtual host style bucket names.
+     */
+    public void setS3Endpoint(final String endpoint, final String region) {
+        final AmazonS3 s3client = AmazonS3ClientBuilder.standard()
+                .withCredentials(this.credentials)
+                .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(endpoint, region))
+                .withPathStyleAccessEnabled(true)
+                .build();
+        this.transferManager.shutdownNow(true);
+        this.transferManager = buildTransferManager(s3client);
+    }
+
+    /**
+     * Upload a file once so load generators can download it in parallel from within the AWS network.
+     *
+     * @return A presigned URL which allows downloading the file without credentials, or null if the upload failed.
+     */
+    public URL stageFile(final String s3bucket, final String key, final File file) {
+        final long uploadStartTimeMs = System.currentTimeMillis();
+        try {
+            System.out.format("Staging %s (%d bytes) in S3 location %s/%s%n", file.getAbsolutePath(), file.length(), s3bucket, key);
+            this.transferManager.upload(s3bucket, key, file).waitForCompletion();
+            System.out.format("Staged %s in %d ms%n", file.getName(), System.currentTimeMillis() - uploadStartTimeMs);
+
+            final Date expiration = new Date(System.currentTimeMillis() + S3_STAGING_URL_EXPIRATION_MS);
+            return this.transferManager.getAmazonS3Client().generatePresignedUrl(s3bucket, key, expiration);
+        } catch (final Exception e) {
+            System.err.format("Failed to stage %s in S3 location %s/%s, load generators will be provisioned via SSH. Exception: %s%n", file.getName(), s3bucket, key, e.getMessage());
+            return null;
+        }
+    }
+
+    public void deleteStagedFile(final String s3bucket, final String key) {
+        try {
+            this.transferManager.getAmazonS3Client().deleteObject(s3bucket, key);
+        } catch (final Exception e) {
+            System.err.format("Failed to delete staged file %s/%s: %s%n", s3bucket, key, e.getMessage());
+        }
     }
 
     public Map<String, Instance> launchEC2Instances(final String instanceType, final int instanceCount, final String ec2KeyPairName, final String ec2SecurityGroup, final String amiId, final boolean createIfNonExistent) {
@@ -66,7 +131,26 @@ public class AwsGatlingRunner {
         );
     }
 
+    /**
+     * @return The running load generators of the instance type which can be reused. Instances leased from the warm
+     * pool by another run, including detached runs, are left out.
+     */
     public Map<String, Instance> findExistingInstances(final String instanceType) {
+        final Map<String, Instance> instances = this.findTaggedInstances(instanceType);
+        for (final Iterator<Instance> it = instances.values().iterator(); it.hasNext(); ) {
+            final Instance instance = it.next();
+            if (WarmPool.isLeased(instance)) {
+                System.out.format("Instance %s is leased by another run, not reusing it%n", instance.getInstanceId());
+                it.remove();
+            }
+        }
+        return instances;
+    }
+
+    /**
+     * @return All running load generators of the instance type, whether they are leased or not.
+     */
+    public Map<String, Instance> findTaggedInstances(final String instanceType) {
         final Map<String, Instance> instances = new HashMap<>();
 
         final DescribeInstancesResult describeInstancesResult = this.ec2client.describeInstances(new DescribeInstancesRequest()
@@ -84,6 +168,9 @@ public class AwsGatlingRunner {
         return instances;
     }
 
+    /**
+     * Instances are returned as soon as they were requested, use {@link #watchInstances(Map)} to wait until they are running.
+     */
     private Map<String, Instance> launchEC2Instances(final String instanceType, final RunInstancesRequestBuilder runInstancesRequestBuilder, final boolean createIfNonExistent) {
         final Map<String, Instance> instances = this.findExistingInstances(instanceType);
 
@@ -104,48 +191,244 @@ public class AwsGatlingRunner {
             this.ec2client.createTags(new CreateTagsRequest()
                     .withResources(instances.keySet())
                     .withTags(this.instanceTag));
+        }
 
-            final DescribeInstancesRequest describeInstancesRequest = new DescribeInstancesRequest().withInstanceIds(instances.keySet());
+        return instances;
+    }
 
-            this.startAllInstances(instances, describeInstancesRequest);
+    /**
+     * Track the start up of each instance on its own. Instances which are already running complete right away, the others
+     * are polled in short intervals by a background thread. This lets the caller provision every load generator as soon
+     * as it is running instead of waiting for the whole fleet and its EC2 status checks.
+     *
+     * @return A future per instance ID which completes with the running instance, including its addresses.
+     */
+    public Map<String, CompletableFuture<Instance>> watchInstances(final Map<String, Instance> instances) {
+        final Map<String, CompletableFuture<Instance>> running = new HashMap<>();
+        final Map<String, CompletableFuture<Instance>> pending = new ConcurrentHashMap<>();
+
+        for (final Instance instance : instances.values()) {
+            final CompletableFuture<Instance> future = new CompletableFuture<>();
+            running.put(instance.getInstanceId(), future);
+            if (this.isRunning(instance)) {
+                future.complete(instance);
+            } else {
+                pending.put(instance.getInstanceId(), future);
+            }
         }
 
-        return instances;
+        if (!pending.isEmpty()) {
+            final Thread poller = new Thread(() -> this.pollInstances(pending), "ec2-instance-poller");
+            poller.setDaemon(true);
+            poller.start();
+        }
+        return running;
     }
 
-    private void startAllInstances(final Map<String, Instance> instances, final DescribeInstancesRequest describeInstancesRequest) {
-        boolean allStarted = false;
-        DescribeInstancesResult describeInstancesResult;
+    private void pollInstances(final Map<String, CompletableFuture<Instance>> pending) {
+        final long startTimeMs = System.currentTimeMillis();
+
+        while (!pending.isEmpty()) {
+            sleep(INSTANCE_POLL_INTERVAL_MS);
+
+            if (System.currentTimeMillis() - startTimeMs > INSTANCE_START_TIMEOUT_MS) {
+                for (final Map.Entry<String, CompletableFuture<Instance>> entry : pending.entrySet()) {
+                    entry.getValue().completeExceptionally(new IllegalStateException(String.format(
+                            "Instance %s did not start within %d s", entry.getKey(), INSTANCE_START_TIMEOUT_MS / 1000)));
+                }
+                return;
+            }
+
+            final DescribeInstancesResult describeInstancesResult;
+            try {
+                describeInstancesResult = this.ec2client.describeInstances(new DescribeInstancesRequest().withInstanceIds(pending.keySet()));
+            } catch (final AmazonServiceException e) {
+                // Freshly launched instances are not always visible to DescribeInstances right away.
+                System.out.format("Can't describe instances %s yet: %s%n", pending.keySet(), e.getErrorMessage());
+                continue;
+            }
 
-        while (!allStarted) {
-            sleep(INSTANCE_STATUS_SLEEP_MS);
-            allStarted = true;
-            describeInstancesResult = this.ec2client.describeInstances(describeInstancesRequest);
             for (final Reservation reservation : describeInstancesResult.getReservations()) {
                 for (final Instance instance : reservation.getInstances()) {
-                    System.out.format("%s %s%n", instance.getInstanceId(), instance.getState().getName());
-                    if (!instance.getState().getName().equals("running")) {
-                        allStarted = false;
-                    } else {
-                        instances.put(instance.getInstanceId(), instance);
+                    final String state = instance.getState().getName();
+                    if (this.isRunning(instance)) {
+                        System.out.format("%s running after %d ms%n", instance.getInstanceId(), System.currentTimeMillis() - startTimeMs);
+                        pending.remove(instance.getInstanceId()).complete(instance);
+                    } else if (!"pending".equals(state) && !"running".equals(state)) {
+                        pending.remove(instance.getInstanceId()).completeExceptionally(new IllegalStateException(String.format(
+                                "Instance %s is %s instead of running", instance.getInstanceId(), state)));
                     }
                 }
             }
+        }
+    }
 
-            final DescribeInstanceStatusRequest describeInstanceStatusRequest = new DescribeInstanceStatusRequest().withInstanceIds(instances.keySet());
-            boolean allInitialized = false;
-            while (!allInitialized) {
-                sleep(INSTANCE_STATUS_SLEEP_MS);
-                final DescribeInstanceStatusResult describeInstanceStatus = this.ec2client.describeInstanceStatus(describeInstanceStatusRequest);
-                allInitialized = true;
-                for (final InstanceStatus instanceStatus : describeInstanceStatus.getInstanceStatuses()) {
-                    System.out.format("%s %s%n", instanceStatus.getInstanceId(), instanceStatus.getInstanceStatus().getStatus());
-                    if (!instanceStatus.getInstanceStatus().getStatus().equals("ok")) {
-                        allInitialized = false;
-                    }
+    private boolean isRunning(final Instance instance) {
+        return "running".equals(instance.getState().getName()) && instance.getPrivateIpAddress() != null;
+    }
+
+    /**
+     * Launch new instances without looking for existing ones. The instance tag and the given tags are applied on
+     * creation, so the instances are never visible without them.
+     */
+    public Map<String, Instance> launchNewInstances(final String instanceType, final int instanceCount, final String ec2KeyPairName, final String ec2SecurityGroup, final String ec2SecurityGroupId, final String ec2SubnetId, final String amiId, final Collection<Tag> tags) {
+        final List<Tag> allTags = new ArrayList<>(tags);
+        allTags.add(this.instanceTag);
+        final RunInstancesRequest request = new RunInstancesRequest()
+                .withImageId(amiId)
+                .withInstanceType(instanceType)
+                .withMinCount(instanceCount)
+                .withMaxCount(instanceCount)
+                .withKeyName(ec2KeyPairName)
+                .withTagSpecifications(new TagSpecification().withResourceType(ResourceType.Instance).withTags(allTags));
+        if (ec2SecurityGroupId != null) {
+            request.withSecurityGroupIds(ec2SecurityGroupId).withSubnetId(ec2SubnetId);
+        } else {
+            request.withSecurityGroups(ec2SecurityGroup);
+        }
+
+        final Map<String, Instance> instances = new HashMap<>();
+        for (final Instance instance : this.ec2client.runInstances(request).getReservation().getInstances()) {
+            System.out.println(instance.getInstanceId() + " launched");
+            instances.put(instance.getInstanceId(), instance);
+        }
+        return instances;
+    }
+
+    /**
+     * Launch load generators with a total number of vCPUs from any of the given instance types, using an instant EC2
+     * Fleet. The fleet picks the pools with the most spare capacity, so a shortage of one instance type doesn't fail the
+     * run. Spot capacity which can't be fulfilled is requested on demand instead.
+     *
+     * @return The launched instances, which are still pending. Their vCPUs add up to at least the target.
+     */
+    public Map<String, Instance> launchDiversifiedInstances(final List<String> instanceTypes, final int targetVcpus, final boolean spot, final String ec2KeyPairName, final String ec2SecurityGroup, final String ec2SecurityGroupId, final String ec2SubnetId, final String amiId) {
+        final Map<String, InstanceCapacity> capacities = this.describeInstanceCapacities(instanceTypes);
+
+        // EC2 Fleet only launches from launch templates, so create a temporary one with the settings shared by all instance types.
+        final String launchTemplateName = "gatling-" + UUID.randomUUID();
+        final RequestLaunchTemplateData launchTemplateData = new RequestLaunchTemplateData()
+                .withImageId(amiId)
+                .withKeyName(ec2KeyPairName)
+                .withTagSpecifications(new LaunchTemplateTagSpecificationRequest().withResourceType(ResourceType.Instance).withTags(this.instanceTag));
+        if (ec2SecurityGroupId != null) {
+            launchTemplateData.withSecurityGroupIds(ec2SecurityGroupId);
+        } else {
+            launchTemplateData.withSecurityGroups(ec2SecurityGroup);
+        }
+        this.ec2client.createLaunchTemplate(new CreateLaunchTemplateRequest()
+                .withLaunchTemplateName(launchTemplateName)
+                .withLaunchTemplateData(launchTemplateData));
+
+        final List<FleetLaunchTemplateOverridesRequest> overrides = new ArrayList<>();
+        final Map<String, Integer> vcpusByType = new HashMap<>();
+        for (final String instanceType : instanceTypes) {
+            final int vcpus = capacities.getOrDefault(instanceType, InstanceCapacity.UNKNOWN).getVcpus();
+            vcpusByType.put(instanceType, vcpus);
+            overrides.add(new FleetLaunchTemplateOverridesRequest()
+                    .withInstanceType(instanceType)
+                    .withWeightedCapacity((double) vcpus)
+                    .withSubnetId(ec2SubnetId));
+        }
+        final FleetLaunchTemplateConfigRequest launchTemplateConfig = new FleetLaunchTemplateConfigRequest()
+                .withLaunchTemplateSpecification(new FleetLaunchTemplateSpecificationRequest()
+                        .withLaunchTemplateName(launchTemplateName)
+                        .withVersion("$Latest"))
+                .withOverrides(overrides);
+
+        final Map<String, Instance> instances = new HashMap<>();
+        try {
+            int securedVcpus = 0;
+            if (spot) {
+                securedVcpus += this.createFleet(launchTemplateConfig, "spot", targetVcpus, vcpusByType, instances);
+            }
+            if (securedVcpus < targetVcpus) {
+                if (spot) {
+                    System.out.format("Only %d of %d vCPUs available as Spot, launching the rest on demand%n", securedVcpus, targetVcpus);
                 }
+                securedVcpus += this.createFleet(launchTemplateConfig, "on-demand", targetVcpus - securedVcpus, vcpusByType, instances);
             }
+            System.out.format("Secured %d of %d vCPUs with %d instances%n", securedVcpus, targetVcpus, instances.size());
+        } finally {
+            this.ec2client.deleteLaunchTemplate(new DeleteLaunchTemplateRequest().withLaunchTemplateName(launchTemplateName));
         }
+        return instances;
+    }
+
+    /**
+     * @return The number of vCPUs launched.
+     */
+    private int createFleet(final FleetLaunchTemplateConfigRequest launchTemplateConfig, final String capacityType, final int targetVcpus,
+                            final Map<String, Integer> vcpusByType, final Map<String, Instance> instances) {
+        final CreateFleetRequest request = new CreateFleetRequest()
+                .withType(FleetType.Instant)
+                .withLaunchTemplateConfigs(launchTemplateConfig)
+                .withTargetCapacitySpecification(new TargetCapacitySpecificationRequest()
+                        .withTotalTargetCapacity(targetVcpus)
+                        .withDefaultTargetCapacityType(capacityType))
+                .withSpotOptions(new SpotOptionsRequest().withAllocationStrategy(SpotAllocationStrategy.CapacityOptimized))
+                .withOnDemandOptions(new OnDemandOptionsRequest().withAllocationStrategy(FleetOnDemandAllocationStrategy.LowestPrice));
+        final CreateFleetResult result = this.ec2client.createFleet(request);
+
+        for (final CreateFleetError error : result.getErrors()) {
+            System.out.format("Fleet could not launch %s capacity: %s %s%n", capacityType, error.getErrorCode(), error.getErrorMessage());
+        }
+
+        int launchedVcpus = 0;
+        for (final CreateFleetInstance fleetInstance : result.getInstances()) {
+            for (final String instanceId : fleetInstance.getInstanceIds()) {
+                System.out.format("%s launched (%s, %s)%n", instanceId, fleetInstance.getInstanceType(), fleetInstance.getLifecycle());
+                // Instances launched by a fleet are not always visible to DescribeInstances right away, start from what the fleet reported.
+                instances.put(instanceId, new Instance()
+                        .withInstanceId(instanceId)
+                        .withInstanceType(fleetInstance.getInstanceType())
+                        .withInstanceLifecycle(fleetInstance.getLifecycle())
+                        .withState(new InstanceState().withName("pending"))
+                        .withTags(this.instanceTag));
+                launchedVcpus += vcpusByType.getOrDefault(fleetInstance.getInstanceType(), 1);
+            }
+        }
+        return launchedVcpus;
+    }
+
+    /**
+     * @return The capacity of each of the given instance types. Types which can't be described are missing.
+     */
+    public Map<String, InstanceCapacity> describeInstanceCapacities(final Collection<String> instanceTypes) {
+        final Map<String, InstanceCapacity> capacities = new HashMap<>();
+        try {
+            final DescribeInstanceTypesResult result = this.ec2client.describeInstanceTypes(new DescribeInstanceTypesRequest()
+                    .withInstanceTypes(new HashSet<>(instanceTypes)));
+            for (final InstanceTypeInfo info : result.getInstanceTypes()) {
+                capacities.put(info.getInstanceType(), new InstanceCapacity(info.getVCpuInfo().getDefaultVCpus(),
+                        InstanceCapacity.parseNetworkPerformance(info.getNetworkInfo().getNetworkPerformance())));
+            }
+        } catch (final AmazonServiceException e) {
+            System.err.format("Can't describe instance types %s, weighting load generators equally: %s%n", instanceTypes, e.getErrorMessage());
+        }
+        return capacities;
+    }
+
+    public Map<String, Instance> describeInstances(final Collection<String> instanceIds) {
+        final Map<String, Instance> instances = new HashMap<>();
+        for (final Reservation reservation : this.ec2client.describeInstances(new DescribeInstancesRequest().withInstanceIds(instanceIds)).getReservations()) {
+            for (final Instance instance : reservation.getInstances()) {
+                instances.put(instance.getInstanceId(), instance);
+            }
+        }
+        return instances;
+    }
+
+    public void tagInstances(final Collection<String> instanceIds, final Tag... tags) {
+        this.ec2client.createTags(new CreateTagsRequest().withResources(instanceIds).withTags(tags));
+    }
+
+    public void untagInstances(final Collection<String> instanceIds, final String... tagKeys) {
+        final List<Tag> tags = new ArrayList<>();
+        for (final String tagKey : tagKeys) {
+            tags.add(new Tag(tagKey));
+        }
+        this.ec2client.deleteTags(new DeleteTagsRequest().withResources(instanceIds).withTags(tags));
     }
 
     private Filter[] getInstanceFilters(final String instanceType) {
@@ -174,49 +457,86 @@ public class AwsGatlingRunner {
         this.ec2client.terminateInstances(new TerminateInstancesRequest(new ArrayList<String>(instanceIds)));
     }
 
-    public void uploadToS3(final String s3bucket, final String targetDirectory, final File sourceDirectory) {
-        // Recursively upload sourceDirectory to targetDirectory.
-        FOR: for (final File file : sourceDirectory.listFiles()) {
-            if (file.isDirectory()) {
-                this.uploadToS3(s3bucket, targetDirectory + "/" + file.getName(), file);
-            } else if (file.isFile()) {
-                final String path = file.getAbsolutePath();
-                final long uploadStartTimeMs = System.currentTimeMillis();
-                final PutObjectRequest putRequest = new PutObjectRequest(s3bucket, targetDirectory + "/" + file.getName(), file)
-                        .withCannedAcl(CannedAccessControlList.PublicRead);
-
-                final Upload upload = this.transferManager.upload(putRequest);
-                int statusChecks = 0;
-
-                System.out.println("Uploading " + path);
-
-                while (!upload.isDone()) {
-                    if (this.uploadTimedOut(uploadStartTimeMs)) {
-                        System.err.format("Timed out uploading file to S3 (%s). Will skip file. Report might be incomplete.%n", path);
-                        continue FOR;
-                    }
+    /**
+     * @return The ID of the most recently created image of this account with the given tag, or null if there is none.
+     */
+    public String findImage(final String tagKey, final String tagValue) {
+        final DescribeImagesResult describeImagesResult = this.ec2client.describeImages(new DescribeImagesRequest()
+                .withOwners("self")
+                .withFilters(
+                        new Filter("tag:" + tagKey).withValues(tagValue),
+                        new Filter("state").withValues("available")));
+
+        Image newest = null;
+        for (final Image image : describeImagesResult.getImages()) {
+            // Creation dates are ISO 8601 timestamps, which sort chronologically.
+            if (newest == null || image.getCreationDate().compareTo(newest.getCreationDate()) > 0) {
+                newest = image;
+            }
+        }
+        return newest == null ? null : newest.getImageId();
+    }
 
-                    sleep(100);
-                    if (++statusChecks % 100 == 0) {
-                        System.out.format("Still uploading %s%n", file.getAbsolutePath());
-                    }
-                }
-                try {
-                    upload.waitForCompletion();
-                } catch (final Exception e) {
-                    System.out.format("Failed to upload to S3 %s/%s/%s%n", s3bucket, targetDirectory, file.getName());
-                    e.printStackTrace();
-                }
+    /**
+     * Snapshot an instance into a new image and wait until the image can be used to launch instances.
+     *
+     * @return The ID of the new image.
+     */
+    public String createImage(final String instanceId, final String name, final Collection<Tag> tags) {
+        final String imageId = this.ec2client.createImage(new CreateImageRequest(instanceId, name)
+                .withDescription("Gatling load generator")).getImageId();
+        System.out.format("Creating image %s (%s) from instance %s%n", imageId, name, instanceId);
+        this.ec2client.createTags(new CreateTagsRequest().withResources(imageId).withTags(tags));
+
+        final long startTimeMs = System.currentTimeMillis();
+        while (true) {
+            sleep(IMAGE_POLL_INTERVAL_MS);
+            final String state;
+            try {
+                state = this.ec2client.describeImages(new DescribeImagesRequest().withImageIds(imageId)).getImages().get(0).getState();
+            } catch (final AmazonServiceException e) {
+                // New images are not always visible to DescribeImages right away.
+                continue;
+            }
+            System.out.format("Image %s %s after %d s%n", imageId, state, (System.currentTimeMillis() - startTimeMs) / 1000);
+
+            if ("available".equals(state)) {
+                return imageId;
+            }
+            if (!"pending".equals(state)) {
+                throw new IllegalStateException(String.format("Image %s is %s instead of available", imageId, state));
+            }
+            if (System.currentTimeMillis() - startTimeMs > IMAGE_CREATION_TIMEOUT_MS) {
+                throw new IllegalStateException(String.format("Image %s did not become available within %d s", imageId, IMAGE_CREATION_TIMEOUT_MS / 1000));
             }
         }
     }
 
+    public void uploadToS3(final String s3bucket, final String targetDirectory, final File sourceDirectory) {
+        new S3ReportUploader(this.transferManager, this.s3UploadConcurrency, this.s3UploadTimeoutMs)
+                .upload(s3bucket, targetDirectory, sourceDirectory);
+    }
+
     /**
-     * @return True if this S3 file upload has timed out. False otherwise.
+     * @param s3UploadConcurrency Maximum number of files uploaded to S3 at the same time.
      */
-    private boolean uploadTimedOut(final long uploadStartTimeMs) {
-        final long totalUploadTimeMs = System.currentTimeMillis() - uploadStartTimeMs;
-        return totalUploadTimeMs > S3_UPLOAD_TIMEOUT_MS;
+    public void setS3UploadConcurrency(final int s3UploadConcurrency) {
+        this.s3UploadConcurrency = s3UploadConcurrency;
+    }
+
+    /**
+     * @param s3UploadTimeoutMs Time after which uploading a directory to S3 is abandoned. Remaining files are skipped.
+     */
+    public void setS3UploadTimeoutMs(final long s3UploadTimeoutMs) {
+        this.s3UploadTimeoutMs = s3UploadTimeoutMs;
+    }
+
+    private static TransferManager buildTransferManager(final AmazonS3 s3client) {
+        return TransferManagerBuilder.standard()
+                .withS3Client(s3client)
+                .withExecutorFactory(() -> Executors.newFixedThreadPool(S3_TRANSFER_THREADS))
+                .withMultipartUploadThreshold(S3_MULTIPART_UPLOAD_THRESHOLD_BYTES)
+                .build();
     }
 
     private boolean hasTag(final Instance instance, final Tag theTag) {
@@ -0,0 +1,51 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import net.schmizz.sshj.connection.channel.direct.Session;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A remote command whose output is streamed to an {@link OutputSink} on a background thread, e.g. a tail of a log
+ * file which runs alongside the load test.
+ */
+public class BackgroundCommand {
+
+    private static final long STOP_TIMEOUT_MS = 5000;
+
+    private final Session session;
+    private final Thread pumpThread;
+
+    BackgroundCommand(final String host, final Session session, final InputStream output, final OutputSink outputSink) {
+        this.session = session;
+        this.pumpThread = new Thread(() -> {
+            try {
+                new CommandOutputPump(host, outputSink).pump(output);
+            } catch (final IOException e) {
+                // Expected when the command is stopped while output is being read.
+            }
+        }, "ssh-" + host);
+        this.pumpThread.setDaemon(true);
+        this.pumpThread.start();
+    }
+
+    /**
+     * Close the session, which ends the remote command, and wait for the remaining output to be delivered.
+     */
+    public void stop() {
+        try {
+            this.session.close();
+        } catch (final IOException e) {
+            System.err.println("Can't close background command: " + e.getMessage());
+        }
+
+        try {
+            this.pumpThread.join(STOP_TIMEOUT_MS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.Tag;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds a pre-provisioned load generator image. One instance is launched from ec2.ami.id, the install script and an
+ * optional tuning script run on it, and the result is saved as an AMI tagged with a fingerprint of its inputs. The
+ * execute goal picks that image automatically, and the installation is skipped on the load generators.
+ */
+@Mojo(name = "bake")
+public class BakeGatlingAwsMojo extends BaseAwsMojo {
+
+    private static final long SSH_REACHABLE_TIMEOUT_MS = 5 * 60 * 1000;
+
+    @Parameter(property = "ssh.private.key", defaultValue = "${user.home}/gatling-private-key.pem")
+    private File sshPrivateKey;
+
+    @Parameter(property = "ssh.user", defaultValue = "ec2-user")
+    private String sshUser;
+
+    @Parameter(property = "debug.output.enabled", defaultValue = "false")
+    private boolean debugOutputEnabled = false;
+
+    @Parameter(property = "gatling.install.script", defaultValue = "${project.basedir}/src/test/resources/scripts/install-gatling.sh")
+    private File installScript;
+
+    /**
+     * Optional script which runs after the install script, e.g. to tune kernel settings of the load generators.
+     */
+    @Parameter(property = "gatling.tuning.script")
+    private File tuningScript;
+
+    @Parameter(property = "gatling.root", defaultValue = "gatling-charts-highcharts-bundle-2.1.4")
+    private String gatlingRoot;
+
+    @Parameter(property = "prefer.private.ip.hostnames", defaultValue = "false")
+    private boolean preferPrivateIpHostnames;
+
+    /**
+     * Tag value of the instance used to build the image. It differs from ec2.tag.value so the instance is never
+     * picked up as a load generator.
+     */
+    @Parameter(property = "ec2.bake.tag.value", defaultValue = "Gatling Image Builder")
+    private String ec2BakeTagValue;
+
+    @Parameter(property = "ec2.bake.image.name", defaultValue = "gatling-load-generator")
+    private String ec2BakeImageName;
+
+    /**
+     * Build a new image even if one with the same fingerprint exists already.
+     */
+    @Parameter(property = "ec2.bake.force", defaultValue = "false")
+    private boolean ec2BakeForce;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        final AwsGatlingRunner runner = new AwsGatlingRunner(this.ec2EndPoint);
+        runner.setInstanceTag(new Tag(this.ec2TagName, this.ec2BakeTagValue));
+
+        final String fingerprint;
+        try {
+            fingerprint = GeneratorImage.fingerprint(this.ec2AmiId, this.installScript, this.tuningScript, this.gatlingRoot);
+        } catch (final IOException e) {
+            throw new MojoExecutionException("Can't read install script", e);
+        }
+
+        final String existingImageId = runner.findImage(GeneratorImage.FINGERPRINT_TAG, fingerprint);
+        if (existingImageId != null && !this.ec2BakeForce) {
+            System.out.format("Image %s with fingerprint %s exists already, nothing to do.%n", existingImageId, fingerprint);
+            return;
+        }
+
+        final Map<String, Instance> instances = this.ec2SecurityGroupId != null
+                ? runner.launchEC2Instances(this.instanceType, 1, this.ec2KeyPairName, this.ec2SecurityGroupId, this.ec2SubnetId, this.ec2AmiId, true)
+                : runner.launchEC2Instances(this.instanceType, 1, this.ec2KeyPairName, this.ec2SecurityGroup, this.ec2AmiId, true);
+
+        try {
+            final Instance instance = runner.watchInstances(instances).values().iterator().next().join();
+            final String host = this.preferPrivateIpHostnames ? instance.getPrivateIpAddress() : instance.getPublicDnsName();
+            SshClient.waitUntilReachable(host, SSH_REACHABLE_TIMEOUT_MS);
+            this.provision(new SshClient.HostInfo(host, this.sshUser, this.sshPrivateKey.getAbsolutePath()));
+            // Close the connection before the instance is rebooted for a consistent snapshot.
+            SshClient.getConnectionPool().closeAll();
+
+            final String imageName = String.format("%s-%s-%d", this.ec2BakeImageName, fingerprint.substring(0, 12),
+                    TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
+            final String imageId = runner.createImage(instance.getInstanceId(), imageName, Arrays.asList(
+                    new Tag("Name", imageName),
+                    new Tag(GeneratorImage.FINGERPRINT_TAG, fingerprint),
+                    new Tag(GeneratorImage.GATLING_ROOT_TAG, this.gatlingRoot)));
+            System.out.format("Image %s is ready, the execute goal will use it for install script %s and %s.%n",
+                    imageId, this.installScript.getName(), this.gatlingRoot);
+        } catch (final IOException | RuntimeException e) {
+            throw new MojoExecutionException("Failed to build load generator image", e);
+        } finally {
+            SshClient.getConnectionPool().closeAll();
+            if (!this.ec2KeepAlive) {
+                runner.terminateInstances(instances.keySet());
+            }
+        }
+    }
+
+    /**
+     * Run the install and tuning scripts and record the install script in the asset manifest, so load generators
+     * started from the image skip the installation.
+     */
+    private void provision(final SshClient.HostInfo hostInfo) throws IOException, MojoExecutionException {
+        final AssetSync assetSync = new AssetSync(hostInfo, this.debugOutputEnabled, true, null);
+        final AssetManifest installManifest = AssetManifest.fromUploads(Arrays.asList(
+                new SshClient.FromTo(this.installScript.getAbsolutePath(), "")));
+
+        assetSync.upload(installManifest);
+        if (SshClient.executeCommand(hostInfo, AwsGatlingExecutor.INSTALL_COMMAND, this.debugOutputEnabled) != 0) {
+            throw new MojoExecutionException("Install script failed on " + hostInfo.getHost());
+        }
+
+        if (this.tuningScript != null) {
+            SshClient.scpUpload(hostInfo, new SshClient.FromTo(this.tuningScript.getAbsolutePath(), ""));
+            final String tuningCommand = String.format("chmod +x %1$s; ./%1$s", SshClient.quote(this.tuningScript.getName()));
+            if (SshClient.executeCommand(hostInfo, tuningCommand, this.debugOutputEnabled) != 0) {
+                throw new MojoExecutionException("Tuning script failed on " + hostInfo.getHost());
+            }
+        }
+
+        assetSync.record(installManifest);
+    }
+}
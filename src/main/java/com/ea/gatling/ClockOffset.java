@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Offset of the clock of a load generator relative to the local clock, measured like NTP does: the remote time is
+ * assumed to be read halfway through the round trip, and the sample with the shortest round trip wins. Half of that
+ * round trip bounds the error of the offset.
+ */
+public class ClockOffset {
+
+    private static final String REMOTE_TIME_COMMAND = "date +%s%3N";
+    private static final int SAMPLES = 5;
+
+    private final long offsetMs;
+    private final long uncertaintyMs;
+
+    public ClockOffset(final long offsetMs, final long uncertaintyMs) {
+        this.offsetMs = offsetMs;
+        this.uncertaintyMs = uncertaintyMs;
+    }
+
+    public static ClockOffset measure(final SshClient.HostInfo hostInfo, final boolean debugOutputEnabled) throws IOException {
+        long bestRoundTripMs = Long.MAX_VALUE;
+        long bestOffsetMs = 0;
+
+        for (int i = 0; i < SAMPLES; i++) {
+            // Runs on the pooled connection without a PTY, which keeps the round trip short.
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            final long sentMs = System.currentTimeMillis();
+            SshClient.streamCommandOutput(hostInfo, REMOTE_TIME_COMMAND, debugOutputEnabled, output);
+            final long receivedMs = System.currentTimeMillis();
+
+            final String remoteTime = new String(output.toByteArray(), StandardCharsets.UTF_8);
+            final Long remoteMs = parse(remoteTime);
+            if (remoteMs == null) {
+                throw new IOException(String.format("Can't read the clock of %s: %s", hostInfo.getHost(), remoteTime.trim()));
+            }
+
+            final long roundTripMs = receivedMs - sentMs;
+            if (roundTripMs < bestRoundTripMs) {
+                bestRoundTripMs = roundTripMs;
+                bestOffsetMs = remoteMs - (sentMs + roundTripMs / 2);
+            }
+        }
+
+        return new ClockOffset(bestOffsetMs, (bestRoundTripMs + 1) / 2);
+    }
+
+    /**
+     * @return Milliseconds the remote clock is ahead of the local clock, negative if it is behind.
+     */
+    public long getOffsetMs() {
+        return this.offsetMs;
+    }
+
+    /**
+     * @return Maximum error of the offset in milliseconds.
+     */
+    public long getUncertaintyMs() {
+        return this.uncertaintyMs;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%+d ms (+/- %d ms)", this.offsetMs, this.uncertaintyMs);
+    }
+
+    private static Long parse(final String output) {
+        for (final String line : output.split("\n")) {
+            try {
+                return Long.parseLong(line.trim());
+            } catch (final NumberFormatException e) {
+                // Skip banners or other noise.
+            }
+        }
+        return null;
+    }
+}
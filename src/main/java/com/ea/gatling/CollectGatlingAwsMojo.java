@@ -0,0 +1,397 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.Tag;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.codehaus.plexus.util.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the results of a load test started with ec2.execute.detached. The load generators are found by their tag,
+ * and once Gatling is done on all of them, their simulation logs are downloaded in parallel, merged, turned into a
+ * report and uploaded to S3 like at the end of the execute goal. This way no build has to stay connected to the load
+ * generators for the whole duration of a long test.
+ */
+@Mojo(name = "collect")
+public class CollectGatlingAwsMojo extends BaseAwsMojo {
+
+    @Parameter(property = "ssh.private.key", defaultValue = "${user.home}/gatling-private-key.pem")
+    private File sshPrivateKey;
+
+    @Parameter(property = "ssh.user", defaultValue = "ec2-user")
+    private String sshUser;
+
+    @Parameter(property = "debug.output.enabled", defaultValue = "false")
+    private boolean debugOutputEnabled = false;
+
+    @Parameter(property = "prefer.private.ip.hostnames", defaultValue = "false")
+    private boolean preferPrivateIpHostnames;
+
+    /**
+     * Additional instance types to look for load generators, e.g. the types of a diversified fleet.
+     */
+    @Parameter(property = "ec2.fleet.instance.types")
+    private String ec2FleetInstanceTypes;
+
+    /**
+     * Name of the detached run as printed by the execute goal, including its timestamp. Only needed if the load
+     * generators ran more than one detached test.
+     */
+    @Parameter(property = "gatling.collect.test.name")
+    private String collectTestName;
+
+    /**
+     * When true, wait for load generators which are still running the simulation. Otherwise the goal fails and can be
+     * run again later.
+     */
+    @Parameter(property = "gatling.collect.wait", defaultValue = "false")
+    private boolean collectWait;
+
+    @Parameter(property = "gatling.collect.poll.seconds", defaultValue = "60")
+    private int collectPollSeconds = 60;
+
+    /**
+     * Terminate the load generators once their results are collected.
+     */
+    @Parameter(property = "gatling.collect.terminate", defaultValue = "false")
+    private boolean collectTerminate;
+
+    /**
+     * Maximum number of load generators whose results are downloaded at the same time.
+     */
+    @Parameter(property = "gatling.concurrency.harvest", defaultValue = "32")
+    private int harvestConcurrency = 32;
+
+    @Parameter(property = "gatling.local.results", defaultValue = "${project.build.directory}/gatling/results")
+    private File gatlingLocalResultsDir;
+
+    @Parameter(property = "gatling.local.home", defaultValue = "${user.home}/gatling/gatling-charts-highcharts-bundle-2.1.4/bin/gatling.sh")
+    private String gatlingLocalHome;
+
+    @Parameter(property = "gatling.root", defaultValue = "gatling-charts-highcharts-bundle-2.1.4")
+    private String gatlingRoot;
+
+    @Parameter(property = "gatling.merge.logs", defaultValue = "true")
+    private boolean mergeLogs = true;
+
+    @Parameter(property = "gatling.keep.host.logs", defaultValue = "false")
+    private boolean keepHostLogs;
+
+    @Parameter(property = "gatling.log.compact", defaultValue = "true")
+    private boolean compactLogTransfer = true;
+
+    @Parameter(property = "s3.upload.enabled", defaultValue = "false")
+    private boolean s3UploadEnabled;
+
+    @Parameter(property = "s3.region", defaultValue = "us-west-1")
+    private String s3Region;
+
+    @Parameter(property = "s3.bucket", defaultValue = "loadtest-results")
+    private String s3Bucket;
+
+    @Parameter(property = "s3.subfolder", defaultValue = "")
+    private String s3Subfolder;
+
+    @Parameter(property = "s3.archive.compact.logs", defaultValue = "false")
+    private boolean s3ArchiveCompactLogs;
+
+    @Parameter(property = "s3.upload.concurrency", defaultValue = "32")
+    private int s3UploadConcurrency = 32;
+
+    @Parameter(property = "s3.upload.timeout.seconds", defaultValue = "600")
+    private int s3UploadTimeoutSeconds = 600;
+
+    @Parameter(property = "s3.endpoint")
+    private String s3Endpoint;
+
+    @Parameter(property = "propagate.gatling.failure", defaultValue = "false")
+    private boolean propagateGatlingFailure;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        final AwsGatlingRunner runner = new AwsGatlingRunner(this.ec2EndPoint);
+        runner.setInstanceTag(new Tag(this.ec2TagName, this.ec2TagValue));
+        if (this.s3Endpoint != null && !this.s3Endpoint.isEmpty()) {
+            runner.setS3Endpoint(this.s3Endpoint, this.s3Region);
+        }
+        runner.setS3UploadConcurrency(this.s3UploadConcurrency);
+        runner.setS3UploadTimeoutMs(TimeUnit.SECONDS.toMillis(this.s3UploadTimeoutSeconds));
+
+        final RunTimeline timeline = new RunTimeline();
+        final Map<String, Instance> instancesByHost = this.findLoadGenerators(runner);
+        if (instancesByHost.isEmpty()) {
+            throw new MojoExecutionException(String.format("No running load generators tagged %s=%s", this.ec2TagName, this.ec2TagValue));
+        }
+
+        final Map<String, DetachedRun> runs = this.awaitRuns(instancesByHost.keySet(), timeline);
+        final String testName = this.selectTestName(runs);
+        final List<String> hosts = new ArrayList<>();
+        for (final Map.Entry<String, DetachedRun> run : runs.entrySet()) {
+            if (testName.equals(run.getValue().getTestName())) {
+                hosts.add(run.getKey());
+            }
+        }
+        System.out.format("Collecting results of %s from %d load generators%n", testName, hosts.size());
+
+        final File resultsDir = new File(this.gatlingLocalResultsDir, testName);
+        if (!resultsDir.mkdirs() && !resultsDir.isDirectory()) {
+            throw new MojoExecutionException("Can't create results directory " + resultsDir);
+        }
+
+        final Map<String, Integer> completedHosts = this.download(hosts, runs, testName, resultsDir, timeline);
+        SshClient.getConnectionPool().printStatistics();
+        SshClient.getConnectionPool().closeAll();
+
+        int failedHosts = hosts.size() - completedHosts.size();
+        for (final String host : hosts) {
+            if (!completedHosts.containsKey(host)) {
+                System.out.format("No result collected from hostname: %s%n", host);
+            } else if (completedHosts.get(host) != 0) {
+                System.out.format("Unsuccessful result code: %d on hostname: %s%n", completedHosts.get(host), host);
+                failedHosts++;
+            }
+        }
+
+        if (this.mergeLogs) {
+            // Clock offsets are only measured at the coordinated start, which a later build doesn't know about.
+            timeline.run(null, "merge logs", span -> GatlingAwsMojo.mergeSimulationLogs(resultsDir, Collections.emptyMap(), this.keepHostLogs));
+        }
+
+        if (GatlingAwsMojo.hasSimulationLogs(resultsDir)) {
+            final String reportCommand = String.format("%s -ro %s/%s", this.gatlingLocalHome, this.gatlingLocalResultsDir, testName);
+            System.out.format("Report command: %s%n", reportCommand);
+            timeline.run(null, "report", span -> System.out.println(GatlingAwsMojo.executeCommand(reportCommand)));
+        } else {
+            System.out.println("No simulation logs downloaded, skipping Gatling report.");
+        }
+
+        if (this.s3UploadEnabled) {
+            if (this.s3ArchiveCompactLogs) {
+                timeline.run(null, "compact logs", span -> GatlingAwsMojo.compactSimulationLogs(resultsDir));
+            }
+            System.out.format("Trying to upload simulation to S3 location %s/%s/%s%n", this.s3Bucket, this.s3Subfolder, testName);
+            timeline.run(null, "s3 upload", span -> {
+                runner.uploadToS3(this.s3Bucket, this.s3Subfolder + "/" + testName, resultsDir);
+                span.addBytes(FileUtils.sizeOfDirectory(resultsDir));
+            });
+
+            final String url = GatlingAwsMojo.getS3Url(this.s3Region, this.s3Bucket, this.s3Subfolder, testName, "index.html");
+            System.out.format("Results are on %s%n", url);
+            try {
+                FileUtils.fileWrite("results.txt", url);
+            } catch (final IOException e) {
+                System.err.println("Can't write result address: " + e);
+            }
+        } else {
+            System.out.println("Skipping upload to S3.");
+        }
+
+        final List<String> instanceIds = new ArrayList<>();
+        final List<String> leasedInstanceIds = new ArrayList<>();
+        for (final String host : hosts) {
+            final Instance instance = instancesByHost.get(host);
+            instanceIds.add(instance.getInstanceId());
+            if (WarmPool.isDetached(instance)) {
+                leasedInstanceIds.add(instance.getInstanceId());
+            }
+        }
+        if (this.collectTerminate && (failedHosts == 0 || this.ec2ForceTermination)) {
+            runner.terminateInstances(instanceIds);
+        } else {
+            if (this.collectTerminate) {
+                System.out.println("Keeping the load generators for debugging, set ec2.force.termination to terminate them anyway");
+            }
+            // The detached run leased its warm pool instances until now.
+            WarmPool.release(runner, leasedInstanceIds);
+        }
+
+        timeline.write(new File(System.getProperty("user.dir")));
+
+        if (this.propagateGatlingFailure && failedHosts > 0) {
+            throw new MojoExecutionException("Some gatling simulation failed: " + failedHosts);
+        }
+    }
+
+    /**
+     * @return The running load generators by host name, leaving out the ones another run leased from the warm pool.
+     */
+    private Map<String, Instance> findLoadGenerators(final AwsGatlingRunner runner) {
+        final TreeSet<String> instanceTypes = new TreeSet<>();
+        instanceTypes.add(this.instanceType);
+        if (this.ec2FleetInstanceTypes != null) {
+            for (final String fleetInstanceType : this.ec2FleetInstanceTypes.split(",")) {
+                if (!fleetInstanceType.trim().isEmpty()) {
+                    instanceTypes.add(fleetInstanceType.trim());
+                }
+            }
+        }
+
+        final Map<String, Instance> instancesByHost = new LinkedHashMap<>();
+        for (final String type : instanceTypes) {
+            for (final Instance instance : runner.findTaggedInstances(type).values()) {
+                if (WarmPool.isLeased(instance) && !WarmPool.isDetached(instance)) {
+                    // Running a load test for another build right now.
+                    continue;
+                }
+                final String host = this.preferPrivateIpHostnames ? instance.getPrivateIpAddress() : instance.getPublicDnsName();
+                if (host != null && !host.isEmpty()) {
+                    instancesByHost.put(host, instance);
+                }
+            }
+        }
+        return instancesByHost;
+    }
+
+    /**
+     * Ask every host about its detached run, and if wanted keep asking the ones which are still running until they
+     * are done.
+     *
+     * @return The detached runs by host. Hosts which can't be reached or never ran a detached simulation are left out.
+     */
+    private Map<String, DetachedRun> awaitRuns(final Iterable<String> hosts, final RunTimeline timeline) throws MojoExecutionException {
+        return timeline.call(null, "await runs", span -> {
+            final Map<String, DetachedRun> runs = new LinkedHashMap<>();
+            List<String> pending = new ArrayList<>();
+            for (final String host : hosts) {
+                pending.add(host);
+            }
+
+            while (true) {
+                final List<String> running = new ArrayList<>();
+                for (final Map.Entry<String, DetachedRun> run : this.queryRuns(pending).entrySet()) {
+                    System.out.format("%s > %s%n", run.getKey(), run.getValue());
+                    if (run.getValue().getState() == DetachedRun.State.RUNNING) {
+                        running.add(run.getKey());
+                    } else if (run.getValue().getState() == DetachedRun.State.EXITED) {
+                        runs.put(run.getKey(), run.getValue());
+                    }
+                }
+                if (running.isEmpty()) {
+                    return runs;
+                }
+                if (!this.collectWait) {
+                    throw new MojoExecutionException(String.format("Gatling is still running on %d load generators, "
+                            + "collect the results later or set gatling.collect.wait to wait for them", running.size()));
+                }
+
+                System.out.format("Waiting for %d load generators, checking again in %d s%n", running.size(), this.collectPollSeconds);
+                // Don't hold on to SSH connections while waiting, e.g. for the rest of a soak test.
+                SshClient.getConnectionPool().closeAll();
+                try {
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(this.collectPollSeconds));
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new MojoExecutionException("Interrupted while waiting for the load generators");
+                }
+                pending = running;
+            }
+        });
+    }
+
+    private Map<String, DetachedRun> queryRuns(final List<String> hosts) {
+        final PipelineStage querying = new PipelineStage("status", this.harvestConcurrency);
+        final Map<String, CompletableFuture<DetachedRun>> queries = new LinkedHashMap<>();
+        for (final String host : hosts) {
+            queries.put(host, querying.then(CompletableFuture.completedFuture(this.getHostInfo(host)),
+                    hostInfo -> DetachedRun.query(hostInfo, this.debugOutputEnabled)));
+        }
+
+        final Map<String, DetachedRun> runs = new LinkedHashMap<>();
+        for (final Map.Entry<String, CompletableFuture<DetachedRun>> query : queries.entrySet()) {
+            try {
+                runs.put(query.getKey(), query.getValue().join());
+            } catch (final RuntimeException e) {
+                System.err.format("%s > Can't check detached run: %s%n", query.getKey(), e.getMessage());
+            }
+        }
+        querying.shutdown();
+        return runs;
+    }
+
+    /**
+     * @return The test name given by gatling.collect.test.name, or else the one test all load generators ran.
+     */
+    private String selectTestName(final Map<String, DetachedRun> runs) throws MojoExecutionException {
+        if (this.collectTestName != null && !this.collectTestName.isEmpty()) {
+            return this.collectTestName;
+        }
+
+        final TreeSet<String> testNames = new TreeSet<>();
+        for (final DetachedRun run : runs.values()) {
+            if (run.getTestName() != null) {
+                testNames.add(run.getTestName());
+            }
+        }
+        if (testNames.isEmpty()) {
+            throw new MojoExecutionException("None of the load generators ran a detached simulation");
+        }
+        if (testNames.size() > 1) {
+            throw new MojoExecutionException("The load generators ran several detached simulations, select one with gatling.collect.test.name: "
+                    + String.join(", ", testNames));
+        }
+        return testNames.first();
+    }
+
+    /**
+     * Download the simulation logs of all hosts in parallel.
+     *
+     * @return The exit code of Gatling by host, for every host whose log was downloaded.
+     */
+    private Map<String, Integer> download(final List<String> hosts, final Map<String, DetachedRun> runs, final String testName,
+                                          final File resultsDir, final RunTimeline timeline) {
+        final Map<String, Integer> completedHosts = new ConcurrentHashMap<>();
+        final PipelineStage harvesting = new PipelineStage("harvest", this.harvestConcurrency);
+        final Map<String, CompletableFuture<Long>> downloads = new HashMap<>();
+
+        for (final String host : hosts) {
+            final SshClient.HostInfo hostInfo = this.getHostInfo(host);
+            downloads.put(host, harvesting.then(CompletableFuture.completedFuture(hostInfo), info ->
+                    timeline.call(host, "download", () -> SshClient.getConnectionPool().getFailedAttempts(info), span -> {
+                        // Gatling writes the log into a directory named after the test and its start time.
+                        final int moveResultCode = SshClient.executeCommand(info, String.format(
+                                "for f in %s/results/%s/*/simulation.log; do [ -f \"$f\" ] && mv \"$f\" simulation.log; done; test -f simulation.log",
+                                this.gatlingRoot, testName), this.debugOutputEnabled);
+                        if (moveResultCode != 0) {
+                            throw new IOException("No simulation log found on " + host);
+                        }
+                        final File simulationLog = new File(resultsDir, String.format("simulation-%s.log", host));
+                        span.addBytes(CompactLogTransfer.download(info, "simulation.log", simulationLog, this.compactLogTransfer, this.debugOutputEnabled));
+                        completedHosts.put(host, runs.get(host).getExitCode());
+                        return simulationLog.length();
+                    })));
+        }
+
+        for (final Map.Entry<String, CompletableFuture<Long>> download : downloads.entrySet()) {
+            try {
+                download.getValue().join();
+            } catch (final RuntimeException e) {
+                System.err.format("%s > Can't download results: %s%n", download.getKey(), e.getMessage());
+            }
+        }
+        harvesting.shutdown();
+        harvesting.printStatistics();
+        return completedHosts;
+    }
+
+    private SshClient.HostInfo getHostInfo(final String host) {
+        return new SshClient.HostInfo(host, this.sshUser, this.sshPrivateKey.getAbsolutePath());
+    }
+}
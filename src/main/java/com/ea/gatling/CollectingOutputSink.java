@@ -0,0 +1,24 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the output of a remote command in memory so it can be parsed by the caller.
+ */
+public class CollectingOutputSink implements OutputSink {
+
+    private final List<String> lines = new ArrayList<>();
+
+    @Override
+    public synchronized void accept(final String host, final String line) {
+        this.lines.add(line);
+    }
+
+    public synchronized List<String> getLines() {
+        return new ArrayList<>(this.lines);
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streams the output of a remote command to an {@link OutputSink} line by line. Reads block until data arrives, so
+ * output is forwarded as soon as it is received and the pump returns as soon as the channel is closed. Bytes are
+ * decoded as UTF-8 by a stateful decoder, so multi-byte characters split across packets are reassembled correctly.
+ */
+public class CommandOutputPump {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * Lines longer than this are handed to the sink in pieces to keep memory bounded on runaway output.
+     */
+    private static final int MAX_LINE_LENGTH = 16 * 1024;
+
+    private final String host;
+    private final OutputSink sink;
+
+    public CommandOutputPump(final String host, final OutputSink sink) {
+        this.host = host;
+        this.sink = sink;
+    }
+
+    /**
+     * Pump the stream until the remote side closes it.
+     */
+    public void pump(final InputStream inputStream) throws IOException {
+        final Reader reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
+        final char[] buffer = new char[BUFFER_SIZE];
+        final StringBuilder line = new StringBuilder();
+
+        try {
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    final char c = buffer[i];
+                    if (c == '\n') {
+                        this.emit(line);
+                    } else if (c != '\r') {
+                        line.append(c);
+                        if (line.length() >= MAX_LINE_LENGTH) {
+                            this.emit(line);
+                        }
+                    }
+                }
+            }
+            if (line.length() > 0) {
+                this.emit(line);
+            }
+        } finally {
+            this.sink.flush();
+        }
+    }
+
+    private void emit(final StringBuilder line) {
+        this.sink.accept(this.host, line.toString());
+        line.setLength(0);
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Downloads a simulation log in the compact encoding of the {@link SimulationLogCodec}. The log is encoded on the load
+ * generator, downloaded and decoded into a text log again, which moves a fraction of the bytes of the raw log over the
+ * network. Falls back to downloading the raw log if the plugin is not running from a jar or the encoding fails.
+ */
+public class CompactLogTransfer {
+
+    private static final String REMOTE_COMPACT_LOG = "simulation.log" + SimulationLogCodec.SUFFIX;
+
+    /**
+     * @param remoteLog Path of the simulation log on the host, relative to the home directory.
+     * @param compact   False to download the raw log right away.
+     * @return The number of bytes transferred.
+     */
+    public static long download(final SshClient.HostInfo hostInfo, final String remoteLog, final File localLog, final boolean compact, final boolean debugOutputEnabled) throws IOException {
+        if (compact) {
+            final long compactBytes = downloadCompact(hostInfo, remoteLog, localLog, debugOutputEnabled);
+            if (compactBytes >= 0) {
+                return compactBytes;
+            }
+        }
+        SshClient.scpDownload(hostInfo, new SshClient.FromTo(remoteLog, localLog.getAbsolutePath()));
+        return localLog.length();
+    }
+
+    /**
+     * @return The size of the compact log, or -1 if the caller should download the raw log.
+     */
+    private static long downloadCompact(final SshClient.HostInfo hostInfo, final String remoteLog, final File localLog, final boolean debugOutputEnabled) throws IOException {
+        final File pluginJar = PluginJar.locate();
+        if (pluginJar == null) {
+            System.out.format("%s > Plugin is not running from a jar, downloading raw simulation log%n", hostInfo.getHost());
+            return -1;
+        }
+
+        SshClient.scpUpload(hostInfo, new SshClient.FromTo(pluginJar.getAbsolutePath(), PluginJar.REMOTE_NAME));
+        final int encodeResultCode = SshClient.executeCommand(hostInfo,
+                String.format("java -cp %s %s encode %s %s", PluginJar.REMOTE_NAME, SimulationLogCodec.class.getName(), remoteLog, REMOTE_COMPACT_LOG),
+                debugOutputEnabled);
+        if (encodeResultCode != 0) {
+            System.out.format("%s > Failed to encode simulation log, downloading raw simulation log instead%n", hostInfo.getHost());
+            return -1;
+        }
+
+        final File compactLog = new File(localLog.getPath() + SimulationLogCodec.SUFFIX);
+        try {
+            SshClient.scpDownload(hostInfo, new SshClient.FromTo(REMOTE_COMPACT_LOG, compactLog.getAbsolutePath()));
+            final long compactBytes = compactLog.length();
+            SimulationLogCodec.decode(compactLog, localLog);
+            System.out.format("%s > Downloaded simulation log of %d bytes as %d bytes%n", hostInfo.getHost(), localLog.length(), compactBytes);
+            return compactBytes;
+        } finally {
+            Files.deleteIfExists(compactLog.toPath());
+        }
+    }
+}
@@ -0,0 +1,18 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+/**
+ * Prints remote output to stdout, prefixed with the host it came from.
+ */
+public class ConsoleOutputSink implements OutputSink {
+
+    public static final ConsoleOutputSink INSTANCE = new ConsoleOutputSink();
+
+    @Override
+    public void accept(final String host, final String line) {
+        // A single format call per line keeps lines from parallel hosts from interleaving.
+        System.out.format("%s > %s%n", host, line);
+    }
+}
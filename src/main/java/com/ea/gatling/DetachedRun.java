@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import java.io.IOException;
+
+/**
+ * Bookkeeping of a simulation which runs detached from the build on a load generator. The host records the process ID
+ * and the test name when the simulation starts and the exit code when it ends, so the collect goal can tell later
+ * whether the run is done and where its results are.
+ */
+public class DetachedRun {
+
+    static final String PID_FILE = "gatling.pid";
+    static final String TEST_NAME_FILE = "gatling.test";
+    static final String EXIT_CODE_FILE = "gatling.exit";
+
+    private static final String STATUS_MARKER = "gatling-status";
+    private static final String STATUS_COMMAND = String.format(
+            "if [ ! -f %1$s ]; then echo %4$s none; "
+                    + "elif kill -0 $(cat %1$s) 2>/dev/null; then echo %4$s running -1 $(cat %2$s); "
+                    + "else echo %4$s exited $(cat %3$s 2>/dev/null || echo -1) $(cat %2$s); fi",
+            PID_FILE, TEST_NAME_FILE, EXIT_CODE_FILE, STATUS_MARKER);
+
+    public enum State {
+        /**
+         * The host never ran a detached simulation.
+         */
+        NONE,
+        RUNNING,
+        EXITED
+    }
+
+    private final State state;
+    private final int exitCode;
+    private final String testName;
+
+    DetachedRun(final State state, final int exitCode, final String testName) {
+        this.state = state;
+        this.exitCode = exitCode;
+        this.testName = testName;
+    }
+
+    /**
+     * Wrap the command which runs the simulation, so it keeps running after the SSH session is closed and records its
+     * process ID, test name and exit code in the home directory.
+     */
+    public static String wrap(final String command, final String testName) {
+        // On CentOS, the CLOSE signal is sent prior to completion of the startup of the nohup. The sleep call needs the
+        // return value of the &, and so causes the wait. We don't need to sleep, but we do need to guarantee process creation.
+        return String.format("rm -f %s; echo %s > %s; nohup sh -c '%s; echo $? > %s' > /dev/null 2>&1 & echo $! > %s; sleep 0",
+                EXIT_CODE_FILE, SshClient.quote(testName), TEST_NAME_FILE, command, EXIT_CODE_FILE, PID_FILE);
+    }
+
+    /**
+     * @return The state of the last detached simulation on the host.
+     */
+    public static DetachedRun query(final SshClient.HostInfo hostInfo, final boolean debugOutputEnabled) throws IOException {
+        final CollectingOutputSink output = new CollectingOutputSink();
+        SshClient.executeCommand(hostInfo, STATUS_COMMAND, debugOutputEnabled, output);
+        for (final String line : output.getLines()) {
+            final DetachedRun run = parse(line);
+            if (run != null) {
+                return run;
+            }
+        }
+        throw new IOException("Can't read state of detached simulation on " + hostInfo.getHost());
+    }
+
+    static DetachedRun parse(final String line) {
+        final String[] fields = line.trim().split("\\s+");
+        if (fields.length < 2 || !STATUS_MARKER.equals(fields[0])) {
+            return null;
+        }
+        try {
+            final State state = State.valueOf(fields[1].toUpperCase());
+            final int exitCode = fields.length > 2 ? Integer.parseInt(fields[2]) : -1;
+            return new DetachedRun(state, exitCode, fields.length > 3 ? fields[3] : null);
+        } catch (final IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public State getState() {
+        return this.state;
+    }
+
+    /**
+     * @return The exit code of Gatling, or -1 if it is still running or was killed.
+     */
+    public int getExitCode() {
+        return this.exitCode;
+    }
+
+    /**
+     * @return The test name of the run, which is also the name of its results directory.
+     */
+    public String getTestName() {
+        return this.testName;
+    }
+
+    @Override
+    public String toString() {
+        switch (this.state) {
+            case RUNNING:
+                return "running " + this.testName;
+            case EXITED:
+                return String.format("finished %s with exit code %d", this.testName, this.exitCode);
+            default:
+                return "no detached run";
+        }
+    }
+}
@@ -0,0 +1,279 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * The settings of a load test which are the same for every load generator, passed to each {@link AwsGatlingExecutor}.
+ * Settings which are not given keep the defaults of the execute goal's parameters.
+ */
+public class ExecutorSettings {
+    private String sshUser = "ec2-user";
+    private File sshPrivateKey;
+    private String testName;
+    private File installScript;
+    private File gatlingSourceDir;
+    private String gatlingSimulation;
+    private File simulationConfig;
+    private File gatlingResourcesDir;
+    private File gatlingLocalResultsDir;
+    private List<String> additionalFiles;
+    private String gatlingRoot;
+    private String gatlingJavaOpts;
+    private boolean debugOutputEnabled;
+    private boolean runDetached;
+    private boolean incrementalSync = true;
+    private boolean bundleUpload = true;
+    private String stagedBundleUrl;
+    private boolean summaryOnly;
+    private int summaryBucketSeconds = 10;
+    private boolean rawLogsOnFailure = true;
+    private int generatorStatsIntervalSeconds = 5;
+    private boolean jvmProfileEnabled;
+    private boolean gcLogsEnabled;
+    private int logHarvestIntervalSeconds;
+    private boolean compactLogTransfer = true;
+
+    /**
+     * @param sshUser The user to log in with.
+     */
+    public ExecutorSettings withSshUser(final String sshUser) {
+        this.sshUser = sshUser;
+        return this;
+    }
+
+    public ExecutorSettings withSshPrivateKey(final File sshPrivateKey) {
+        this.sshPrivateKey = sshPrivateKey;
+        return this;
+    }
+
+    /**
+     * @param testName Name of the test including its timestamp, also the name of the results directory.
+     */
+    public ExecutorSettings withTestName(final String testName) {
+        this.testName = testName;
+        return this;
+    }
+
+    public ExecutorSettings withInstallScript(final File installScript) {
+        this.installScript = installScript;
+        return this;
+    }
+
+    public ExecutorSettings withGatlingSourceDir(final File gatlingSourceDir) {
+        this.gatlingSourceDir = gatlingSourceDir;
+        return this;
+    }
+
+    public ExecutorSettings withGatlingSimulation(final String gatlingSimulation) {
+        this.gatlingSimulation = gatlingSimulation;
+        return this;
+    }
+
+    public ExecutorSettings withSimulationConfig(final File simulationConfig) {
+        this.simulationConfig = simulationConfig;
+        return this;
+    }
+
+    public ExecutorSettings withGatlingResourcesDir(final File gatlingResourcesDir) {
+        this.gatlingResourcesDir = gatlingResourcesDir;
+        return this;
+    }
+
+    public ExecutorSettings withGatlingLocalResultsDir(final File gatlingLocalResultsDir) {
+        this.gatlingLocalResultsDir = gatlingLocalResultsDir;
+        return this;
+    }
+
+    public ExecutorSettings withAdditionalFiles(final List<String> additionalFiles) {
+        this.additionalFiles = additionalFiles;
+        return this;
+    }
+
+    public ExecutorSettings withGatlingRoot(final String gatlingRoot) {
+        this.gatlingRoot = gatlingRoot;
+        return this;
+    }
+
+    /**
+     * @param gatlingJavaOpts JVM options given by the user, or null to use the defaults.
+     */
+    public ExecutorSettings withGatlingJavaOpts(final String gatlingJavaOpts) {
+        this.gatlingJavaOpts = gatlingJavaOpts;
+        return this;
+    }
+
+    public ExecutorSettings withDebugOutputEnabled(final boolean debugOutputEnabled) {
+        this.debugOutputEnabled = debugOutputEnabled;
+        return this;
+    }
+
+    public ExecutorSettings withRunDetached(final boolean runDetached) {
+        this.runDetached = runDetached;
+        return this;
+    }
+
+    public ExecutorSettings withIncrementalSync(final boolean incrementalSync) {
+        this.incrementalSync = incrementalSync;
+        return this;
+    }
+
+    public ExecutorSettings withBundleUpload(final boolean bundleUpload) {
+        this.bundleUpload = bundleUpload;
+        return this;
+    }
+
+    /**
+     * @param stagedBundleUrl URL of the load test files staged in S3, or null to upload them via SSH.
+     */
+    public ExecutorSettings withStagedBundleUrl(final String stagedBundleUrl) {
+        this.stagedBundleUrl = stagedBundleUrl;
+        return this;
+    }
+
+    public ExecutorSettings withSummaryOnly(final boolean summaryOnly) {
+        this.summaryOnly = summaryOnly;
+        return this;
+    }
+
+    public ExecutorSettings withSummaryBucketSeconds(final int summaryBucketSeconds) {
+        this.summaryBucketSeconds = summaryBucketSeconds;
+        return this;
+    }
+
+    public ExecutorSettings withRawLogsOnFailure(final boolean rawLogsOnFailure) {
+        this.rawLogsOnFailure = rawLogsOnFailure;
+        return this;
+    }
+
+    public ExecutorSettings withGeneratorStatsIntervalSeconds(final int generatorStatsIntervalSeconds) {
+        this.generatorStatsIntervalSeconds = generatorStatsIntervalSeconds;
+        return this;
+    }
+
+    public ExecutorSettings withJvmProfileEnabled(final boolean jvmProfileEnabled) {
+        this.jvmProfileEnabled = jvmProfileEnabled;
+        return this;
+    }
+
+    public ExecutorSettings withGcLogsEnabled(final boolean gcLogsEnabled) {
+        this.gcLogsEnabled = gcLogsEnabled;
+        return this;
+    }
+
+    /**
+     * @param logHarvestIntervalSeconds 0 to download the simulation log only at the end of the test.
+     */
+    public ExecutorSettings withLogHarvestIntervalSeconds(final int logHarvestIntervalSeconds) {
+        this.logHarvestIntervalSeconds = logHarvestIntervalSeconds;
+        return this;
+    }
+
+    public ExecutorSettings withCompactLogTransfer(final boolean compactLogTransfer) {
+        this.compactLogTransfer = compactLogTransfer;
+        return this;
+    }
+
+    public String getSshUser() {
+        return this.sshUser;
+    }
+
+    public File getSshPrivateKey() {
+        return this.sshPrivateKey;
+    }
+
+    public String getTestName() {
+        return this.testName;
+    }
+
+    public File getInstallScript() {
+        return this.installScript;
+    }
+
+    public File getGatlingSourceDir() {
+        return this.gatlingSourceDir;
+    }
+
+    public String getGatlingSimulation() {
+        return this.gatlingSimulation;
+    }
+
+    public File getSimulationConfig() {
+        return this.simulationConfig;
+    }
+
+    public File getGatlingResourcesDir() {
+        return this.gatlingResourcesDir;
+    }
+
+    public File getGatlingLocalResultsDir() {
+        return this.gatlingLocalResultsDir;
+    }
+
+    public List<String> getAdditionalFiles() {
+        return this.additionalFiles;
+    }
+
+    public String getGatlingRoot() {
+        return this.gatlingRoot;
+    }
+
+    public String getGatlingJavaOpts() {
+        return this.gatlingJavaOpts;
+    }
+
+    public boolean isDebugOutputEnabled() {
+        return this.debugOutputEnabled;
+    }
+
+    public boolean isRunDetached() {
+        return this.runDetached;
+    }
+
+    public boolean isIncrementalSync() {
+        return this.incrementalSync;
+    }
+
+    public boolean isBundleUpload() {
+        return this.bundleUpload;
+    }
+
+    public String getStagedBundleUrl() {
+        return this.stagedBundleUrl;
+    }
+
+    public boolean isSummaryOnly() {
+        return this.summaryOnly;
+    }
+
+    public int getSummaryBucketSeconds() {
+        return this.summaryBucketSeconds;
+    }
+
+    public boolean isRawLogsOnFailure() {
+        return this.rawLogsOnFailure;
+    }
+
+    public int getGeneratorStatsIntervalSeconds() {
+        return this.generatorStatsIntervalSeconds;
+    }
+
+    public boolean isJvmProfileEnabled() {
+        return this.jvmProfileEnabled;
+    }
+
+    public boolean isGcLogsEnabled() {
+        return this.gcLogsEnabled;
+    }
+
+    public int getLogHarvestIntervalSeconds() {
+        return this.logHarvestIntervalSeconds;
+    }
+
+    public boolean isCompactLogTransfer() {
+        return this.compactLogTransfer;
+    }
+}
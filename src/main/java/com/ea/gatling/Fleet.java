@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+/**
+ * A group of load generators in one region or availability zone, configured in the pom:
+ * <pre>
+ * &lt;fleets&gt;
+ *   &lt;fleet&gt;
+ *     &lt;name&gt;eu-west-1a&lt;/name&gt;
+ *     &lt;endpoint&gt;https://ec2.eu-west-1.amazonaws.com&lt;/endpoint&gt;
+ *     &lt;instanceCount&gt;4&lt;/instanceCount&gt;
+ *     &lt;amiId&gt;ami-12345678&lt;/amiId&gt;
+ *     &lt;securityGroupId&gt;sg-12345678&lt;/securityGroupId&gt;
+ *     &lt;subnetId&gt;subnet-12345678&lt;/subnetId&gt;
+ *   &lt;/fleet&gt;
+ * &lt;/fleets&gt;
+ * </pre>
+ * Settings which are not given default to the ec2.* properties. AMIs, key pairs, security groups and subnets are
+ * regional, so fleets in other regions usually need their own.
+ */
+public class Fleet {
+
+    private String name;
+    private String endpoint;
+    private Integer instanceCount;
+    private String instanceType;
+    private String instanceMix;
+    private String amiId;
+    private String keyPairName;
+    private String securityGroup;
+    private String securityGroupId;
+    private String subnetId;
+
+    public Fleet() {
+    }
+
+    public Fleet(final String name, final String endpoint, final Integer instanceCount, final String instanceType, final String instanceMix,
+                 final String amiId, final String keyPairName, final String securityGroup, final String securityGroupId, final String subnetId) {
+        this.name = name;
+        this.endpoint = endpoint;
+        this.instanceCount = instanceCount;
+        this.instanceType = instanceType;
+        this.instanceMix = instanceMix;
+        this.amiId = amiId;
+        this.keyPairName = keyPairName;
+        this.securityGroup = securityGroup;
+        this.securityGroupId = securityGroupId;
+        this.subnetId = subnetId;
+    }
+
+    /**
+     * @return A copy of this fleet where every setting which is not given is taken from the defaults.
+     */
+    public Fleet withDefaults(final Fleet defaults) {
+        final String fleetEndpoint = or(this.endpoint, defaults.endpoint);
+        // A fleet which only sets an instance type must not inherit the default mix.
+        final String fleetInstanceMix = this.instanceType != null || this.instanceCount != null ? this.instanceMix : or(this.instanceMix, defaults.instanceMix);
+        return new Fleet(
+                or(this.name, regionOf(fleetEndpoint)),
+                fleetEndpoint,
+                or(this.instanceCount, defaults.instanceCount),
+                or(this.instanceType, defaults.instanceType),
+                fleetInstanceMix,
+                or(this.amiId, defaults.amiId),
+                or(this.keyPairName, defaults.keyPairName),
+                or(this.securityGroup, defaults.securityGroup),
+                // The security group ID and the subnet belong together.
+                this.subnetId != null || this.securityGroupId != null ? this.securityGroupId : defaults.securityGroupId,
+                this.subnetId != null || this.securityGroupId != null ? this.subnetId : defaults.subnetId);
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public String getEndpoint() {
+        return this.endpoint;
+    }
+
+    public Integer getInstanceCount() {
+        return this.instanceCount;
+    }
+
+    public String getInstanceType() {
+        return this.instanceType;
+    }
+
+    public String getInstanceMix() {
+        return this.instanceMix;
+    }
+
+    public String getAmiId() {
+        return this.amiId;
+    }
+
+    public String getKeyPairName() {
+        return this.keyPairName;
+    }
+
+    public String getSecurityGroup() {
+        return this.securityGroup;
+    }
+
+    public String getSecurityGroupId() {
+        return this.securityGroupId;
+    }
+
+    public String getSubnetId() {
+        return this.subnetId;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (%s)", this.name, this.endpoint);
+    }
+
+    /**
+     * @return The region part of an EC2 endpoint, e.g. eu-west-1 for https://ec2.eu-west-1.amazonaws.com.
+     */
+    static String regionOf(final String endpoint) {
+        return endpoint.replaceFirst("^[a-z]+://", "").replaceFirst("^ec2\\.", "").replaceFirst("\\.amazonaws\\.com.*$", "");
+    }
+
+    private static <T> T or(final T value, final T defaultValue) {
+        return value != null ? value : defaultValue;
+    }
+}
@@ -3,6 +3,7 @@
  */
 package com.ea.gatling;
 
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.services.ec2.model.Instance;
 import com.amazonaws.services.ec2.model.Tag;
 
@@ -11,16 +12,31 @@ import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.codehaus.plexus.util.FileUtils;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Runs gatling script on remote EC2 instances.
@@ -28,9 +44,23 @@ import java.util.concurrent.Executors;
 @Mojo(name = "execute")
 public class GatlingAwsMojo extends BaseAwsMojo {
     /**
-     * The time in milliseconds between checking for the termination of all executors running load tests.
+     * The time in milliseconds a running instance may take until its SSH daemon accepts connections.
      */
-    private static final int SLEEP_TIME_TERMINATION_MS = 1000;
+    private static final long SSH_REACHABLE_TIMEOUT_MS = 5 * 60 * 1000;
+
+    /**
+     * The time in milliseconds staged load generators wait for the others before they start anyway.
+     */
+    private static final long START_WAIT_TIMEOUT_MS = 15 * 60 * 1000;
+
+    private static final String SUMMARY_REPORT_FILE = "summary.txt";
+    private static final String SUMMARY_TIMELINE_FILE = "summary-timeline.csv";
+
+    /**
+     * Stops Gatling on a load generator. The JVM shutdown hooks still run, so the simulation log written so far is kept.
+     * The bracket keeps the pattern from matching the shell running this command.
+     */
+    private static final String STOP_GATLING_COMMAND = "pkill -TERM -f '[i]o.gatling.app.Gatling' || true";
 
     @Parameter(property = "ssh.private.key", defaultValue = "${user.home}/gatling-private-key.pem")
     private File sshPrivateKey;
@@ -44,6 +74,136 @@ public class GatlingAwsMojo extends BaseAwsMojo {
     @Parameter(property = "gatling.install.script", defaultValue = "${project.basedir}/src/test/resources/scripts/install-gatling.sh")
     private File installScript;
 
+    /**
+     * Tuning script used when the load generator image was built with the bake goal. It is only part of the image
+     * fingerprint and is not run by this goal.
+     */
+    @Parameter(property = "gatling.tuning.script")
+    private File tuningScript;
+
+    /**
+     * When true, new instances are launched from the most recent image built by the bake goal for the current
+     * ec2.ami.id, install script and gatling.root instead of ec2.ami.id. The installation is then skipped. Needs the
+     * ec2:DescribeImages permission.
+     */
+    @Parameter(property = "ec2.ami.auto", defaultValue = "false")
+    private boolean ec2AmiAuto;
+
+    /**
+     * When true, load generators are leased from a pool of instances which keep running between load tests instead of
+     * being launched and terminated by every run. Concurrent runs never share instances, and the pool grows when a run
+     * needs more free instances than there are. Runs without a warm pool, and the collect goal, leave instances leased
+     * by other runs alone as well.
+     */
+    @Parameter(property = "ec2.warm.pool", defaultValue = "false")
+    private boolean ec2WarmPool;
+
+    /**
+     * Time after which the lease of a run expires unless the run renews it. The lease of a detached run doesn't expire,
+     * the collect goal returns its instances to the pool or terminates them.
+     */
+    @Parameter(property = "ec2.warm.pool.lease.minutes", defaultValue = "15")
+    private int ec2WarmPoolLeaseMinutes = 15;
+
+    /**
+     * Time after which free instances of the warm pool are terminated.
+     */
+    @Parameter(property = "ec2.warm.pool.idle.ttl.minutes", defaultValue = "60")
+    private int ec2WarmPoolIdleTtlMinutes = 60;
+
+    /**
+     * When true, the simulation starts at the same wall clock time on all load generators once every one of them is
+     * staged, instead of as soon as each one is ready. The clock offset of every load generator is measured as well and
+     * corrects the timestamps when the simulation logs are merged.
+     */
+    @Parameter(property = "gatling.coordinated.start", defaultValue = "false")
+    private boolean coordinatedStart;
+
+    /**
+     * Sample CPU, steal time, load, network, TCP retransmits, sockets and GC of every load generator during the test.
+     * The statistics are written to generator-stats.txt in the results and saturated load generators are reported.
+     * GC statistics need jstat on the load generators.
+     */
+    @Parameter(property = "gatling.generator.stats", defaultValue = "false")
+    private boolean generatorStatsEnabled;
+
+    @Parameter(property = "gatling.generator.stats.interval.seconds", defaultValue = "5")
+    private int generatorStatsIntervalSeconds = 5;
+
+    /**
+     * Maximum number of load generators waiting for SSH at the same time.
+     */
+    @Parameter(property = "gatling.concurrency.ready", defaultValue = "64")
+    private int readyConcurrency = 64;
+
+    /**
+     * Maximum number of load generators installing Gatling and receiving the simulation at the same time.
+     */
+    @Parameter(property = "gatling.concurrency.stage", defaultValue = "32")
+    private int stageConcurrency = 32;
+
+    /**
+     * Maximum number of load generators whose results are downloaded at the same time.
+     */
+    @Parameter(property = "gatling.concurrency.harvest", defaultValue = "32")
+    private int harvestConcurrency = 32;
+
+    /**
+     * Fleets of load generators in several regions or availability zones, each with its own instance count and
+     * network settings. They are launched in parallel and run one coordinated simulation. See {@link Fleet}.
+     */
+    @Parameter
+    private List<Fleet> fleets;
+
+    /**
+     * Mixed fleet of load generators as comma separated instance types and counts, e.g. "c5.4xlarge:2,m5.large:3".
+     * Overrides ec2.instance.type and ec2.instance.count.
+     */
+    @Parameter(property = "ec2.instance.mix")
+    private String ec2InstanceMix;
+
+    /**
+     * Comma separated instance types any of which may be used for the load generators, e.g. "c5.2xlarge,c5a.2xlarge,c6i.2xlarge".
+     * The instances are launched by an instant EC2 Fleet which picks the pools with spare capacity, so a shortage of
+     * one type doesn't fail the run. Needs the ec2:CreateFleet, ec2:CreateLaunchTemplate and ec2:DeleteLaunchTemplate
+     * permissions. Running instances of these types with the load generator tag are reused instead, e.g. the ones kept
+     * by ec2.keep.alive. Not used with ec2.warm.pool.
+     */
+    @Parameter(property = "ec2.fleet.instance.types")
+    private String ec2FleetInstanceTypes;
+
+    /**
+     * Request the diversified fleet as Spot instances, falling back to on demand for capacity Spot can't fulfill.
+     * Load generators which receive an interruption notice before the start hand their load to the others.
+     */
+    @Parameter(property = "ec2.fleet.spot", defaultValue = "false")
+    private boolean ec2FleetSpot;
+
+    /**
+     * Total vCPUs of the diversified fleet. Defaults to the vCPUs of ec2.instance.type times ec2.instance.count.
+     */
+    @Parameter(property = "ec2.fleet.target.vcpus", defaultValue = "0")
+    private int ec2FleetTargetVcpus;
+
+    /**
+     * Total number of users of the simulation. Each load generator gets a share weighted by the vCPUs and network
+     * bandwidth of its instance type, written to instance.txt next to num_instance and instance_count.
+     */
+    @Parameter(property = "gatling.total.users", defaultValue = "0")
+    private int totalUsers;
+
+    /**
+     * Total request rate per second of the simulation, split like gatling.total.users.
+     */
+    @Parameter(property = "gatling.total.rate", defaultValue = "0")
+    private double totalRate;
+
+    /**
+     * Size of an ID space, e.g. of test accounts, split into a consecutive range per load generator. Defaults to gatling.total.users.
+     */
+    @Parameter(property = "gatling.id.range", defaultValue = "0")
+    private long idRange;
+
     @Parameter(defaultValue = "${project.basedir}/src/test/scala")
     private File gatlingSourceDir;
 
@@ -70,10 +230,40 @@ public class GatlingAwsMojo extends BaseAwsMojo {
 
     /**
      * The JAVA_OPTS used when launching Gatling on the remote load generator. This allows users of the plugin to increase the heap space or change any other JVM settings.
+     * Options given here are used as they are, nothing is derived by gatling.jvm.profile then. Defaults to "-Xms1g -Xmx6g" if the profile is disabled.
      */
-    @Parameter(property = "gatling.java.opts", defaultValue = "-Xms1g -Xmx6g")
+    @Parameter(property = "gatling.java.opts")
     private String gatlingJavaOpts;
 
+    /**
+     * Derive heap size, garbage collector, direct memory and thread stack size from the memory and cores of each load
+     * generator if gatling.java.opts is not set. The derived heap takes most of the memory and is pre-touched at start.
+     */
+    @Parameter(property = "gatling.jvm.profile", defaultValue = "false")
+    private boolean jvmProfileEnabled;
+
+    /**
+     * Log the GC pauses of Gatling on each load generator, download the logs with the results and print pause times and allocation rate per host.
+     */
+    @Parameter(property = "gatling.gc.logs", defaultValue = "false")
+    private boolean gcLogsEnabled;
+
+    /**
+     * Interval in seconds in which the part of each simulation log written since the last download is downloaded while
+     * the test is running, so only the rest is left to download at the end. Logs downloaded this way are transferred as
+     * plain text, gatling.log.compact doesn't apply to them. 0 downloads the whole log at the end.
+     */
+    @Parameter(property = "gatling.log.harvest.interval.seconds", defaultValue = "0")
+    private int logHarvestIntervalSeconds;
+
+    /**
+     * Encode each simulation log on its load generator before it is downloaded at the end of the test, which transfers
+     * several times fewer bytes than the raw log. Needs Java on the load generators. Not used for logs downloaded during
+     * the test with gatling.log.harvest.interval.seconds.
+     */
+    @Parameter(property = "gatling.log.compact", defaultValue = "true")
+    private boolean compactLogTransfer = true;
+
     @Parameter(property = "files")
     private List<String> files;
 
@@ -89,6 +279,112 @@ public class GatlingAwsMojo extends BaseAwsMojo {
     @Parameter(property = "s3.subfolder", defaultValue = "")
     private String s3Subfolder;
 
+    /**
+     * Replace the simulation logs in the results by their compact encoding once the report is built, so the raw results
+     * take a fraction of the space in S3. Decode them with the SimulationLogCodec of the plugin jar to rebuild a report.
+     */
+    @Parameter(property = "s3.archive.compact.logs", defaultValue = "false")
+    private boolean s3ArchiveCompactLogs;
+
+    /**
+     * When true, the simulation logs of all load generators are merged into a single simulation.log ordered by time
+     * before the report is generated.
+     */
+    @Parameter(property = "gatling.merge.logs", defaultValue = "true")
+    private boolean mergeLogs = true;
+
+    /**
+     * When true, the simulation logs of the individual load generators are kept in the hosts sub directory of the
+     * results after merging. They are deleted otherwise.
+     */
+    @Parameter(property = "gatling.keep.host.logs", defaultValue = "false")
+    private boolean keepHostLogs;
+
+    /**
+     * When true, each load generator reduces its simulation log to response time histograms per request and time
+     * bucket, and only these summaries are downloaded and merged into summary.txt and summary-timeline.csv. This cuts
+     * the amount of data transferred after long tests. The Gatling HTML report is only built if raw logs are available.
+     */
+    @Parameter(property = "gatling.summary.only", defaultValue = "false")
+    private boolean summaryOnly;
+
+    /**
+     * Width of the time buckets of the summaries in seconds.
+     */
+    @Parameter(property = "gatling.summary.bucket.seconds", defaultValue = "10")
+    private int summaryBucketSeconds = 10;
+
+    /**
+     * When true and gatling.summary.only is set, the raw simulation log of a load generator is downloaded anyway if its simulation failed.
+     */
+    @Parameter(property = "gatling.raw.logs.on.failure", defaultValue = "true")
+    private boolean rawLogsOnFailure = true;
+
+    /**
+     * When true, the simulation log of every load generator is followed while the test is running, and cluster wide
+     * throughput, error rate, response time percentiles and active users are printed periodically.
+     */
+    @Parameter(property = "live.metrics.enabled", defaultValue = "false")
+    private boolean liveMetricsEnabled;
+
+    @Parameter(property = "live.metrics.interval.seconds", defaultValue = "5")
+    private int liveMetricsIntervalSeconds = 5;
+
+    /**
+     * Local port serving the live metrics in Prometheus format on /metrics and as JSON on /metrics.json. 0 disables the endpoint.
+     */
+    @Parameter(property = "live.metrics.port", defaultValue = "0")
+    private int liveMetricsPort;
+
+    /**
+     * Abort the load test on all load generators when the cluster wide error rate in percent stays above this value for
+     * slo.sustain.seconds. Setting any SLO threshold enables live metrics.
+     */
+    @Parameter(property = "slo.max.error.rate")
+    private Double sloMaxErrorRate;
+
+    /**
+     * Abort the load test on all load generators when the cluster wide 99th percentile response time in milliseconds
+     * stays above this value for slo.sustain.seconds.
+     */
+    @Parameter(property = "slo.max.p99.ms")
+    private Long sloMaxP99Ms;
+
+    @Parameter(property = "slo.sustain.seconds", defaultValue = "30")
+    private int sloSustainSeconds = 30;
+
+    /**
+     * Maximum number of report files uploaded to S3 at the same time.
+     */
+    @Parameter(property = "s3.upload.concurrency", defaultValue = "32")
+    private int s3UploadConcurrency = 32;
+
+    /**
+     * Time in seconds after which uploading the report to S3 is abandoned. Files not uploaded by then are listed as skipped.
+     */
+    @Parameter(property = "s3.upload.timeout.seconds", defaultValue = "600")
+    private int s3UploadTimeoutSeconds = 600;
+
+    /**
+     * Endpoint of the S3 API, e.g. a local S3 compatible server for testing. Uses the default AWS endpoint if not set.
+     */
+    @Parameter(property = "s3.endpoint")
+    private String s3Endpoint;
+
+    /**
+     * When true, the files of the load test are uploaded to S3 once as a single bundle, and each load generator
+     * downloads it from there in parallel via a presigned URL. Load generators fall back to SSH uploads if staging or
+     * downloading the bundle fails.
+     */
+    @Parameter(property = "s3.staging.enabled", defaultValue = "false")
+    private boolean s3StagingEnabled;
+
+    /**
+     * Bucket used for staging the load test files. Defaults to s3.bucket.
+     */
+    @Parameter(property = "s3.staging.bucket")
+    private String s3StagingBucket;
+
     @Parameter(property = "propagate.gatling.failure", defaultValue = "false")
     private boolean propagateGatlingFailure;
 
@@ -97,7 +393,8 @@ public class GatlingAwsMojo extends BaseAwsMojo {
 
     /**
      * When true, this will run Gatling detached, and disconnect from SSH while Gatling is running.  Leaves a
-     *    file called 'gatling.pid' with the pid of the java process in it.
+     *    file called 'gatling.pid' with the pid of the Gatling process in it, and 'gatling.exit' with its exit code once
+     *    it is done. The collect goal downloads the results and builds the report afterwards.
      * ec2.keep.alive ignored when set to true
      * ec2.force.termination ignored when set to true
      * All output turned off
@@ -105,65 +402,217 @@ public class GatlingAwsMojo extends BaseAwsMojo {
     @Parameter(property = "ec2.execute.detached", defaultValue = "false")
     private boolean ec2ExecuteDetached = false;
 
+    /**
+     * When true, only files which are new or changed since the last run are uploaded to a load generator. This mostly
+     * helps with instances reused via ec2.keep.alive, which keep a manifest of the files uploaded to them. The install
+     * script is only run again if it changed since its last successful run.
+     */
+    @Parameter(property = "gatling.incremental.sync", defaultValue = "true")
+    private boolean incrementalSync = true;
+
+    /**
+     * When true, files are uploaded to a load generator as a single gzip compressed tar stream, which is unpacked
+     * remotely in one step. When false, each file is copied with its own SCP transfer.
+     */
+    @Parameter(property = "ssh.bundle.upload", defaultValue = "true")
+    private boolean bundleUpload = true;
+
 
     public void execute() throws MojoExecutionException {
         final AwsGatlingRunner runner = new AwsGatlingRunner(this.ec2EndPoint);
         runner.setInstanceTag(new Tag(this.ec2TagName, this.ec2TagValue));
+        if (this.s3Endpoint != null && !this.s3Endpoint.isEmpty()) {
+            runner.setS3Endpoint(this.s3Endpoint, this.s3Region);
+        }
+        runner.setS3UploadConcurrency(this.s3UploadConcurrency);
+        runner.setS3UploadTimeoutMs(TimeUnit.SECONDS.toMillis(this.s3UploadTimeoutSeconds));
+
+        final long timeStamp = System.currentTimeMillis();
+        this.testName = this.testName.equals("") ? this.gatlingSimulation.toLowerCase() + "-" + timeStamp : this.testName + "-" + timeStamp;
+
+        final RunTimeline timeline = new RunTimeline();
+
+        // Stage the load test files in S3 while the instances are starting up.
+        final String stagingBucket = this.s3StagingBucket != null && !this.s3StagingBucket.isEmpty() ? this.s3StagingBucket : this.s3Bucket;
+        final String stagingKey = String.format("%s/staging/%s/bundle.tar.gz", this.s3Subfolder, this.testName);
+        final CompletableFuture<URL> stagedBundle = this.s3StagingEnabled
+                ? CompletableFuture.supplyAsync(() -> timeline.call(null, "s3 staging", span -> this.stageBundle(runner, stagingBucket, stagingKey)))
+                : CompletableFuture.completedFuture(null);
+
+        // Launch the fleets of all regions in parallel, each with its own EC2 client.
+        final List<Fleet> fleets = this.getFleets();
+        final Map<Fleet, AwsGatlingRunner> runners = new LinkedHashMap<>();
+        final Map<Fleet, Map<String, Integer>> instanceMixes = new HashMap<>();
+        for (final Fleet fleet : fleets) {
+            final AwsGatlingRunner fleetRunner = fleet.getEndpoint().equals(this.ec2EndPoint) ? runner : new AwsGatlingRunner(fleet.getEndpoint());
+            fleetRunner.setInstanceTag(new Tag(this.ec2TagName, this.ec2TagValue));
+            runners.put(fleet, fleetRunner);
+            instanceMixes.put(fleet, this.getInstanceMix(fleet));
+        }
 
-        final Map<String, Instance> instances = this.ec2SecurityGroupId != null
-                ? runner.launchEC2Instances(this.instanceType, this.instanceCount, this.ec2KeyPairName, this.ec2SecurityGroupId, this.ec2SubnetId, this.ec2AmiId, true)
-                : runner.launchEC2Instances(this.instanceType, this.instanceCount, this.ec2KeyPairName, this.ec2SecurityGroup, this.ec2AmiId, true);
+        final List<WarmPool> warmPools = Collections.synchronizedList(new ArrayList<>());
+        final Map<String, Instance> instances = new ConcurrentHashMap<>();
+        final Map<String, Fleet> fleetByInstanceId = new ConcurrentHashMap<>();
+        final Map<String, CompletableFuture<Instance>> runningInstances = new LinkedHashMap<>();
+        final List<CompletableFuture<Map<String, Instance>>> launches = new ArrayList<>();
+        for (final Fleet fleet : fleets) {
+            launches.add(CompletableFuture.supplyAsync(() -> timeline.call("fleet " + fleet.getName(), "launch",
+                    span -> this.launchFleet(fleet, runners.get(fleet), instanceMixes.get(fleet), warmPools))));
+        }
+        for (int i = 0; i < fleets.size(); i++) {
+            final Map<String, Instance> fleetInstances = launches.get(i).join();
+            for (final String instanceId : fleetInstances.keySet()) {
+                fleetByInstanceId.put(instanceId, fleets.get(i));
+            }
+            instances.putAll(fleetInstances);
+            runningInstances.putAll(runners.get(fleets.get(i)).watchInstances(fleetInstances));
+        }
+        final long launchedTimeMs = System.currentTimeMillis();
         final ConcurrentHashMap<String, Integer> completedHosts = new ConcurrentHashMap<>();
 
-        // launch all tests in parallel
-        final ExecutorService executor = Executors.newFixedThreadPool(this.instanceCount);
+        // Weight the load of every load generator by the capacity of its instance type.
+        final List<String> instanceIds = new ArrayList<>(runningInstances.keySet());
+        final List<String> instanceTypes = new ArrayList<>();
+        for (final String instanceId : instanceIds) {
+            instanceTypes.add(instances.get(instanceId).getInstanceType());
+        }
+        final Map<String, Set<String>> hostsByFleet = new ConcurrentHashMap<>();
+        final Map<String, InstanceCapacity> capacities = runner.describeInstanceCapacities(instanceTypes);
+        final StartCoordinator.LoadPartitioner partitioner = types -> LoadShare.partition(types, capacities,
+                this.totalUsers, this.totalRate, this.idRange > 0 ? this.idRange : this.totalUsers);
+        final List<LoadShare> loadShares = partitioner.partition(instanceTypes);
+        for (final LoadShare loadShare : loadShares) {
+            System.out.println("Load share of " + loadShare);
+        }
+
+        final URL stagedBundleUrl = stagedBundle.join();
 
-        final long timeStamp = System.currentTimeMillis();
-        this.testName = this.testName.equals("") ? this.gatlingSimulation.toLowerCase() + "-" + timeStamp : this.testName + "-" + timeStamp;
         final File resultsDir = new File(this.gatlingLocalResultsDir, this.testName);
         final boolean success = resultsDir.mkdirs();
         System.out.format("created result dir %s: %s%n", resultsDir.getAbsolutePath(), success);
 
         final Collection<Instance> values = instances.values();
-        int numInstance = 0;
-        for (final Instance instance : values) {
-            final String host = this.getPreferredHostName(instance);
-            final Runnable worker = new AwsGatlingExecutor(
-                    host,
-                    this.sshUser,
-                    this.sshPrivateKey,
-                    this.testName,
-                    this.installScript,
-                    this.gatlingSourceDir,
-                    this.gatlingSimulation,
-                    this.simulationConfig,
-                    this.gatlingResourcesDir,
-                    this.gatlingLocalResultsDir,
-                    this.files,
-                    numInstance++,
-                    this.instanceCount,
-                    completedHosts,
-                    this.gatlingRoot,
-                    this.gatlingJavaOpts,
-                    this.debugOutputEnabled,
-                    this.ec2ExecuteDetached);
-            executor.execute(worker);
-        }
-        executor.shutdown();
-
-        while (!executor.isTerminated()) {
-            try {
-                Thread.sleep(SLEEP_TIME_TERMINATION_MS);
-            } catch (final InterruptedException e) {
-            }
+        final boolean sloGuardEnabled = (this.sloMaxErrorRate != null || this.sloMaxP99Ms != null) && !this.ec2ExecuteDetached;
+        final LiveMetrics liveMetrics = (this.liveMetricsEnabled || sloGuardEnabled) && !this.ec2ExecuteDetached ? new LiveMetrics() : null;
+        final LiveMetricsReporter liveMetricsReporter = liveMetrics != null
+                ? new LiveMetricsReporter(liveMetrics, this.liveMetricsIntervalSeconds, this.liveMetricsPort)
+                : null;
+        final SloGuard sloGuard = sloGuardEnabled
+                ? new SloGuard(this.sloMaxErrorRate, this.sloMaxP99Ms, TimeUnit.SECONDS.toMillis(this.sloSustainSeconds), () -> this.stopGatling(values))
+                : null;
+        if (sloGuard != null) {
+            liveMetricsReporter.addListener(sloGuard);
+        }
+        if (liveMetricsReporter != null) {
+            liveMetricsReporter.start();
+        }
+
+        final GeneratorStats generatorStats = this.generatorStatsEnabled && !this.ec2ExecuteDetached ? new GeneratorStats() : null;
+        final ExecutorSettings settings = this.getExecutorSettings(stagedBundleUrl);
+
+        // Move every load generator through the stages as soon as its instance is running. Each stage limits how many
+        // hosts it works on at once. Running the simulation has no limit, all hosts have to wait for the common start.
+        final StartCoordinator startCoordinator = new StartCoordinator(this.coordinatedStart, runningInstances.size(), START_WAIT_TIMEOUT_MS, partitioner);
+        final PipelineStage ready = new PipelineStage("ready", this.readyConcurrency);
+        final PipelineStage staging = new PipelineStage("stage", this.stageConcurrency);
+        final PipelineStage running = new PipelineStage("run", 0);
+        final PipelineStage harvesting = new PipelineStage("harvest", this.harvestConcurrency);
+        final List<CompletableFuture<AwsGatlingExecutor>> loadTests = new ArrayList<>();
+        for (int i = 0; i < instanceIds.size(); i++) {
+            final String instanceId = instanceIds.get(i);
+            final LoadShare loadShare = loadShares.get(i);
+            final AtomicReference<String> host = new AtomicReference<>();
+
+            final CompletableFuture<AwsGatlingExecutor> readied = ready.then(runningInstances.get(instanceId), instance -> {
+                instances.put(instance.getInstanceId(), instance);
+                host.set(this.getPreferredHostName(instance));
+                hostsByFleet.computeIfAbsent(fleetByInstanceId.get(instanceId).getName(), name -> ConcurrentHashMap.newKeySet()).add(host.get());
+                timeline.record(host.get(), "boot", launchedTimeMs, System.currentTimeMillis());
+                timeline.run(host.get(), "ssh ready", span -> SshClient.waitUntilReachable(host.get(), SSH_REACHABLE_TIMEOUT_MS));
+                return new AwsGatlingExecutor(host.get(), settings, loadShare, completedHosts, liveMetrics, startCoordinator, generatorStats, timeline);
+            });
+            final CompletableFuture<AwsGatlingExecutor> staged = staging.then(readied, executor -> {
+                executor.stage();
+                return executor;
+            }).whenComplete((executor, e) -> {
+                if (e != null) {
+                    // Don't let the others wait for a load generator which will never arrive.
+                    startCoordinator.leave(host.get());
+                }
+            });
+            final CompletableFuture<AwsGatlingExecutor> ran = running.then(staged, executor -> {
+                try {
+                    executor.runSimulation();
+                } finally {
+                    startCoordinator.leave(host.get());
+                }
+                return executor;
+            });
+            loadTests.add(harvesting.then(ran, executor -> {
+                executor.harvest();
+                return executor;
+            }).exceptionally(e -> {
+                System.err.format("Load generator %s failed: %s%n", instanceId, e.getCause() != null ? e.getCause().getMessage() : e);
+                return null;
+            }));
+        }
+
+        // Completes when the last load generator is done, there is no need to poll.
+        CompletableFuture.allOf(loadTests.toArray(new CompletableFuture<?>[0])).join();
+        for (final PipelineStage stage : Arrays.asList(ready, staging, running, harvesting)) {
+            stage.shutdown();
+            stage.printStatistics();
+        }
+        System.out.println("Finished all load generators");
+        startCoordinator.printClockOffsets();
+        if (generatorStats != null) {
+            generatorStats.writeReport(resultsDir);
+        }
+
+        if (liveMetricsReporter != null) {
+            liveMetricsReporter.stop();
+        }
+
+        // All remote work is done, release the pooled SSH connections before the instances go away.
+        SshClient.getConnectionPool().printStatistics();
+        SshClient.getConnectionPool().closeAll();
+
+        if (stagedBundleUrl != null) {
+            runner.deleteStagedFile(stagingBucket, stagingKey);
         }
-        System.out.println("Finished all threads");
 
         final int failedInstancesCount = this.listFailedInstances(instances, completedHosts);
+        final boolean aborted = sloGuard != null && sloGuard.isAborted();
+        if (aborted) {
+            System.out.format("Load test was aborted by the SLO guard: %s%n", sloGuard.getAbortReason());
+        }
 
-        // If the ec2KeepAlive value is true then we need to skip terminating.
-        if ((failedInstancesCount == 0 || this.ec2ForceTermination) && !this.ec2KeepAlive && !this.ec2ExecuteDetached) {
-            runner.terminateInstances(instances.keySet());
+        // Leased instances go back to the warm pool instead of being terminated.
+        // Otherwise, if the ec2KeepAlive value is true then we need to skip terminating.
+        // Failures caused by an abort are expected, so they don't keep the instances around for debugging.
+        if (!warmPools.isEmpty()) {
+            for (final WarmPool warmPool : warmPools) {
+                if (this.ec2ExecuteDetached) {
+                    warmPool.detach();
+                } else {
+                    warmPool.release();
+                }
+                warmPool.reap();
+                warmPool.printStatistics();
+            }
+            if (this.ec2ExecuteDetached) {
+                System.out.println("EC2 instances are running detached, they stay leased until their results are collected");
+            }
+        } else if ((failedInstancesCount == 0 || this.ec2ForceTermination || aborted) && !this.ec2KeepAlive && !this.ec2ExecuteDetached) {
+            for (final Map.Entry<Fleet, AwsGatlingRunner> fleetRunner : runners.entrySet()) {
+                final List<String> fleetInstanceIds = new ArrayList<>();
+                for (final Map.Entry<String, Fleet> instanceFleet : fleetByInstanceId.entrySet()) {
+                    if (instanceFleet.getValue() == fleetRunner.getKey()) {
+                        fleetInstanceIds.add(instanceFleet.getKey());
+                    }
+                }
+                terminateUnleasedInstances(fleetRunner.getValue(), fleetInstanceIds);
+            }
         } else if (this.ec2KeepAlive) {
             // Send a message out stating the machines are still running
             System.out.println("EC2 instances are still running for the next load test");
@@ -172,19 +621,40 @@ public class GatlingAwsMojo extends BaseAwsMojo {
         }
 
         if (!this.ec2ExecuteDetached) {
+            if (fleets.size() > 1) {
+                // Break the results down by fleet before the logs of the individual hosts are merged.
+                this.writeFleetReports(resultsDir, hostsByFleet);
+            }
+            if (this.mergeLogs) {
+                timeline.run(null, "merge logs", span -> mergeSimulationLogs(resultsDir, startCoordinator.getClockOffsets(), this.keepHostLogs));
+            }
+
+            final boolean summarized = this.summaryOnly && this.mergeSummaries(resultsDir);
+            final boolean hasRawLogs = hasSimulationLogs(resultsDir);
+
             // Build report
-            final String reportCommand = String.format("%s -ro %s/%s", this.gatlingLocalHome, this.gatlingLocalResultsDir, this.testName);
-            System.out.format("Report command: %s%n", reportCommand);
-            System.out.println(this.executeCommand(reportCommand));
+            if (hasRawLogs) {
+                final String reportCommand = String.format("%s -ro %s/%s", this.gatlingLocalHome, this.gatlingLocalResultsDir, this.testName);
+                System.out.format("Report command: %s%n", reportCommand);
+                timeline.run(null, "report", span -> System.out.println(executeCommand(reportCommand)));
+            } else {
+                System.out.println("No simulation logs downloaded, skipping Gatling report.");
+            }
 
             // Upload report to S3
             if (this.s3UploadEnabled) {
+                if (this.s3ArchiveCompactLogs) {
+                    timeline.run(null, "compact logs", span -> compactSimulationLogs(resultsDir));
+                }
                 System.out.format("Trying to upload simulation to S3 location %s/%s/%s%n", this.s3Bucket, this.s3Subfolder,
                         this.testName);
-                runner.uploadToS3(this.s3Bucket, this.s3Subfolder + "/" + this.testName,
-                        new File(this.gatlingLocalResultsDir + File.separator + this.testName));
+                timeline.run(null, "s3 upload", span -> {
+                    runner.uploadToS3(this.s3Bucket, this.s3Subfolder + "/" + this.testName,
+                            new File(this.gatlingLocalResultsDir + File.separator + this.testName));
+                    span.addBytes(FileUtils.sizeOfDirectory(resultsDir));
+                });
 
-                final String url = this.getS3Url();
+                final String url = this.getS3Url(hasRawLogs || !summarized ? "index.html" : SUMMARY_REPORT_FILE);
                 System.out.format("Results are on %s%n", url);
 
                 try {
@@ -197,23 +667,412 @@ public class GatlingAwsMojo extends BaseAwsMojo {
                 System.out.println("Skipping upload to S3.");
             }
         } else {
-            System.out.println("Running detached, no reports available.");
+            System.out.format("Running detached, collect the results once the simulation is done with: mvn com.ea.gatling:gatling-aws-maven-plugin:collect -Dgatling.collect.test.name=%s%n", this.testName);
         }
 
+        // Next to results.txt, so tools picking up the results address find the timeline as well.
+        timeline.write(new File(System.getProperty("user.dir")));
+
+        if (this.propagateGatlingFailure && aborted) {
+            throw new MojoExecutionException("Load test was aborted by the SLO guard: " + sloGuard.getAbortReason());
+        }
         if (this.propagateGatlingFailure && failedInstancesCount > 0) {
             throw new MojoExecutionException("Some gatling simulation failed: " + failedInstancesCount);
         }
     }
 
-    private String getS3Url() {
-        if ("us-east-1".equalsIgnoreCase(this.s3Region)) {
+    private ExecutorSettings getExecutorSettings(final URL stagedBundleUrl) {
+        return new ExecutorSettings()
+                .withSshUser(this.sshUser)
+                .withSshPrivateKey(this.sshPrivateKey)
+                .withTestName(this.testName)
+                .withInstallScript(this.installScript)
+                .withGatlingSourceDir(this.gatlingSourceDir)
+                .withGatlingSimulation(this.gatlingSimulation)
+                .withSimulationConfig(this.simulationConfig)
+                .withGatlingResourcesDir(this.gatlingResourcesDir)
+                .withGatlingLocalResultsDir(this.gatlingLocalResultsDir)
+                .withAdditionalFiles(this.files)
+                .withGatlingRoot(this.gatlingRoot)
+                .withGatlingJavaOpts(this.gatlingJavaOpts)
+                .withDebugOutputEnabled(this.debugOutputEnabled)
+                .withRunDetached(this.ec2ExecuteDetached)
+                .withIncrementalSync(this.incrementalSync)
+                .withBundleUpload(this.bundleUpload)
+                .withStagedBundleUrl(stagedBundleUrl == null ? null : stagedBundleUrl.toString())
+                .withSummaryOnly(this.summaryOnly)
+                .withSummaryBucketSeconds(this.summaryBucketSeconds)
+                .withRawLogsOnFailure(this.rawLogsOnFailure)
+                .withGeneratorStatsIntervalSeconds(this.generatorStatsIntervalSeconds)
+                .withJvmProfileEnabled(this.jvmProfileEnabled)
+                .withGcLogsEnabled(this.gcLogsEnabled)
+                .withLogHarvestIntervalSeconds(this.logHarvestIntervalSeconds)
+                .withCompactLogTransfer(this.compactLogTransfer);
+    }
+
+    /**
+     * @return The configured fleets, or a single fleet from the ec2.* properties if there are none.
+     */
+    private List<Fleet> getFleets() {
+        final Fleet defaults = new Fleet(null, this.ec2EndPoint, this.instanceCount, this.instanceType, this.ec2InstanceMix,
+                this.ec2AmiId, this.ec2KeyPairName, this.ec2SecurityGroup, this.ec2SecurityGroupId, this.ec2SubnetId);
+        final List<Fleet> resolved = new ArrayList<>();
+        if (this.fleets == null || this.fleets.isEmpty()) {
+            resolved.add(new Fleet().withDefaults(defaults));
+        } else {
+            for (final Fleet fleet : this.fleets) {
+                resolved.add(fleet.withDefaults(defaults));
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * Launch or lease the instances of one fleet.
+     */
+    private Map<String, Instance> launchFleet(final Fleet fleet, final AwsGatlingRunner runner, final Map<String, Integer> instanceMix, final List<WarmPool> warmPools) {
+        final String amiId = this.selectAmi(runner, fleet.getAmiId());
+        final Map<String, Instance> instances = new HashMap<>();
+        final boolean diversified = this.ec2FleetInstanceTypes != null && !this.ec2FleetInstanceTypes.trim().isEmpty();
+        if (diversified && this.ec2WarmPool) {
+            System.out.format("Fleet %s: ec2.warm.pool is set, leasing %s instead of launching a diversified fleet of %s%n",
+                    fleet, instanceMix.keySet(), this.ec2FleetInstanceTypes);
+        } else if (diversified) {
+            final List<String> fleetInstanceTypes = new ArrayList<>();
+            for (final String fleetInstanceType : this.ec2FleetInstanceTypes.split(",")) {
+                fleetInstanceTypes.add(fleetInstanceType.trim());
+            }
+            // Like a single instance type, reuse the instances kept alive by an earlier run instead of launching more.
+            for (final String fleetInstanceType : fleetInstanceTypes) {
+                instances.putAll(runner.findExistingInstances(fleetInstanceType));
+            }
+            if (!instances.isEmpty()) {
+                System.out.format("Fleet %s: reusing %d existing instances%n", fleet, instances.size());
+                return instances;
+            }
+            final int targetVcpus = this.ec2FleetTargetVcpus > 0 ? this.ec2FleetTargetVcpus : this.getVcpus(runner, instanceMix);
+            instances.putAll(runner.launchDiversifiedInstances(fleetInstanceTypes, targetVcpus, this.ec2FleetSpot,
+                    fleet.getKeyPairName(), fleet.getSecurityGroup(), fleet.getSecurityGroupId(), fleet.getSubnetId(), amiId));
+            System.out.format("Fleet %s: %d instances%n", fleet, instances.size());
+            return instances;
+        }
+        for (final Map.Entry<String, Integer> instanceGroup : instanceMix.entrySet()) {
+            final String groupInstanceType = instanceGroup.getKey();
+            if (this.ec2WarmPool) {
+                final WarmPool warmPool = new WarmPool(runner, groupInstanceType, this.testName, TimeUnit.MINUTES.toMillis(this.ec2WarmPoolLeaseMinutes), TimeUnit.MINUTES.toMillis(this.ec2WarmPoolIdleTtlMinutes));
+                instances.putAll(warmPool.lease(instanceGroup.getValue(), (count, tags) -> runner.launchNewInstances(
+                        groupInstanceType, count, fleet.getKeyPairName(), fleet.getSecurityGroup(), fleet.getSecurityGroupId(), fleet.getSubnetId(), amiId, tags)));
+                warmPool.startRenewal();
+                warmPools.add(warmPool);
+            } else {
+                instances.putAll(fleet.getSecurityGroupId() != null
+                        ? runner.launchEC2Instances(groupInstanceType, instanceGroup.getValue(), fleet.getKeyPairName(), fleet.getSecurityGroupId(), fleet.getSubnetId(), amiId, true)
+                        : runner.launchEC2Instances(groupInstanceType, instanceGroup.getValue(), fleet.getKeyPairName(), fleet.getSecurityGroup(), amiId, true));
+            }
+        }
+        System.out.format("Fleet %s: %d instances%n", fleet, instances.size());
+        return instances;
+    }
+
+    /**
+     * Terminate the instances this run launched or reused. An instance another run leased from the warm pool in the
+     * meantime keeps running, since it is running that run's load test now.
+     */
+    private static void terminateUnleasedInstances(final AwsGatlingRunner runner, final List<String> instanceIds) {
+        if (instanceIds.isEmpty()) {
+            return;
+        }
+        final List<String> unleased = new ArrayList<>();
+        for (final Instance instance : runner.describeInstances(instanceIds).values()) {
+            if (WarmPool.isLeased(instance)) {
+                System.out.format("Instance %s was leased by another run in the meantime, keeping it%n", instance.getInstanceId());
+            } else {
+                unleased.add(instance.getInstanceId());
+            }
+        }
+        if (!unleased.isEmpty()) {
+            runner.terminateInstances(unleased);
+        }
+    }
+
+    /**
+     * @return Total vCPUs of an instance mix.
+     */
+    private int getVcpus(final AwsGatlingRunner runner, final Map<String, Integer> instanceMix) {
+        final Map<String, InstanceCapacity> capacities = runner.describeInstanceCapacities(instanceMix.keySet());
+        int vcpus = 0;
+        for (final Map.Entry<String, Integer> instanceGroup : instanceMix.entrySet()) {
+            vcpus += capacities.getOrDefault(instanceGroup.getKey(), InstanceCapacity.UNKNOWN).getVcpus() * instanceGroup.getValue();
+        }
+        return vcpus;
+    }
+
+    /**
+     * @return Number of instances by instance type, from the instance mix of the fleet or else its instance type and count.
+     */
+    private Map<String, Integer> getInstanceMix(final Fleet fleet) throws MojoExecutionException {
+        final Map<String, Integer> instanceMix = new LinkedHashMap<>();
+        if (fleet.getInstanceMix() == null || fleet.getInstanceMix().trim().isEmpty()) {
+            instanceMix.put(fleet.getInstanceType(), fleet.getInstanceCount());
+            return instanceMix;
+        }
+
+        for (final String group : fleet.getInstanceMix().split(",")) {
+            final String[] typeAndCount = group.trim().split(":");
+            try {
+                instanceMix.merge(typeAndCount[0].trim(), typeAndCount.length > 1 ? Integer.parseInt(typeAndCount[1].trim()) : 1, Integer::sum);
+            } catch (final NumberFormatException e) {
+                throw new MojoExecutionException("Invalid ec2.instance.mix entry, expected <instance type>:<count>: " + group);
+            }
+        }
+        return instanceMix;
+    }
+
+    /**
+     * Write a summary report per fleet, so results from different regions can be compared.
+     */
+    private void writeFleetReports(final File resultsDir, final Map<String, Set<String>> hostsByFleet) {
+        final long bucketMs = TimeUnit.SECONDS.toMillis(this.summaryBucketSeconds);
+        for (final Map.Entry<String, Set<String>> fleetHosts : hostsByFleet.entrySet()) {
+            final SimulationLogSummary summary = new SimulationLogSummary(bucketMs);
+            for (final String host : fleetHosts.getValue()) {
+                final File hostLog = new File(resultsDir, String.format("simulation-%s.log", host));
+                final File hostSummary = new File(resultsDir, String.format("summary-%s.gz", host));
+                try {
+                    if (hostSummary.isFile()) {
+                        summary.merge(SimulationLogSummary.read(hostSummary));
+                    } else if (hostLog.isFile()) {
+                        summary.merge(SimulationLogSummary.summarize(hostLog, bucketMs));
+                    }
+                } catch (final IOException e) {
+                    System.err.format("Can't summarize results of %s: %s%n", host, e);
+                }
+            }
+
+            final String fleetName = fleetHosts.getKey().replaceAll("[^A-Za-z0-9._-]", "_");
+            try (PrintWriter report = new PrintWriter(new File(resultsDir, String.format("fleet-%s.txt", fleetName)), "UTF-8")) {
+                summary.writeReport(report);
+            } catch (final IOException e) {
+                System.err.println("Can't write fleet report: " + e);
+            }
+
+            final PrintWriter console = new PrintWriter(System.out);
+            console.format("Summary of fleet %s (%d load generators):%n", fleetHosts.getKey(), fleetHosts.getValue().size());
+            summary.writeReport(console);
+            console.flush();
+        }
+    }
+
+    /**
+     * @return The ID of a pre-provisioned image matching the install script, or ec2.ami.id if there is none.
+     */
+    private String selectAmi(final AwsGatlingRunner runner, final String baseAmiId) {
+        if (!this.ec2AmiAuto) {
+            return baseAmiId;
+        }
+
+        try {
+            final String fingerprint = GeneratorImage.fingerprint(baseAmiId, this.installScript, this.tuningScript, this.gatlingRoot);
+            final String imageId = runner.findImage(GeneratorImage.FINGERPRINT_TAG, fingerprint);
+            if (imageId != null) {
+                System.out.format("Using pre-provisioned image %s instead of %s%n", imageId, baseAmiId);
+                return imageId;
+            }
+        } catch (final IOException | AmazonClientException e) {
+            System.err.format("Can't look up pre-provisioned image, using %s: %s%n", baseAmiId, e.getMessage());
+        }
+        return baseAmiId;
+    }
+
+    /**
+     * Stop Gatling on all load generators at the same time. The executors then collect the partial simulation logs as usual.
+     */
+    private void stopGatling(final Collection<Instance> instances) {
+        final ExecutorService stopExecutor = Executors.newFixedThreadPool(Math.max(1, instances.size()));
+        for (final Instance instance : instances) {
+            final String host = this.getPreferredHostName(instance);
+            if (host == null || host.isEmpty()) {
+                continue;
+            }
+            stopExecutor.execute(() -> {
+                try {
+                    SshClient.executeCommand(new SshClient.HostInfo(host, this.sshUser, this.sshPrivateKey.getAbsolutePath()),
+                            STOP_GATLING_COMMAND, this.debugOutputEnabled);
+                } catch (final IOException e) {
+                    System.err.format("Can't stop Gatling on %s: %s%n", host, e);
+                }
+            });
+        }
+        stopExecutor.shutdown();
+        try {
+            stopExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Write all files of the load test into a single bundle and upload it to S3.
+     *
+     * @return The URL load generators can download the bundle from, or null if staging failed.
+     */
+    private URL stageBundle(final AwsGatlingRunner runner, final String bucket, final String key) {
+        final List<SshClient.FromTo> files = LoadTestFiles.collect(this.files, this.gatlingResourcesDir, this.simulationConfig, this.gatlingSourceDir, this.gatlingRoot, this.debugOutputEnabled);
+        files.add(new SshClient.FromTo(this.installScript.getAbsolutePath(), ""));
+
+        File bundleFile = null;
+        try {
+            bundleFile = File.createTempFile("gatling-bundle", ".tar.gz");
+            final AssetBundle bundle = new AssetBundle();
+            try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(bundleFile))) {
+                bundle.write(AssetManifest.fromUploads(files).getEntries(), outputStream);
+            }
+            System.out.format("Created bundle with %d files (%d bytes, %d bytes compressed)%n", bundle.getFileCount(), bundle.getRawBytes(), bundle.getCompressedBytes());
+
+            return runner.stageFile(bucket, key, bundleFile);
+        } catch (final IOException e) {
+            System.err.println("Can't create bundle for staging: " + e);
+            return null;
+        } finally {
+            if (bundleFile != null && !bundleFile.delete()) {
+                bundleFile.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Merge the logs downloaded from all load generators into one simulation.log. Gatling reads every log file in the
+     * results directory, so the per host logs are moved out of the way afterwards.
+     */
+    static void mergeSimulationLogs(final File resultsDir, final Map<String, ClockOffset> clockOffsets, final boolean keepHostLogs) {
+        final File[] hostLogs = resultsDir.listFiles((dir, name) -> name.startsWith("simulation-") && name.endsWith(".log"));
+        if (hostLogs == null || hostLogs.length < 2) {
+            return;
+        }
+
+        final SimulationLogMerger merger = new SimulationLogMerger();
+        for (final File hostLog : hostLogs) {
+            final String host = hostLog.getName().substring("simulation-".length(), hostLog.getName().length() - ".log".length());
+            final ClockOffset clockOffset = clockOffsets.get(host);
+            merger.addInput(hostLog, clockOffset != null ? clockOffset.getOffsetMs() : 0);
+        }
+
+        final File mergedLog = new File(resultsDir, "simulation.log");
+        final File hostLogsDir = new File(resultsDir, "hosts");
+        try {
+            merger.merge(mergedLog);
+        } catch (final IOException e) {
+            // The report can still be generated from the individual logs.
+            System.err.println("Can't merge simulation logs: " + e);
+            if (mergedLog.exists() && !mergedLog.delete()) {
+                System.err.println("Can't delete incomplete merged log " + mergedLog);
+            }
+            return;
+        }
+
+        try {
+            if (keepHostLogs && !hostLogsDir.mkdirs() && !hostLogsDir.isDirectory()) {
+                throw new IOException("Can't create " + hostLogsDir);
+            }
+            for (final File hostLog : hostLogs) {
+                if (keepHostLogs) {
+                    Files.move(hostLog.toPath(), new File(hostLogsDir, hostLog.getName()).toPath());
+                } else {
+                    Files.delete(hostLog.toPath());
+                }
+            }
+        } catch (final IOException e) {
+            System.err.println("Can't move simulation logs of individual hosts out of the results directory: " + e);
+        }
+    }
+
+    /**
+     * Replace all simulation logs of the results, including the ones of the individual hosts, by their compact encoding.
+     * A log which can't be encoded is kept as it is.
+     */
+    static void compactSimulationLogs(final File resultsDir) {
+        final List<File> logs = new ArrayList<>();
+        for (final File dir : new File[]{resultsDir, new File(resultsDir, "hosts")}) {
+            final File[] dirLogs = dir.listFiles((parent, name) -> name.endsWith(".log"));
+            if (dirLogs != null) {
+                logs.addAll(Arrays.asList(dirLogs));
+            }
+        }
+
+        long rawBytes = 0;
+        long compactBytes = 0;
+        for (final File log : logs) {
+            final File compactLog = new File(log.getPath() + SimulationLogCodec.SUFFIX);
+            try {
+                SimulationLogCodec.encode(log, compactLog);
+                rawBytes += log.length();
+                compactBytes += compactLog.length();
+                Files.delete(log.toPath());
+            } catch (final IOException e) {
+                System.err.format("Can't encode %s, archiving it as it is: %s%n", log, e);
+                if (compactLog.exists() && !compactLog.delete()) {
+                    System.err.println("Can't delete incomplete compact log " + compactLog);
+                }
+            }
+        }
+        if (!logs.isEmpty()) {
+            System.out.format("Encoded %d simulation logs of %d bytes into %d bytes%n", logs.size(), rawBytes, compactBytes);
+        }
+    }
+
+    private String getS3Url(final String page) {
+        return getS3Url(this.s3Region, this.s3Bucket, this.s3Subfolder, this.testName, page);
+    }
+
+    static String getS3Url(final String s3Region, final String s3Bucket, final String s3Subfolder, final String testName, final String page) {
+        if ("us-east-1".equalsIgnoreCase(s3Region)) {
             // us-east-1 has no prefix - http://docs.aws.amazon.com/general/latest/gr/rande.html#s3_region
-            return String.format("https://s3.amazonaws.com/%s/%s/%s/index.html", this.s3Bucket, this.s3Subfolder, this.testName);
+            return String.format("https://s3.amazonaws.com/%s/%s/%s/%s", s3Bucket, s3Subfolder, testName, page);
+        }
+        return String.format("https://s3-%s.amazonaws.com/%s/%s/%s/%s", s3Region, s3Bucket, s3Subfolder, testName, page);
+    }
+
+    /**
+     * Merge the summaries created on all load generators into one cluster wide summary and write it as a report.
+     *
+     * @return True if at least one summary was found.
+     */
+    private boolean mergeSummaries(final File resultsDir) {
+        final File[] summaryFiles = resultsDir.listFiles((dir, name) -> name.startsWith("summary-") && name.endsWith(".gz"));
+        if (summaryFiles == null || summaryFiles.length == 0) {
+            return false;
         }
-        return String.format("https://s3-%s.amazonaws.com/%s/%s/%s/index.html", this.s3Region, this.s3Bucket, this.s3Subfolder, this.testName);
+
+        final SimulationLogSummary summary = new SimulationLogSummary(TimeUnit.SECONDS.toMillis(this.summaryBucketSeconds));
+        for (final File summaryFile : summaryFiles) {
+            try {
+                summary.merge(SimulationLogSummary.read(summaryFile));
+            } catch (final IOException e) {
+                System.err.format("Can't read summary %s: %s%n", summaryFile, e);
+            }
+        }
+
+        try (PrintWriter report = new PrintWriter(new File(resultsDir, SUMMARY_REPORT_FILE), "UTF-8");
+             PrintWriter timeline = new PrintWriter(new File(resultsDir, SUMMARY_TIMELINE_FILE), "UTF-8")) {
+            summary.writeReport(report);
+            summary.writeTimeline(timeline);
+        } catch (final IOException e) {
+            System.err.println("Can't write summary report: " + e);
+        }
+
+        final PrintWriter console = new PrintWriter(System.out);
+        console.format("Summary of %d load generators:%n", summaryFiles.length);
+        summary.writeReport(console);
+        console.flush();
+        return true;
+    }
+
+    static boolean hasSimulationLogs(final File resultsDir) {
+        final File[] logs = resultsDir.listFiles((dir, name) -> name.endsWith(".log"));
+        return logs != null && logs.length > 0;
     }
 
-    private String executeCommand(final String command) {
+    static String executeCommand(final String command) {
         final StringBuffer output = new StringBuffer();
 
         try {
@@ -221,8 +1080,8 @@ public class GatlingAwsMojo extends BaseAwsMojo {
             final int exitCode = process.waitFor();
             SshClient.printExitCode(exitCode);
 
-            output.append(this.read(new BufferedReader(new InputStreamReader(process.getInputStream()))));
-            output.append(this.read(new BufferedReader(new InputStreamReader(process.getErrorStream()))));
+            output.append(read(new BufferedReader(new InputStreamReader(process.getInputStream()))));
+            output.append(read(new BufferedReader(new InputStreamReader(process.getErrorStream()))));
         } catch (final Exception e) {
             e.printStackTrace();
         }
@@ -230,7 +1089,7 @@ public class GatlingAwsMojo extends BaseAwsMojo {
         return output.toString();
     }
 
-    private StringBuffer read(final BufferedReader reader) throws IOException {
+    private static StringBuffer read(final BufferedReader reader) throws IOException {
         final StringBuffer output = new StringBuffer();
         String line;
 
@@ -248,8 +1107,11 @@ public class GatlingAwsMojo extends BaseAwsMojo {
         for (final Instance instance : instances.values()) {
             final String host = this.getPreferredHostName(instance);
 
-            if (!completedHosts.containsKey(host)) {
-                System.out.format("No result collected from hostname: %s%n", host);
+            if (host == null || host.isEmpty()) {
+                System.out.format("Instance %s never started%n", instance.getInstanceId());
+            } else if (!completedHosts.containsKey(host)) {
+                System.out.format("No result collected from hostname: %s%s%n", host,
+                        "spot".equals(instance.getInstanceLifecycle()) ? " (Spot instance, possibly interrupted)" : "");
             } else if (completedHosts.get(host) != 0) {
                 System.out.format("Unsuccessful result code: %d on hostname: %s%n", completedHosts.get(host), host);
                 failedInstancesCount++;
@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Pause times and allocation rate of a JVM, read from the GC log written with the settings of {@link JvmProfile}.
+ * Allocations are estimated from the heap usage before each collection minus the usage after the previous one.
+ */
+public class GcLogSummary {
+
+    /**
+     * Unified logging of Java 9 and later, e.g. "[12.345s] GC(3) Pause Young (Normal) (G1 Evacuation Pause) 24M->4M(256M) 3.456ms".
+     */
+    private static final Pattern UNIFIED_PAUSE = Pattern.compile("^\\[(\\d+[.,]\\d+)s].*\\bPause\\b.*?(\\d+)([KMG])->(\\d+)([KMG])\\(\\d+[KMG]\\) (\\d+[.,]\\d+)ms");
+    /**
+     * Java 8, e.g. "12.345: [GC (Allocation Failure)  17024K->3456K(61440K), 0.0045678 secs]".
+     */
+    private static final Pattern LEGACY_PAUSE = Pattern.compile("^(\\d+[.,]\\d+): \\[(?:Full )?GC.*?(\\d+)([KMG])->(\\d+)([KMG])\\(\\d+[KMG]\\), (\\d+[.,]\\d+) secs]");
+
+    private final LatencyHistogram pausesMs = new LatencyHistogram();
+    private double totalPauseMs;
+    private double allocatedMb;
+    private double uptimeSeconds;
+    private double previousAfterMb;
+
+    public static GcLogSummary read(final File gcLog) throws IOException {
+        final GcLogSummary summary = new GcLogSummary();
+        try (BufferedReader reader = Files.newBufferedReader(gcLog.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                summary.add(line);
+            }
+        }
+        return summary;
+    }
+
+    void add(final String line) {
+        Matcher matcher = UNIFIED_PAUSE.matcher(line);
+        double pauseMs;
+        if (matcher.find()) {
+            pauseMs = parseDecimal(matcher.group(6));
+        } else {
+            matcher = LEGACY_PAUSE.matcher(line);
+            if (!matcher.find()) {
+                return;
+            }
+            pauseMs = parseDecimal(matcher.group(6)) * 1000;
+        }
+
+        final double beforeMb = toMb(Long.parseLong(matcher.group(2)), matcher.group(3));
+        final double afterMb = toMb(Long.parseLong(matcher.group(4)), matcher.group(5));
+        this.allocatedMb += Math.max(0, beforeMb - this.previousAfterMb);
+        this.previousAfterMb = afterMb;
+        this.uptimeSeconds = parseDecimal(matcher.group(1));
+        this.totalPauseMs += pauseMs;
+        this.pausesMs.record(Math.round(pauseMs));
+    }
+
+    public long getPauses() {
+        return this.pausesMs.getTotalCount();
+    }
+
+    public double getTotalPauseMs() {
+        return this.totalPauseMs;
+    }
+
+    public long getMaxPauseMs() {
+        return this.pausesMs.getMax();
+    }
+
+    /**
+     * @return Allocated megabytes per second of JVM uptime.
+     */
+    public double getAllocationRateMbPerSecond() {
+        return this.uptimeSeconds <= 0 ? 0 : this.allocatedMb / this.uptimeSeconds;
+    }
+
+    @Override
+    public String toString() {
+        if (this.getPauses() == 0) {
+            return "no GC pauses";
+        }
+        return String.format(Locale.ROOT, "%d GC pauses, total %.0f ms (%.2f%% of %.0f s), p99 %d ms, max %d ms, allocation rate %.1f MB/s",
+                this.getPauses(), this.totalPauseMs, this.totalPauseMs / 10 / Math.max(1, this.uptimeSeconds), this.uptimeSeconds,
+                this.pausesMs.getValueAtPercentile(99), this.getMaxPauseMs(), this.getAllocationRateMbPerSecond());
+    }
+
+    private static double parseDecimal(final String value) {
+        // The JVM formats decimals in the default locale.
+        return Double.parseDouble(value.replace(',', '.'));
+    }
+
+    private static double toMb(final long value, final String unit) {
+        switch (unit) {
+            case "K":
+                return value / 1024.0;
+            case "G":
+                return value * 1024.0;
+            default:
+                return value;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Identifies a pre-provisioned load generator image. Images are tagged with a fingerprint of everything that went into
+ * them, so a run can pick the image that matches its install script and Gatling version.
+ */
+public final class GeneratorImage {
+
+    static final String FINGERPRINT_TAG = "gatling-image-fingerprint";
+    static final String GATLING_ROOT_TAG = "gatling-root";
+
+    private GeneratorImage() {
+    }
+
+    /**
+     * @param tuningScript Optional script which ran after the install script, may be null.
+     * @return The hex encoded SHA-256 of the base image, the install script, the tuning script and the Gatling root directory.
+     */
+    public static String fingerprint(final String baseAmiId, final File installScript, final File tuningScript, final String gatlingRoot) throws IOException {
+        final MessageDigest digest = AssetManifest.newSha256Digest();
+        digest.update(baseAmiId.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '\n');
+        digest.update(AssetManifest.sha256(installScript).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '\n');
+        if (tuningScript != null) {
+            digest.update(AssetManifest.sha256(tuningScript).getBytes(StandardCharsets.UTF_8));
+        }
+        digest.update((byte) '\n');
+        digest.update(gatlingRoot.getBytes(StandardCharsets.UTF_8));
+        return AssetManifest.toHex(digest.digest());
+    }
+}
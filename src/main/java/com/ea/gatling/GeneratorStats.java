@@ -0,0 +1,320 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cluster wide resource usage of the load generators, sampled from /proc on every host while the simulation runs. A
+ * load generator which runs out of CPU, ephemeral ports or spends its time in GC pauses measures its own latency
+ * instead of the latency of the system under test, so saturated hosts are reported as warnings.
+ */
+public class GeneratorStats {
+
+    static final String REPORT_FILE = "generator-stats.txt";
+    static final String SAMPLE_PREFIX = "gatling-stats";
+
+    private static final double MAX_CPU = 0.9;
+    private static final double MAX_STEAL = 0.1;
+    private static final double MAX_LOAD_PER_CORE = 2;
+    private static final double MAX_RETRANSMIT_RATE = 0.02;
+    private static final double MAX_PORT_USAGE = 0.8;
+    private static final double MAX_GC_TIME = 0.1;
+    /**
+     * A host is reported as saturated if it was saturated for more than this share of its intervals.
+     */
+    private static final double MAX_SATURATED_INTERVALS = 0.1;
+
+    private static final String[] METRICS = {"cpu", "steal", "load/core", "rx Mbit/s", "tx Mbit/s", "retransmits", "sockets", "ports", "gc time", "old gen"};
+    private static final int CPU = 0;
+    private static final int STEAL = 1;
+    private static final int LOAD_PER_CORE = 2;
+    private static final int RX_MBITS = 3;
+    private static final int TX_MBITS = 4;
+    private static final int RETRANSMIT_RATE = 5;
+    private static final int SOCKETS = 6;
+    private static final int PORT_USAGE = 7;
+    private static final int GC_TIME = 8;
+    private static final int OLD_GEN = 9;
+
+    private final Map<String, HostStats> hosts = new ConcurrentHashMap<>();
+
+    /**
+     * @return A command which prints one line of raw counters every interval until it is stopped. Counters are
+     * turned into rates on this side, so the command only needs the tools of a minimal Linux install. The GC columns
+     * need jstat and are left empty on hosts without it, e.g. with only a JRE installed.
+     */
+    public static String samplerCommand(final int intervalSeconds) {
+        final String script = "ports=$(awk '{ print $2 - $1 + 1 }' /proc/sys/net/ipv4/ip_local_port_range); cores=$(nproc); jstat=$(command -v jstat); "
+                + "while true; do "
+                + "set -- $(head -n 1 /proc/stat); cpu=\"$2 $3 $4 $5 $6 $7 $8 $9\"; "
+                + "load=$(cut -d ' ' -f 1 /proc/loadavg); "
+                + "net=$(awk 'NR > 2 { sub(/^ */, \"\"); split($0, a, \":\"); if (a[1] != \"lo\") { split(a[2], f, \" \"); rx += f[1]; tx += f[9] } } END { printf \"%.0f %.0f\", rx, tx }' /proc/net/dev); "
+                + "tcp=$(awk '/^Tcp:/ { if (++n == 2) print $12, $13 }' /proc/net/snmp); "
+                + "sockets=$(awk '/^TCP:/ { print $3, $7 }' /proc/net/sockstat); "
+                + "gc=; if [ -n \"$jstat\" ]; then pid=$(pgrep -f '[i]o.gatling.app.Gatling' | head -n 1); "
+                + "gc=$([ -n \"$pid\" ] && \"$jstat\" -gcutil $pid 2>/dev/null | awk 'NR == 2 { print $NF, $4 }'); fi; "
+                + "echo \"" + SAMPLE_PREFIX + " $(date +%s%3N) $cores $ports $cpu $load $net $tcp $sockets ${gc:-- -}\"; "
+                + "sleep " + intervalSeconds + "; "
+                + "done";
+        return "sh -c " + SshClient.quote(script);
+    }
+
+    /**
+     * Record a line printed by the sampler command. Other lines are ignored.
+     */
+    public void record(final String host, final String line) {
+        final Sample sample = Sample.parse(line);
+        if (sample != null) {
+            this.hosts.computeIfAbsent(host, HostStats::new).record(sample);
+        }
+    }
+
+    public boolean isEmpty() {
+        return this.hosts.isEmpty();
+    }
+
+    /**
+     * Write the statistics of every host and of the whole cluster to the results directory and print them, followed by
+     * a warning for every saturated host.
+     */
+    public void writeReport(final File resultsDir) {
+        if (this.hosts.isEmpty()) {
+            return;
+        }
+
+        try (PrintWriter report = new PrintWriter(new File(resultsDir, REPORT_FILE), "UTF-8")) {
+            this.writeReport(report);
+        } catch (final IOException e) {
+            System.err.println("Can't write load generator statistics: " + e);
+        }
+
+        final PrintWriter console = new PrintWriter(System.out);
+        this.writeReport(console);
+        console.flush();
+    }
+
+    public void writeReport(final PrintWriter out) {
+        final Map<String, HostStats> sortedHosts = new TreeMap<>(this.hosts);
+        final Gauge[] cluster = newGauges();
+
+        out.format("Load generator statistics of %d hosts (mean / max):%n", sortedHosts.size());
+        for (final HostStats host : sortedHosts.values()) {
+            out.format("%s%n", host.host);
+            for (int metric = 0; metric < METRICS.length; metric++) {
+                cluster[metric].merge(host.gauges[metric]);
+            }
+            writeGauges(out, host.gauges);
+        }
+        out.format("Cluster%n");
+        writeGauges(out, cluster);
+
+        final List<String> warnings = new ArrayList<>();
+        for (final HostStats host : sortedHosts.values()) {
+            final double saturated = host.intervals == 0 ? 0 : (double) host.saturatedIntervals / host.intervals;
+            if (saturated > MAX_SATURATED_INTERVALS) {
+                warnings.add(String.format(Locale.ROOT, "WARNING: load generator %s was saturated during %.0f%% of the test (%s), its response times are not reliable. "
+                        + "Consider more instances, a larger instance type or other gatling.java.opts.", host.host, saturated * 100, String.join(", ", host.saturationReasons)));
+            }
+        }
+        out.println();
+        for (final String warning : warnings) {
+            out.println(warning);
+        }
+    }
+
+    private static void writeGauges(final PrintWriter out, final Gauge[] gauges) {
+        for (int metric = 0; metric < METRICS.length; metric++) {
+            if (gauges[metric].count > 0) {
+                final boolean ratio = metric != LOAD_PER_CORE && metric != RX_MBITS && metric != TX_MBITS && metric != SOCKETS;
+                out.format(Locale.ROOT, ratio ? "  %-12s %8.1f%% / %6.1f%%%n" : "  %-12s %9.1f / %7.1f%n",
+                        METRICS[metric], gauges[metric].mean() * (ratio ? 100 : 1), gauges[metric].max * (ratio ? 100 : 1));
+            }
+        }
+    }
+
+    private static Gauge[] newGauges() {
+        final Gauge[] gauges = new Gauge[METRICS.length];
+        for (int metric = 0; metric < METRICS.length; metric++) {
+            gauges[metric] = new Gauge();
+        }
+        return gauges;
+    }
+
+    /**
+     * Raw counters of one host at one point in time.
+     */
+    static class Sample {
+        private static final int FIELDS = 21;
+
+        private final long timestampMs;
+        private final int cores;
+        private final long ports;
+        private final long[] cpu = new long[8];
+        private final double load;
+        private final long rxBytes;
+        private final long txBytes;
+        private final long outSegments;
+        private final long retransmittedSegments;
+        private final long socketsInUse;
+        private final long socketsTimeWait;
+        private final double gcSeconds;
+        private final double oldGenPercent;
+
+        private Sample(final String[] fields) {
+            this.timestampMs = Long.parseLong(fields[1]);
+            this.cores = Integer.parseInt(fields[2]);
+            this.ports = Long.parseLong(fields[3]);
+            for (int i = 0; i < this.cpu.length; i++) {
+                this.cpu[i] = Long.parseLong(fields[4 + i]);
+            }
+            this.load = Double.parseDouble(fields[12]);
+            this.rxBytes = Long.parseLong(fields[13]);
+            this.txBytes = Long.parseLong(fields[14]);
+            this.outSegments = Long.parseLong(fields[15]);
+            this.retransmittedSegments = Long.parseLong(fields[16]);
+            this.socketsInUse = Long.parseLong(fields[17]);
+            this.socketsTimeWait = Long.parseLong(fields[18]);
+            // The simulation JVM is not running yet, or jstat is not installed.
+            this.gcSeconds = "-".equals(fields[19]) ? -1 : Double.parseDouble(fields[19]);
+            this.oldGenPercent = "-".equals(fields[20]) ? -1 : Double.parseDouble(fields[20]);
+        }
+
+        /**
+         * @return The sample, or null if the line is not a complete sample.
+         */
+        static Sample parse(final String line) {
+            final String[] fields = line.trim().split("\\s+");
+            if (fields.length != FIELDS || !SAMPLE_PREFIX.equals(fields[0])) {
+                return null;
+            }
+            try {
+                return new Sample(fields);
+            } catch (final NumberFormatException e) {
+                return null;
+            }
+        }
+
+        private long cpuTotal() {
+            long total = 0;
+            for (final long ticks : this.cpu) {
+                total += ticks;
+            }
+            return total;
+        }
+
+        private long cpuIdle() {
+            // idle and iowait
+            return this.cpu[3] + this.cpu[4];
+        }
+
+        private long cpuSteal() {
+            return this.cpu[7];
+        }
+    }
+
+    private static class HostStats {
+        private final String host;
+        private final Gauge[] gauges = newGauges();
+        private final Set<String> saturationReasons = new TreeSet<>();
+        private Sample previous;
+        private List<String> previousReasons = new ArrayList<>();
+        private int intervals;
+        private int saturatedIntervals;
+
+        HostStats(final String host) {
+            this.host = host;
+        }
+
+        synchronized void record(final Sample sample) {
+            final Sample previous = this.previous;
+            this.previous = sample;
+            if (previous == null || sample.timestampMs <= previous.timestampMs) {
+                return;
+            }
+
+            final double seconds = (sample.timestampMs - previous.timestampMs) / 1000.0;
+            final double[] values = new double[METRICS.length];
+            final long cpuTicks = sample.cpuTotal() - previous.cpuTotal();
+            values[CPU] = cpuTicks <= 0 ? -1 : 1 - (double) (sample.cpuIdle() - previous.cpuIdle()) / cpuTicks;
+            values[STEAL] = cpuTicks <= 0 ? -1 : (double) (sample.cpuSteal() - previous.cpuSteal()) / cpuTicks;
+            values[LOAD_PER_CORE] = sample.load / Math.max(1, sample.cores);
+            values[RX_MBITS] = (sample.rxBytes - previous.rxBytes) * 8 / seconds / 1e6;
+            values[TX_MBITS] = (sample.txBytes - previous.txBytes) * 8 / seconds / 1e6;
+            final long outSegments = sample.outSegments - previous.outSegments;
+            values[RETRANSMIT_RATE] = outSegments <= 0 ? -1 : (double) (sample.retransmittedSegments - previous.retransmittedSegments) / outSegments;
+            values[SOCKETS] = sample.socketsInUse + sample.socketsTimeWait;
+            // Connections to the system under test use one ephemeral port each, also while in TIME_WAIT.
+            values[PORT_USAGE] = sample.ports <= 0 ? -1 : values[SOCKETS] / sample.ports;
+            values[GC_TIME] = sample.gcSeconds < 0 || previous.gcSeconds < 0 ? -1 : Math.min(1, (sample.gcSeconds - previous.gcSeconds) / seconds);
+            values[OLD_GEN] = sample.oldGenPercent < 0 ? -1 : sample.oldGenPercent / 100;
+
+            for (int metric = 0; metric < METRICS.length; metric++) {
+                if (values[metric] >= 0) {
+                    this.gauges[metric].record(values[metric]);
+                }
+            }
+
+            final List<String> reasons = new ArrayList<>();
+            this.check(reasons, values[CPU] > MAX_CPU, "CPU");
+            this.check(reasons, values[STEAL] > MAX_STEAL, "CPU steal");
+            this.check(reasons, values[LOAD_PER_CORE] > MAX_LOAD_PER_CORE, "load average");
+            this.check(reasons, values[RETRANSMIT_RATE] > MAX_RETRANSMIT_RATE, "TCP retransmits");
+            this.check(reasons, values[PORT_USAGE] > MAX_PORT_USAGE, "ephemeral ports");
+            this.check(reasons, values[GC_TIME] > MAX_GC_TIME, "GC pauses");
+            this.intervals++;
+            if (!reasons.isEmpty()) {
+                this.saturatedIntervals++;
+            }
+            // Only report changes, a saturated host would flood the output otherwise.
+            if (!reasons.isEmpty() && !reasons.equals(this.previousReasons)) {
+                System.out.format(Locale.ROOT, "%s > load generator saturated: %s (cpu %.0f%%, steal %.0f%%, load/core %.1f, retransmits %.1f%%, ports %.0f%%, gc %.0f%%)%n",
+                        this.host, String.join(", ", reasons), values[CPU] * 100, values[STEAL] * 100, values[LOAD_PER_CORE],
+                        values[RETRANSMIT_RATE] * 100, values[PORT_USAGE] * 100, values[GC_TIME] * 100);
+            } else if (reasons.isEmpty() && !this.previousReasons.isEmpty()) {
+                System.out.format("%s > load generator no longer saturated%n", this.host);
+            }
+            this.previousReasons = reasons;
+        }
+
+        private void check(final List<String> reasons, final boolean saturated, final String reason) {
+            if (saturated) {
+                reasons.add(reason);
+                this.saturationReasons.add(reason);
+            }
+        }
+    }
+
+    private static class Gauge {
+        private long count;
+        private double sum;
+        private double max;
+
+        void record(final double value) {
+            this.count++;
+            this.sum += value;
+            this.max = Math.max(this.max, value);
+        }
+
+        void merge(final Gauge other) {
+            this.count += other.count;
+            this.sum += other.sum;
+            this.max = Math.max(this.max, other.max);
+        }
+
+        double mean() {
+            return this.count == 0 ? 0 : this.sum / this.count;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+/**
+ * Feeds the samples printed by the {@link GeneratorStats#samplerCommand(int) sampler command} into {@link GeneratorStats}.
+ */
+public class GeneratorStatsSink implements OutputSink {
+
+    private final GeneratorStats stats;
+
+    public GeneratorStatsSink(final GeneratorStats stats) {
+        this.stats = stats;
+    }
+
+    @Override
+    public void accept(final String host, final String line) {
+        this.stats.record(host, line);
+    }
+}
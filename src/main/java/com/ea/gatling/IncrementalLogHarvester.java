@@ -0,0 +1,220 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copies the simulation log of a load generator while the simulation is still writing it. Every round downloads only
+ * the bytes appended since the last round and appends the complete lines among them to the local copy, so at the end of
+ * a long test only the last seconds of the log remain to be transferred. A round which fails, e.g. because the
+ * connection dropped, is simply repeated from the offset reached by the last successful round, and the log up to that
+ * round survives a load generator which dies during the test.
+ */
+public class IncrementalLogHarvester {
+
+    private static final long STOP_TIMEOUT_MS = 60 * 1000;
+
+    private final SshClient.HostInfo hostInfo;
+    private final String remoteLogPattern;
+    private final File localLog;
+    private final boolean debugOutputEnabled;
+
+    private String remoteLog;
+    private long offset;
+    private int rounds;
+    private int failedRounds;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param remoteLogPattern Path of the remote log relative to the home directory. May contain wildcards, e.g. for
+     *                         the directory Gatling names after the start time of the simulation. The newest match is
+     *                         pinned once it exists, so an older log matching the pattern is never mixed in.
+     */
+    public IncrementalLogHarvester(final SshClient.HostInfo hostInfo, final String remoteLogPattern, final File localLog, final boolean debugOutputEnabled) throws IOException {
+        this.hostInfo = hostInfo;
+        this.remoteLogPattern = remoteLogPattern;
+        this.localLog = localLog;
+        this.debugOutputEnabled = debugOutputEnabled;
+        this.truncateLocalLog();
+    }
+
+    /**
+     * Harvest in the background until {@link #stop()} is called.
+     */
+    public void start(final int intervalSeconds) {
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "gatling-log-harvest-" + this.hostInfo.getHost());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                this.harvest();
+            } catch (final IOException e) {
+                // The next round continues from the offset reached.
+                System.err.format("%s > Can't download simulation log, retrying in %d s: %s%n", this.hostInfo.getHost(), intervalSeconds, e.getMessage());
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stop harvesting in the background, after the current round if one is running.
+     */
+    public void stop() {
+        if (this.scheduler == null) {
+            return;
+        }
+        this.scheduler.shutdown();
+        try {
+            this.scheduler.awaitTermination(STOP_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Download the complete lines appended to the remote log since the last round.
+     *
+     * @return The number of bytes appended to the local log.
+     */
+    public synchronized long harvest() throws IOException {
+        this.rounds++;
+        if (this.remoteLog == null) {
+            this.remoteLog = this.findRemoteLog();
+            if (this.remoteLog == null) {
+                // Gatling didn't create the log yet.
+                return 0;
+            }
+        }
+        final String command = String.format("tail -c +%d %s", this.offset + 1, SshClient.quote(this.remoteLog));
+
+        final long appended;
+        try (CompleteLinesOutputStream output = new CompleteLinesOutputStream(new FileOutputStream(this.localLog, true))) {
+            final int exitCode = SshClient.streamCommandOutput(this.hostInfo, command, this.debugOutputEnabled, output);
+            if (exitCode != 0) {
+                throw new IOException(String.format("Reading simulation log failed with exit code %d", exitCode));
+            }
+            appended = output.getCompleteBytes();
+        } catch (final IOException e) {
+            this.failedRounds++;
+            this.truncateLocalLog();
+            throw e;
+        }
+
+        // The last line may still be written, it is downloaded again in full by the next round.
+        this.offset += appended;
+        this.truncateLocalLog();
+        if (this.debugOutputEnabled) {
+            System.out.format("%s > Downloaded %d bytes of the simulation log, %d bytes in total%n", this.hostInfo.getHost(), appended, this.offset);
+        }
+        return appended;
+    }
+
+    /**
+     * Harvest the rest of the log once the simulation is done, and move the remote log to simulation.log in the home
+     * directory like a log downloaded at the end, so a later run on the same host can't pick it up.
+     */
+    public void finish() throws IOException {
+        this.stop();
+        this.harvest();
+        System.out.format("%s > Downloaded simulation log of %d bytes in %d rounds (%d failed)%n",
+                this.hostInfo.getHost(), this.offset, this.rounds, this.failedRounds);
+        if (this.remoteLog != null) {
+            SshClient.executeCommand(this.hostInfo, String.format("mv %s simulation.log", SshClient.quote(this.remoteLog)), this.debugOutputEnabled);
+        }
+    }
+
+    /**
+     * @return Bytes appended to the local log so far.
+     */
+    public long getHarvestedBytes() {
+        return this.offset;
+    }
+
+    /**
+     * @return The newest remote log matching the pattern, or null if there is none yet.
+     */
+    private String findRemoteLog() throws IOException {
+        final CollectingOutputSink output = new CollectingOutputSink();
+        SshClient.executeCommand(this.hostInfo, String.format("ls -1t %s 2>/dev/null | head -n 1", this.remoteLogPattern), this.debugOutputEnabled, output);
+        for (final String line : output.getLines()) {
+            if (!line.trim().isEmpty()) {
+                return line.trim();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Cut the local log back to the offset reached, dropping incomplete lines and bytes of failed rounds.
+     */
+    private void truncateLocalLog() throws IOException {
+        final File parent = this.localLog.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Can't create " + parent);
+        }
+        if (this.offset == 0) {
+            // Without any complete line there is no log yet, an empty file would only confuse the report.
+            Files.deleteIfExists(this.localLog.toPath());
+            return;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(this.localLog, "rw")) {
+            if (file.length() != this.offset) {
+                file.setLength(this.offset);
+            }
+        }
+    }
+
+    /**
+     * Passes everything through and counts the bytes up to and including the last line break.
+     */
+    private static class CompleteLinesOutputStream extends OutputStream {
+        private final OutputStream out;
+        private long bytes;
+        private long completeBytes;
+
+        CompleteLinesOutputStream(final OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            this.out.write(b);
+            this.bytes++;
+            if (b == '\n') {
+                this.completeBytes = this.bytes;
+            }
+        }
+
+        @Override
+        public void write(final byte[] buffer, final int off, final int len) throws IOException {
+            this.out.write(buffer, off, len);
+            for (int i = len - 1; i >= 0; i--) {
+                if (buffer[off + i] == '\n') {
+                    this.completeBytes = this.bytes + i + 1;
+                    break;
+                }
+            }
+            this.bytes += len;
+        }
+
+        long getCompleteBytes() {
+            return this.completeBytes;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.out.close();
+        }
+    }
+}
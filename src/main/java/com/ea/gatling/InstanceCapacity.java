@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * CPU and network capacity of an EC2 instance type, used to weight the load of a load generator.
+ */
+public class InstanceCapacity {
+
+    /**
+     * Capacity assumed for instance types which could not be described.
+     */
+    static final InstanceCapacity UNKNOWN = new InstanceCapacity(1, 1);
+
+    private static final Pattern GIGABIT = Pattern.compile("([0-9]+(?:\\.[0-9]+)?)\\s*Gigabit", Pattern.CASE_INSENSITIVE);
+    /**
+     * "Up to" bandwidth is only available as a burst, the sustained baseline is a fraction of it.
+     */
+    private static final double BURST_BASELINE_FRACTION = 0.25;
+
+    private final int vcpus;
+    private final double networkGbps;
+
+    public InstanceCapacity(final int vcpus, final double networkGbps) {
+        this.vcpus = vcpus;
+        this.networkGbps = networkGbps;
+    }
+
+    public int getVcpus() {
+        return this.vcpus;
+    }
+
+    public double getNetworkGbps() {
+        return this.networkGbps;
+    }
+
+    /**
+     * @param networkPerformance Network performance as reported by DescribeInstanceTypes, e.g. "25 Gigabit",
+     *                           "Up to 10 Gigabit" or "Moderate".
+     * @return Estimated sustained bandwidth in Gbit/s.
+     */
+    static double parseNetworkPerformance(final String networkPerformance) {
+        if (networkPerformance == null) {
+            return 1;
+        }
+
+        final Matcher gigabit = GIGABIT.matcher(networkPerformance);
+        if (gigabit.find()) {
+            final double gbps = Double.parseDouble(gigabit.group(1));
+            return networkPerformance.toLowerCase(Locale.ROOT).startsWith("up to") ? gbps * BURST_BASELINE_FRACTION : gbps;
+        }
+
+        switch (networkPerformance.toLowerCase(Locale.ROOT)) {
+            case "very low":
+                return 0.05;
+            case "low":
+                return 0.1;
+            case "low to moderate":
+                return 0.3;
+            case "moderate":
+                return 0.5;
+            case "high":
+                return 1;
+            default:
+                return 1;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%d vCPUs, %.2f Gbit/s", this.vcpus, this.networkGbps);
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * JVM settings for Gatling derived from the memory and cores of the load generator, so small instances don't run out
+ * of memory and large instances don't leave most of theirs unused. Nothing is derived if the user gave
+ * gatling.java.opts, those are used as they are.
+ */
+public class JvmProfile {
+
+    static final String GC_LOG_FILE = "gc.log";
+    /**
+     * Used instead of a derived heap size if the profile is disabled.
+     */
+    static final String DEFAULT_JAVA_OPTS = "-Xms1g -Xmx6g";
+
+    // gatling.sh uses the java of JAVA_HOME if it is set.
+    private static final String PROBE_COMMAND = "nproc; awk '/^MemTotal:/ { print $2 }' /proc/meminfo; ${JAVA_HOME:+$JAVA_HOME/bin/}java -version 2>&1 | head -n 1";
+    private static final Pattern JAVA_VERSION = Pattern.compile("version \"(1\\.)?(\\d+)");
+
+    private static final long MIN_RESERVED_MB = 768;
+    private static final long MIN_DIRECT_MEMORY_MB = 64;
+    private static final long MAX_DIRECT_MEMORY_MB = 2048;
+    private static final long MIN_HEAP_MB = 256;
+    /**
+     * Larger heaps lose compressed object pointers and hold less than a 31 GB heap.
+     */
+    private static final long MAX_HEAP_MB = 31 * 1024;
+    private static final long SMALL_MEMORY_MB = 4096;
+
+    private final int cores;
+    private final long memoryMb;
+    private final int javaVersion;
+
+    public JvmProfile(final int cores, final long memoryMb, final int javaVersion) {
+        this.cores = cores;
+        this.memoryMb = memoryMb;
+        this.javaVersion = javaVersion;
+    }
+
+    public static JvmProfile detect(final SshClient.HostInfo hostInfo, final boolean debugOutputEnabled) throws IOException {
+        final CollectingOutputSink output = new CollectingOutputSink();
+        SshClient.executeCommand(hostInfo, PROBE_COMMAND, debugOutputEnabled, output);
+        final JvmProfile profile = parse(output.getLines());
+        if (profile == null) {
+            throw new IOException(String.format("Can't detect memory and cores of %s: %s", hostInfo.getHost(), output.getLines()));
+        }
+        return profile;
+    }
+
+    static JvmProfile parse(final List<String> lines) {
+        if (lines.size() < 2) {
+            return null;
+        }
+        try {
+            final int cores = Integer.parseInt(lines.get(0).trim());
+            final long memoryMb = Long.parseLong(lines.get(1).trim()) / 1024;
+            final Matcher version = lines.size() > 2 ? JAVA_VERSION.matcher(lines.get(2)) : null;
+            return new JvmProfile(cores, memoryMb, version != null && version.find() ? Integer.parseInt(version.group(2)) : 0);
+        } catch (final NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param javaOpts The options given by the user, which replace the derived ones.
+     * @param sizing Derive heap, GC and memory settings if the user gave no options, otherwise use {@link #DEFAULT_JAVA_OPTS}.
+     * @param gcLogging Log GC pauses to {@link #GC_LOG_FILE}.
+     */
+    public String getJavaOpts(final String javaOpts, final boolean sizing, final boolean gcLogging) {
+        final String userOpts = javaOpts == null ? "" : javaOpts.trim();
+        final List<String> opts = new ArrayList<>();
+
+        // Options given by the user replace the derived ones, mixing both would change a tuned setup behind their back.
+        if (userOpts.isEmpty() && sizing) {
+            // Pre-touching a fixed size heap moves the page faults from the measurement to the JVM start.
+            opts.add(String.format("-Xms%1$dm -Xmx%1$dm -XX:+AlwaysPreTouch", this.getHeapMb()));
+            // A single core can't run GC threads concurrently to the simulation.
+            opts.add(this.cores > 1 ? "-XX:+UseG1GC -XX:MaxGCPauseMillis=50" : "-XX:+UseSerialGC");
+            // Netty allocates its buffers off heap.
+            opts.add(String.format("-XX:MaxDirectMemorySize=%dm", this.getDirectMemoryMb()));
+            if (this.memoryMb < SMALL_MEMORY_MB) {
+                opts.add("-Xss512k");
+            }
+        } else if (userOpts.isEmpty()) {
+            opts.add(DEFAULT_JAVA_OPTS);
+        }
+
+        if (gcLogging && this.javaVersion > 0) {
+            opts.add(this.javaVersion >= 9
+                    ? String.format("-Xlog:gc:file=%s:uptime:filecount=0", GC_LOG_FILE)
+                    : String.format("-Xloggc:%s", GC_LOG_FILE));
+        }
+        if (!userOpts.isEmpty()) {
+            opts.add(userOpts);
+        }
+        return String.join(" ", opts);
+    }
+
+    public long getHeapMb() {
+        final long reservedMb = Math.max(MIN_RESERVED_MB, this.memoryMb / 5);
+        return Math.min(MAX_HEAP_MB, Math.max(MIN_HEAP_MB, this.memoryMb - reservedMb - this.getDirectMemoryMb()));
+    }
+
+    public long getDirectMemoryMb() {
+        return Math.min(MAX_DIRECT_MEMORY_MB, Math.max(MIN_DIRECT_MEMORY_MB, this.memoryMb / 10));
+    }
+
+    public int getCores() {
+        return this.cores;
+    }
+
+    public long getMemoryMb() {
+        return this.memoryMb;
+    }
+
+    public int getJavaVersion() {
+        return this.javaVersion;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d cores, %d MB memory, Java %d", this.cores, this.memoryMb, this.javaVersion);
+    }
+}
@@ -19,7 +19,7 @@ public class KillGatlingAwsMojo extends BaseAwsMojo {
         final AwsGatlingRunner runner = new AwsGatlingRunner(this.ec2EndPoint);
         runner.setInstanceTag(new Tag(this.ec2TagName, this.ec2TagValue));
 
-        final Map<String, Instance> instances = runner.findExistingInstances(this.instanceType);
+        final Map<String, Instance> instances = runner.findTaggedInstances(this.instanceType);
 
         runner.terminateInstances(instances.keySet());
     }
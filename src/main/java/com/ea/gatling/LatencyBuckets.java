@@ -0,0 +1,67 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+/**
+ * Log-linear bucketing of response times shared by {@link LatencyHistogram} and {@link AtomicLatencyHistogram}, so
+ * live percentiles and the summaries built after the test agree for the same data. Values below the number of sub
+ * buckets are counted exactly, larger values in buckets no wider than 1 / (number of sub buckets / 2) of their value,
+ * the same way as an HdrHistogram.
+ */
+public class LatencyBuckets {
+
+    /**
+     * Response times in milliseconds: exact below 2048, buckets no wider than 0.1% above, like an HdrHistogram with
+     * three significant digits.
+     */
+    public static final LatencyBuckets MILLISECONDS = new LatencyBuckets(11);
+
+    private final int subBucketBits;
+    private final int subBucketCount;
+    private final int subBucketHalfCount;
+
+    /**
+     * @param subBucketBits The precision, log2 of the number of values counted exactly.
+     */
+    public LatencyBuckets(final int subBucketBits) {
+        this.subBucketBits = subBucketBits;
+        this.subBucketCount = 1 << subBucketBits;
+        this.subBucketHalfCount = this.subBucketCount / 2;
+    }
+
+    /**
+     * @return The index of the bucket counting the value. Negative values are counted as 0.
+     */
+    public int indexOf(final long value) {
+        if (value < this.subBucketCount) {
+            return (int) Math.max(0, value);
+        }
+        // Shift the value so its highest bit lands in the upper half of the sub buckets.
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - (this.subBucketBits - 1);
+        return this.subBucketCount + (shift - 1) * this.subBucketHalfCount + (int) ((value >> shift) - this.subBucketHalfCount);
+    }
+
+    public long lowestValueAt(final int index) {
+        if (index < this.subBucketCount) {
+            return index;
+        }
+        final int offset = index - this.subBucketCount;
+        final int shift = offset / this.subBucketHalfCount + 1;
+        return ((long) (offset % this.subBucketHalfCount + this.subBucketHalfCount)) << shift;
+    }
+
+    public long highestValueAt(final int index) {
+        if (index < this.subBucketCount) {
+            return index;
+        }
+        return this.lowestValueAt(index + 1) - 1;
+    }
+
+    /**
+     * @return The number of buckets needed to count all values up to the given one.
+     */
+    public int bucketCount(final long maxValue) {
+        return this.indexOf(maxValue) + 1;
+    }
+}
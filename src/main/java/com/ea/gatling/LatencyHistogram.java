@@ -0,0 +1,176 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of response times in milliseconds. Values are counted in {@link LatencyBuckets#MILLISECONDS}, exactly
+ * below 2048 and in buckets no wider than 0.1% of their value above. Counts are kept in a sparse open addressing
+ * table, so a histogram only needs memory for values that actually occurred. Merging two histograms is exact.
+ */
+public class LatencyHistogram {
+
+    private static final LatencyBuckets BUCKETS = LatencyBuckets.MILLISECONDS;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int EMPTY = -1;
+
+    private int[] indices = newIndices(INITIAL_CAPACITY);
+    private long[] counts = new long[INITIAL_CAPACITY];
+    private int size;
+
+    private long totalCount;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+
+    public void record(final long value) {
+        this.record(value, 1);
+    }
+
+    public void record(final long value, final long count) {
+        final long clamped = Math.max(0, value);
+        this.add(BUCKETS.indexOf(clamped), count);
+        this.totalCount += count;
+        this.sum += clamped * count;
+        this.min = Math.min(this.min, clamped);
+        this.max = Math.max(this.max, clamped);
+    }
+
+    public void merge(final LatencyHistogram other) {
+        for (int i = 0; i < other.indices.length; i++) {
+            if (other.indices[i] != EMPTY) {
+                this.add(other.indices[i], other.counts[i]);
+            }
+        }
+        this.totalCount += other.totalCount;
+        this.sum += other.sum;
+        this.min = Math.min(this.min, other.min);
+        this.max = Math.max(this.max, other.max);
+    }
+
+    public long getTotalCount() {
+        return this.totalCount;
+    }
+
+    public long getMin() {
+        return this.totalCount == 0 ? 0 : this.min;
+    }
+
+    public long getMax() {
+        return this.totalCount == 0 ? 0 : this.max;
+    }
+
+    public double getMean() {
+        return this.totalCount == 0 ? 0 : (double) this.sum / this.totalCount;
+    }
+
+    /**
+     * @return The highest value equivalent to the value at the given percentile (0-100), capped at the maximum.
+     */
+    public long getValueAtPercentile(final double percentile) {
+        if (this.totalCount == 0) {
+            return 0;
+        }
+
+        final long countAtPercentile = Math.max(1, (long) Math.ceil(percentile / 100.0 * this.totalCount));
+        long cumulativeCount = 0;
+        for (final int index : this.sortedIndices()) {
+            cumulativeCount += this.counts[this.slotOf(index)];
+            if (cumulativeCount >= countAtPercentile) {
+                return Math.min(this.max, BUCKETS.highestValueAt(index));
+            }
+        }
+        return this.max;
+    }
+
+    /**
+     * @return Compact text form: total count, sum, min, max and the non-empty buckets as index:count pairs.
+     */
+    public String serialize() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append(this.totalCount).append(',').append(this.sum).append(',').append(this.getMin()).append(',').append(this.getMax());
+        for (final int index : this.sortedIndices()) {
+            builder.append(',').append(index).append(':').append(this.counts[this.slotOf(index)]);
+        }
+        return builder.toString();
+    }
+
+    public static LatencyHistogram deserialize(final String text) {
+        final String[] parts = text.split(",");
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.totalCount = Long.parseLong(parts[0]);
+        histogram.sum = Long.parseLong(parts[1]);
+        if (histogram.totalCount > 0) {
+            histogram.min = Long.parseLong(parts[2]);
+            histogram.max = Long.parseLong(parts[3]);
+        }
+        for (int i = 4; i < parts.length; i++) {
+            final int separator = parts[i].indexOf(':');
+            histogram.add(Integer.parseInt(parts[i].substring(0, separator)), Long.parseLong(parts[i].substring(separator + 1)));
+        }
+        return histogram;
+    }
+
+    private int[] sortedIndices() {
+        final int[] sorted = new int[this.size];
+        int i = 0;
+        for (final int index : this.indices) {
+            if (index != EMPTY) {
+                sorted[i++] = index;
+            }
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private void add(final int index, final long count) {
+        if ((this.size + 1) * 2 > this.indices.length) {
+            this.resize(this.indices.length * 2);
+        }
+
+        int slot = this.slotOf(index);
+        if (this.indices[slot] == EMPTY) {
+            this.indices[slot] = index;
+            this.size++;
+        }
+        this.counts[slot] += count;
+    }
+
+    /**
+     * @return The slot holding the index, or the empty slot it would be stored in.
+     */
+    private int slotOf(final int index) {
+        final int mask = this.indices.length - 1;
+        final int hash = index * 0x9E3779B1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (this.indices[slot] != EMPTY && this.indices[slot] != index) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize(final int capacity) {
+        final int[] oldIndices = this.indices;
+        final long[] oldCounts = this.counts;
+        this.indices = newIndices(capacity);
+        this.counts = new long[capacity];
+        this.size = 0;
+
+        for (int i = 0; i < oldIndices.length; i++) {
+            if (oldIndices[i] != EMPTY) {
+                final int slot = this.slotOf(oldIndices[i]);
+                this.indices[slot] = oldIndices[i];
+                this.counts[slot] = oldCounts[i];
+                this.size++;
+            }
+        }
+    }
+
+    private static int[] newIndices(final int capacity) {
+        final int[] indices = new int[capacity];
+        Arrays.fill(indices, EMPTY);
+        return indices;
+    }
+}
@@ -0,0 +1,204 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cluster wide aggregate of the records in the simulation logs of all load generators while the test is running.
+ * Recording is lock free, so the executors of all hosts can feed the same instance. Interval statistics such as
+ * throughput and percentiles are computed by {@link #snapshot()} for the time since the previous snapshot.
+ */
+public class LiveMetrics {
+
+    private static final String GLOBAL = "Global";
+
+    private final Map<String, RequestMetrics> requests = new ConcurrentHashMap<>();
+    private final RequestMetrics global = new RequestMetrics();
+    private final LongAdder usersStarted = new LongAdder();
+    private final LongAdder usersEnded = new LongAdder();
+
+    // Only accessed by snapshot(), which is synchronized.
+    private final Map<String, long[]> previousHistograms = new HashMap<>();
+    private final Map<String, long[]> previousCounts = new HashMap<>();
+    private long previousSnapshotTimeMs = System.currentTimeMillis();
+
+    private volatile Snapshot latestSnapshot;
+
+    public void record(final SimulationLogRecord record) {
+        if (record.is(SimulationLogRecord.REQUEST)) {
+            final long responseTime = record.getRequestEnd() - record.getRequestStart();
+            final boolean ok = record.isOk();
+            this.requests.computeIfAbsent(record.getRequestName(), name -> new RequestMetrics()).record(responseTime, ok);
+            this.global.record(responseTime, ok);
+        } else if (record.isUserStart()) {
+            this.usersStarted.increment();
+        } else if (record.isUserEnd()) {
+            this.usersEnded.increment();
+        }
+    }
+
+    /**
+     * Compute statistics for the interval since the previous call. Meant to be called periodically by one thread.
+     */
+    public synchronized Snapshot snapshot() {
+        final long nowMs = System.currentTimeMillis();
+        final double intervalSeconds = Math.max(1, nowMs - this.previousSnapshotTimeMs) / 1000.0;
+        this.previousSnapshotTimeMs = nowMs;
+
+        final List<RequestSnapshot> requestSnapshots = new ArrayList<>();
+        for (final Map.Entry<String, RequestMetrics> request : this.requests.entrySet()) {
+            requestSnapshots.add(this.snapshot(request.getKey(), request.getValue(), intervalSeconds));
+        }
+        Collections.sort(requestSnapshots, (a, b) -> a.name.compareTo(b.name));
+
+        final Snapshot snapshot = new Snapshot(nowMs, intervalSeconds, this.usersStarted.sum() - this.usersEnded.sum(),
+                this.snapshot(GLOBAL, this.global, intervalSeconds), requestSnapshots);
+        this.latestSnapshot = snapshot;
+        return snapshot;
+    }
+
+    /**
+     * @return The snapshot taken by the most recent call to {@link #snapshot()}, or null if there was none yet.
+     */
+    public Snapshot getLatestSnapshot() {
+        return this.latestSnapshot;
+    }
+
+    private RequestSnapshot snapshot(final String name, final RequestMetrics metrics, final double intervalSeconds) {
+        final long totalOk = metrics.ok.sum();
+        final long totalKo = metrics.ko.sum();
+        final long[] histogram = metrics.responseTimes.snapshot();
+
+        final long[] previousCounts = this.previousCounts.getOrDefault(name, new long[2]);
+        final long[] intervalHistogram = AtomicLatencyHistogram.difference(histogram, this.previousHistograms.get(name));
+        this.previousCounts.put(name, new long[]{totalOk, totalKo});
+        this.previousHistograms.put(name, histogram);
+
+        return new RequestSnapshot(name, totalOk, totalKo, totalOk - previousCounts[0], totalKo - previousCounts[1], intervalSeconds,
+                AtomicLatencyHistogram.valueAtPercentile(intervalHistogram, 50),
+                AtomicLatencyHistogram.valueAtPercentile(intervalHistogram, 95),
+                AtomicLatencyHistogram.valueAtPercentile(intervalHistogram, 99));
+    }
+
+    private static class RequestMetrics {
+        private final LongAdder ok = new LongAdder();
+        private final LongAdder ko = new LongAdder();
+        private final AtomicLatencyHistogram responseTimes = new AtomicLatencyHistogram();
+
+        void record(final long responseTime, final boolean isOk) {
+            (isOk ? this.ok : this.ko).increment();
+            this.responseTimes.record(responseTime);
+        }
+    }
+
+    public static class Snapshot {
+        private final long timestampMs;
+        private final double intervalSeconds;
+        private final long activeUsers;
+        private final RequestSnapshot global;
+        private final List<RequestSnapshot> requests;
+
+        Snapshot(final long timestampMs, final double intervalSeconds, final long activeUsers, final RequestSnapshot global, final List<RequestSnapshot> requests) {
+            this.timestampMs = timestampMs;
+            this.intervalSeconds = intervalSeconds;
+            this.activeUsers = activeUsers;
+            this.global = global;
+            this.requests = requests;
+        }
+
+        public long getTimestampMs() {
+            return this.timestampMs;
+        }
+
+        public double getIntervalSeconds() {
+            return this.intervalSeconds;
+        }
+
+        public long getActiveUsers() {
+            return this.activeUsers;
+        }
+
+        public RequestSnapshot getGlobal() {
+            return this.global;
+        }
+
+        public List<RequestSnapshot> getRequests() {
+            return this.requests;
+        }
+    }
+
+    /**
+     * Totals since the start of the test and statistics of the last interval for one request name.
+     */
+    public static class RequestSnapshot {
+        private final String name;
+        private final long totalOk;
+        private final long totalKo;
+        private final long intervalOk;
+        private final long intervalKo;
+        private final double intervalSeconds;
+        private final long p50;
+        private final long p95;
+        private final long p99;
+
+        RequestSnapshot(final String name, final long totalOk, final long totalKo, final long intervalOk, final long intervalKo, final double intervalSeconds, final long p50, final long p95, final long p99) {
+            this.name = name;
+            this.totalOk = totalOk;
+            this.totalKo = totalKo;
+            this.intervalOk = intervalOk;
+            this.intervalKo = intervalKo;
+            this.intervalSeconds = intervalSeconds;
+            this.p50 = p50;
+            this.p95 = p95;
+            this.p99 = p99;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public long getTotalOk() {
+            return this.totalOk;
+        }
+
+        public long getTotalKo() {
+            return this.totalKo;
+        }
+
+        public long getIntervalCount() {
+            return this.intervalOk + this.intervalKo;
+        }
+
+        public double getRequestsPerSecond() {
+            return this.getIntervalCount() / this.intervalSeconds;
+        }
+
+        /**
+         * @return Percentage of failed requests in the last interval.
+         */
+        public double getErrorRate() {
+            final long count = this.getIntervalCount();
+            return count == 0 ? 0 : 100.0 * this.intervalKo / count;
+        }
+
+        public long getP50() {
+            return this.p50;
+        }
+
+        public long getP95() {
+            return this.p95;
+        }
+
+        public long getP99() {
+            return this.p99;
+        }
+    }
+}
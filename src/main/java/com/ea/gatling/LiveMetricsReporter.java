@@ -0,0 +1,187 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically prints the {@link LiveMetrics} of all load generators and optionally serves them over HTTP, as
+ * Prometheus text format on /metrics and as JSON on /metrics.json.
+ */
+public class LiveMetricsReporter {
+
+    private final LiveMetrics metrics;
+    private final int intervalSeconds;
+    private final int port;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "live-metrics");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final List<SnapshotListener> listeners = new CopyOnWriteArrayList<>();
+    private HttpServer server;
+
+    /**
+     * @param port Port of the local HTTP endpoint, or 0 to disable it.
+     */
+    public LiveMetricsReporter(final LiveMetrics metrics, final int intervalSeconds, final int port) {
+        this.metrics = metrics;
+        this.intervalSeconds = intervalSeconds;
+        this.port = port;
+    }
+
+    public void start() {
+        this.scheduler.scheduleAtFixedRate(this::report, this.intervalSeconds, this.intervalSeconds, TimeUnit.SECONDS);
+
+        if (this.port > 0) {
+            try {
+                this.server = HttpServer.create(new InetSocketAddress(this.port), 0);
+                this.server.createContext("/metrics.json", exchange -> this.respond(exchange, "application/json", this.toJson(this.metrics.getLatestSnapshot())));
+                this.server.createContext("/metrics", exchange -> this.respond(exchange, "text/plain; version=0.0.4", this.toPrometheus(this.metrics.getLatestSnapshot())));
+                this.server.start();
+                System.out.format("Serving live metrics on http://localhost:%d/metrics and http://localhost:%d/metrics.json%n", this.port, this.port);
+            } catch (final IOException e) {
+                System.err.format("Can't serve live metrics on port %d: %s%n", this.port, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Register a listener which is notified on the reporting thread after every snapshot, e.g. to check thresholds.
+     */
+    public void addListener(final SnapshotListener listener) {
+        this.listeners.add(listener);
+    }
+
+    public void stop() {
+        this.scheduler.shutdownNow();
+        if (this.server != null) {
+            this.server.stop(0);
+        }
+    }
+
+    private void report() {
+        try {
+            final LiveMetrics.Snapshot snapshot = this.metrics.snapshot();
+            this.print(snapshot);
+            for (final SnapshotListener listener : this.listeners) {
+                listener.onSnapshot(snapshot);
+            }
+        } catch (final RuntimeException e) {
+            System.err.println("Can't report live metrics: " + e);
+        }
+    }
+
+    private void print(final LiveMetrics.Snapshot snapshot) {
+        final StringBuilder output = new StringBuilder();
+        final LiveMetrics.RequestSnapshot global = snapshot.getGlobal();
+        output.append(String.format(Locale.ROOT, "[live %s] users: %d, requests: %d OK / %d KO, %.1f req/s, KO %.2f%%, p50 %d ms, p95 %d ms, p99 %d ms%n",
+                new SimpleDateFormat("HH:mm:ss").format(new Date(snapshot.getTimestampMs())), snapshot.getActiveUsers(),
+                global.getTotalOk(), global.getTotalKo(), global.getRequestsPerSecond(), global.getErrorRate(),
+                global.getP50(), global.getP95(), global.getP99()));
+        for (final LiveMetrics.RequestSnapshot request : snapshot.getRequests()) {
+            output.append(String.format(Locale.ROOT, "    %-40s %9.1f req/s  KO %6.2f%%  p50 %6d  p95 %6d  p99 %6d%n",
+                    request.getName(), request.getRequestsPerSecond(), request.getErrorRate(), request.getP50(), request.getP95(), request.getP99()));
+        }
+        System.out.print(output);
+    }
+
+    private void respond(final HttpExchange exchange, final String contentType, final String body) throws IOException {
+        final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    private String toPrometheus(final LiveMetrics.Snapshot snapshot) {
+        if (snapshot == null) {
+            return "";
+        }
+
+        final StringBuilder output = new StringBuilder();
+        output.append("# TYPE gatling_active_users gauge\n");
+        output.append("gatling_active_users ").append(snapshot.getActiveUsers()).append('\n');
+        output.append("# TYPE gatling_requests_total counter\n");
+        for (final LiveMetrics.RequestSnapshot request : this.withGlobal(snapshot)) {
+            output.append(String.format(Locale.ROOT, "gatling_requests_total{request=\"%s\",status=\"ok\"} %d%n", escape(request.getName()), request.getTotalOk()));
+            output.append(String.format(Locale.ROOT, "gatling_requests_total{request=\"%s\",status=\"ko\"} %d%n", escape(request.getName()), request.getTotalKo()));
+        }
+        output.append("# TYPE gatling_requests_per_second gauge\n");
+        for (final LiveMetrics.RequestSnapshot request : this.withGlobal(snapshot)) {
+            output.append(String.format(Locale.ROOT, "gatling_requests_per_second{request=\"%s\"} %.3f%n", escape(request.getName()), request.getRequestsPerSecond()));
+        }
+        output.append("# TYPE gatling_error_rate_percent gauge\n");
+        for (final LiveMetrics.RequestSnapshot request : this.withGlobal(snapshot)) {
+            output.append(String.format(Locale.ROOT, "gatling_error_rate_percent{request=\"%s\"} %.3f%n", escape(request.getName()), request.getErrorRate()));
+        }
+        output.append("# TYPE gatling_response_time_ms gauge\n");
+        for (final LiveMetrics.RequestSnapshot request : this.withGlobal(snapshot)) {
+            output.append(String.format(Locale.ROOT, "gatling_response_time_ms{request=\"%s\",quantile=\"0.5\"} %d%n", escape(request.getName()), request.getP50()));
+            output.append(String.format(Locale.ROOT, "gatling_response_time_ms{request=\"%s\",quantile=\"0.95\"} %d%n", escape(request.getName()), request.getP95()));
+            output.append(String.format(Locale.ROOT, "gatling_response_time_ms{request=\"%s\",quantile=\"0.99\"} %d%n", escape(request.getName()), request.getP99()));
+        }
+        return output.toString();
+    }
+
+    private String toJson(final LiveMetrics.Snapshot snapshot) {
+        if (snapshot == null) {
+            return "{}";
+        }
+
+        final StringBuilder output = new StringBuilder();
+        output.append(String.format(Locale.ROOT, "{\"timestamp\":%d,\"intervalSeconds\":%.3f,\"activeUsers\":%d,\"global\":",
+                snapshot.getTimestampMs(), snapshot.getIntervalSeconds(), snapshot.getActiveUsers()));
+        appendJson(output, snapshot.getGlobal());
+        output.append(",\"requests\":[");
+        for (int i = 0; i < snapshot.getRequests().size(); i++) {
+            if (i > 0) {
+                output.append(',');
+            }
+            appendJson(output, snapshot.getRequests().get(i));
+        }
+        output.append("]}");
+        return output.toString();
+    }
+
+    private List<LiveMetrics.RequestSnapshot> withGlobal(final LiveMetrics.Snapshot snapshot) {
+        final List<LiveMetrics.RequestSnapshot> requests = new ArrayList<>(snapshot.getRequests());
+        requests.add(0, snapshot.getGlobal());
+        return requests;
+    }
+
+    private static void appendJson(final StringBuilder output, final LiveMetrics.RequestSnapshot request) {
+        output.append(String.format(Locale.ROOT,
+                "{\"name\":\"%s\",\"ok\":%d,\"ko\":%d,\"requestsPerSecond\":%.3f,\"errorRate\":%.3f,\"p50\":%d,\"p95\":%d,\"p99\":%d}",
+                escape(request.getName()), request.getTotalOk(), request.getTotalKo(), request.getRequestsPerSecond(),
+                request.getErrorRate(), request.getP50(), request.getP95(), request.getP99()));
+    }
+
+    private static String escape(final String text) {
+        return text.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Notified after every snapshot of the live metrics.
+     */
+    public interface SnapshotListener {
+        void onSnapshot(LiveMetrics.Snapshot snapshot);
+    }
+}
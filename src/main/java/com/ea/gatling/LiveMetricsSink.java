@@ -0,0 +1,31 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+/**
+ * Parses lines of a simulation log streamed from a load generator and feeds them into {@link LiveMetrics}.
+ */
+public class LiveMetricsSink implements OutputSink {
+
+    private final LiveMetrics metrics;
+
+    public LiveMetricsSink(final LiveMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void accept(final String host, final String line) {
+        // Skip anything that is not a simulation log record, e.g. messages of tail itself.
+        if (line.indexOf(SimulationLogRecord.SEPARATOR) < 0) {
+            return;
+        }
+
+        final SimulationLogRecord record = new SimulationLogRecord(line);
+        try {
+            this.metrics.record(record);
+        } catch (final RuntimeException e) {
+            // A truncated line, e.g. the last line of an interrupted stream.
+        }
+    }
+}
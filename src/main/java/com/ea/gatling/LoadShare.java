@@ -0,0 +1,173 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The part of the total load generated by one load generator. Shares are weighted by the capacity of each instance, so
+ * mixed fleets get the most load out of their bigger instances. The share of a load generator is written to
+ * instance.txt in the home directory of the remote user as plain properties, see {@link #format()}. The plugin jar is
+ * not on the classpath of the simulation, so simulations read the file with java.util.Properties. If a reused instance
+ * appended the file more than once, the last value of a key wins.
+ */
+public class LoadShare {
+
+    public static final String FILE_NAME = "instance.txt";
+
+    private final int numInstance;
+    private final int instanceCount;
+    private final String instanceType;
+    private final double weight;
+    private final int users;
+    private final double rate;
+    private final long idRangeStart;
+    private final long idRangeEnd;
+
+    public LoadShare(final int numInstance, final int instanceCount, final String instanceType, final double weight, final int users,
+                     final double rate, final long idRangeStart, final long idRangeEnd) {
+        this.numInstance = numInstance;
+        this.instanceCount = instanceCount;
+        this.instanceType = instanceType;
+        this.weight = weight;
+        this.users = users;
+        this.rate = rate;
+        this.idRangeStart = idRangeStart;
+        this.idRangeEnd = idRangeEnd;
+    }
+
+    /**
+     * Split the total load across load generators in proportion to their capacity. A load generator is limited by its
+     * scarcest resource, so its capacity is the smaller of its vCPUs and its network bandwidth, each relative to the
+     * largest instance of the fleet. Users and IDs are distributed with the largest remainder method, so they add up
+     * to the totals exactly.
+     *
+     * @param instanceTypes Instance type of every load generator, in the order of their instance numbers.
+     * @param totalUsers Total number of users, 0 if the simulation does not use it.
+     * @param totalRate Total request rate per second, 0 if the simulation does not use it.
+     * @param idRange Size of the ID space split into consecutive ranges, 0 if the simulation does not use it.
+     */
+    public static List<LoadShare> partition(final List<String> instanceTypes, final Map<String, InstanceCapacity> capacities,
+                                            final int totalUsers, final double totalRate, final long idRange) {
+        int maxVcpus = 1;
+        double maxNetworkGbps = 0;
+        for (final String instanceType : instanceTypes) {
+            final InstanceCapacity capacity = capacities.getOrDefault(instanceType, InstanceCapacity.UNKNOWN);
+            maxVcpus = Math.max(maxVcpus, capacity.getVcpus());
+            maxNetworkGbps = Math.max(maxNetworkGbps, capacity.getNetworkGbps());
+        }
+
+        final double[] capacityOf = new double[instanceTypes.size()];
+        double totalCapacity = 0;
+        for (int i = 0; i < capacityOf.length; i++) {
+            final InstanceCapacity capacity = capacities.getOrDefault(instanceTypes.get(i), InstanceCapacity.UNKNOWN);
+            final double network = maxNetworkGbps > 0 ? capacity.getNetworkGbps() / maxNetworkGbps : 1;
+            capacityOf[i] = Math.min((double) capacity.getVcpus() / maxVcpus, network);
+            totalCapacity += capacityOf[i];
+        }
+
+        final double[] weights = new double[capacityOf.length];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = totalCapacity > 0 ? capacityOf[i] / totalCapacity : 1.0 / weights.length;
+        }
+
+        final long[] users = apportion(totalUsers, weights);
+        final long[] ids = apportion(idRange, weights);
+
+        final List<LoadShare> shares = new ArrayList<>();
+        long idRangeStart = 0;
+        for (int i = 0; i < weights.length; i++) {
+            shares.add(new LoadShare(i, weights.length, instanceTypes.get(i), weights[i], (int) users[i], totalRate * weights[i],
+                    idRangeStart, idRangeStart + ids[i]));
+            idRangeStart += ids[i];
+        }
+        return shares;
+    }
+
+    /**
+     * @return The share as properties, one per line: num_instance, instance_count, instance_type, weight (fraction of
+     * the total load), users, rate (requests per second), id_range_start (inclusive) and id_range_end (exclusive).
+     */
+    public String format() {
+        return String.format(Locale.ROOT,
+                "num_instance=%d%ninstance_count=%d%ninstance_type=%s%nweight=%.6f%nusers=%d%nrate=%.3f%nid_range_start=%d%nid_range_end=%d%n",
+                this.numInstance, this.instanceCount, this.instanceType, this.weight, this.users, this.rate, this.idRangeStart, this.idRangeEnd);
+    }
+
+    public int getNumInstance() {
+        return this.numInstance;
+    }
+
+    public int getInstanceCount() {
+        return this.instanceCount;
+    }
+
+    public String getInstanceType() {
+        return this.instanceType;
+    }
+
+    /**
+     * @return Fraction of the total load, all weights add up to 1.
+     */
+    public double getWeight() {
+        return this.weight;
+    }
+
+    public int getUsers() {
+        return this.users;
+    }
+
+    /**
+     * @return Requests per second.
+     */
+    public double getRate() {
+        return this.rate;
+    }
+
+    /**
+     * @return First ID of the range of this load generator, inclusive.
+     */
+    public long getIdRangeStart() {
+        return this.idRangeStart;
+    }
+
+    /**
+     * @return End of the ID range of this load generator, exclusive.
+     */
+    public long getIdRangeEnd() {
+        return this.idRangeEnd;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "instance %d/%d (%s): weight %.3f, %d users, %.2f req/s, IDs %d-%d",
+                this.numInstance, this.instanceCount, this.instanceType, this.weight, this.users, this.rate, this.idRangeStart, this.idRangeEnd);
+    }
+
+    private static long[] apportion(final long total, final double[] weights) {
+        final long[] parts = new long[weights.length];
+        final double[] remainders = new double[weights.length];
+        long assigned = 0;
+        for (int i = 0; i < weights.length; i++) {
+            final double exact = total * weights[i];
+            parts[i] = (long) Math.floor(exact);
+            remainders[i] = exact - parts[i];
+            assigned += parts[i];
+        }
+        for (long left = total - assigned; left > 0; left--) {
+            int largest = 0;
+            for (int i = 1; i < remainders.length; i++) {
+                if (remainders[i] > remainders[largest]) {
+                    largest = i;
+                }
+            }
+            parts[largest]++;
+            remainders[largest] = -1;
+        }
+        return parts;
+    }
+}
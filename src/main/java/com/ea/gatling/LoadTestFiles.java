@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Collects the local files which need to be copied to every load generator, together with their remote location.
+ */
+public class LoadTestFiles {
+
+    private static final String[] GATLING_RESOURCES = {"data", "bodies"};
+
+    public static List<SshClient.FromTo> collect(final List<String> additionalFiles, final File gatlingResourcesDir, final File simulationConfig, final File gatlingSourceDir, final String gatlingRoot, final boolean debugOutputEnabled) {
+        final List<SshClient.FromTo> files = new ArrayList<>();
+        if (additionalFiles != null) {
+            files.addAll(additionalFiles.stream().map(path -> new SshClient.FromTo(path, "")).collect(Collectors.toList()));
+        }
+
+        final File targetFolder = new File("target");
+        if (isValidDirectory(targetFolder)) {
+            log(debugOutputEnabled, "Copying additional JAR files");
+
+            for (final File file : targetFolder.listFiles()) {
+                final String path = file.getAbsolutePath();
+                if (path.endsWith("-jar-with-dependencies.jar")) {
+                    log(debugOutputEnabled, "Copying JAR file " + path);
+                    files.add(new SshClient.FromTo(path, gatlingRoot + "/lib"));
+                }
+            }
+        }
+
+        // copy resource files
+        for (final String resource : GATLING_RESOURCES) {
+            log(debugOutputEnabled, "Copying resource " + resource);
+            final String resourceDir = gatlingResourcesDir.getAbsolutePath() + "/" + resource;
+            files.add(new SshClient.FromTo(resourceDir, gatlingRoot + "/user-files"));
+        }
+
+        // copy simulation config
+        files.add(new SshClient.FromTo(simulationConfig.getAbsolutePath(), ""));
+
+        // copy simulation files
+        if (isValidDirectory(gatlingSourceDir)) {
+            log(debugOutputEnabled, "Copying simulation files");
+            files.addAll(filesToFromToList(gatlingSourceDir.listFiles(), gatlingRoot + "/user-files/simulations"));
+        }
+
+        // copy simulation gatling configuration files if it exists
+        final File configFolder = new File("src/test/resources/conf");
+        if (isValidDirectory(configFolder)) {
+            log(debugOutputEnabled, "Copying gatling configuration files");
+            files.addAll(filesToFromToList(configFolder.listFiles(), gatlingRoot + "/conf"));
+        }
+
+        return files;
+    }
+
+    private static boolean isValidDirectory(final File directory) {
+        return directory.exists() && directory.isDirectory() && directory.listFiles() != null && directory.listFiles().length > 0;
+    }
+
+    private static List<SshClient.FromTo> filesToFromToList(final File[] files, final String remoteDir) {
+        final List<SshClient.FromTo> fromTos = new ArrayList<>();
+
+        for (final File file : files) {
+            fromTos.add(new SshClient.FromTo(file.getAbsolutePath(), remoteDir));
+        }
+
+        return fromTos;
+    }
+
+    private static void log(final boolean debugOutputEnabled, final String message) {
+        if (debugOutputEnabled) {
+            System.out.println(message);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+/**
+ * Receives the output of remote commands one complete line at a time.
+ */
+public interface OutputSink {
+
+    /**
+     * Called once per line of remote output, without the trailing line separator. Implementations may be called
+     * concurrently for different hosts.
+     */
+    void accept(String host, String line);
+
+    /**
+     * Called after the last line of a command has been delivered.
+     */
+    default void flush() {
+    }
+}
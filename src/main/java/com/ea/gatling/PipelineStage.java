@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One step of the workflow of every load generator, e.g. staging files or downloading results, with its own limit on
+ * how many hosts are in the step at the same time. Hosts move to the next step as soon as they are done with this one,
+ * so a slow host doesn't hold up the others and e.g. uploads to hundreds of hosts don't all compete for the uplink.
+ */
+public class PipelineStage {
+
+    private final String name;
+    private final int concurrency;
+    private final ExecutorService executor;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger peakActive = new AtomicInteger();
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicLong busyTimeMs = new AtomicLong();
+
+    /**
+     * @param concurrency Maximum number of hosts in this step at the same time, or 0 for no limit.
+     */
+    public PipelineStage(final String name, final int concurrency) {
+        this.name = name;
+        this.concurrency = concurrency;
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ThreadFactory threadFactory = runnable -> {
+            final Thread thread = new Thread(runnable, String.format("gatling-%s-%d", name, threadCount.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.executor = concurrency > 0 ? Executors.newFixedThreadPool(concurrency, threadFactory) : Executors.newCachedThreadPool(threadFactory);
+    }
+
+    /**
+     * Run the step once the input is complete. Failures of the input skip the step and are passed on.
+     */
+    public <T, R> CompletableFuture<R> then(final CompletableFuture<T> input, final Step<T, R> step) {
+        return input.thenApplyAsync(value -> {
+            final int nowActive = this.active.incrementAndGet();
+            this.peakActive.accumulateAndGet(nowActive, Math::max);
+            final long startTimeMs = System.currentTimeMillis();
+            try {
+                final R result = step.apply(value);
+                this.completed.incrementAndGet();
+                return result;
+            } catch (final IOException e) {
+                this.failed.incrementAndGet();
+                throw new UncheckedIOException(e);
+            } catch (final RuntimeException e) {
+                this.failed.incrementAndGet();
+                throw e;
+            } finally {
+                this.busyTimeMs.addAndGet(System.currentTimeMillis() - startTimeMs);
+                this.active.decrementAndGet();
+            }
+        }, this.executor);
+    }
+
+    public void shutdown() {
+        this.executor.shutdown();
+    }
+
+    public void printStatistics() {
+        final int hosts = this.completed.get() + this.failed.get();
+        System.out.format("Stage %s: %d hosts (%d failed), concurrency limit: %s, peak: %d, average time per host: %d ms%n",
+                this.name, hosts, this.failed.get(), this.concurrency > 0 ? Integer.toString(this.concurrency) : "none",
+                this.peakActive.get(), hosts == 0 ? 0 : this.busyTimeMs.get() / hosts);
+    }
+
+    /**
+     * The work of one host in a stage.
+     */
+    public interface Step<T, R> {
+        R apply(T input) throws IOException;
+    }
+}
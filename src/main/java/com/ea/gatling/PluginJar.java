@@ -0,0 +1,31 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import java.io.File;
+import java.net.URISyntaxException;
+
+/**
+ * Locates the jar of this plugin, which is copied to the load generators to run helpers like the
+ * {@link SimulationLogSummarizer} there.
+ */
+public class PluginJar {
+
+    /**
+     * Name of the plugin jar in the home directory of the load generator.
+     */
+    public static final String REMOTE_NAME = "gatling-aws-maven-plugin.jar";
+
+    /**
+     * @return The plugin jar, or null if the plugin classes were not loaded from a jar.
+     */
+    public static File locate() {
+        try {
+            final File location = new File(PluginJar.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            return location.isFile() ? location : null;
+        } catch (final URISyntaxException | SecurityException | NullPointerException e) {
+            return null;
+        }
+    }
+}
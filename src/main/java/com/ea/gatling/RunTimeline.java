@@ -0,0 +1,273 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.IntSupplier;
+
+/**
+ * Records how long every phase of a run took, per load generator and for the plugin itself, e.g. launching instances,
+ * installing Gatling, uploading files, the simulation and downloading results. The timeline is written as JSON and in
+ * the Chrome trace event format, which chrome://tracing and Perfetto display as one track per host.
+ */
+public class RunTimeline {
+
+    static final String JSON_FILE = "timeline.json";
+    static final String TRACE_FILE = "timeline-trace.json";
+
+    /**
+     * Track of the phases which are not specific to a load generator.
+     */
+    private static final String PLUGIN = "plugin";
+    /**
+     * Gaps between phases shorter than this still count as one phase waiting for the other on the critical path.
+     */
+    private static final long CRITICAL_PATH_SLACK_MS = 1000;
+
+    private final List<Span> spans = new CopyOnWriteArrayList<>();
+
+    /**
+     * Run an action as a phase, which ends when the action returns or throws.
+     *
+     * @param host The load generator, or null for phases of the plugin itself.
+     */
+    public <E extends Exception> void run(final String host, final String phase, final Action<E> action) throws E {
+        this.run(host, phase, null, action);
+    }
+
+    /**
+     * @param retries Counter of retries, e.g. of SSH connection attempts. The retries during the phase are recorded.
+     */
+    public <E extends Exception> void run(final String host, final String phase, final IntSupplier retries, final Action<E> action) throws E {
+        try (Span span = this.start(host, phase, retries)) {
+            action.run(span);
+        }
+    }
+
+    /**
+     * Run an action which returns a result as a phase, which ends when the action returns or throws.
+     *
+     * @param host The load generator, or null for phases of the plugin itself.
+     */
+    public <R, E extends Exception> R call(final String host, final String phase, final Call<R, E> action) throws E {
+        return this.call(host, phase, null, action);
+    }
+
+    /**
+     * @param retries Counter of retries, e.g. of SSH connection attempts. The retries during the phase are recorded.
+     */
+    public <R, E extends Exception> R call(final String host, final String phase, final IntSupplier retries, final Call<R, E> action) throws E {
+        try (Span span = this.start(host, phase, retries)) {
+            return action.call(span);
+        }
+    }
+
+    /**
+     * Start a phase. It ends when the span is closed.
+     */
+    private Span start(final String host, final String phase, final IntSupplier retries) {
+        return new Span(host == null ? PLUGIN : host, phase, System.currentTimeMillis(), retries);
+    }
+
+    /**
+     * Record a phase which was not measured with a span, e.g. because it was observed from the outside.
+     */
+    public void record(final String host, final String phase, final long startTimeMs, final long endTimeMs) {
+        final Span span = new Span(host == null ? PLUGIN : host, phase, startTimeMs, null);
+        span.endTimeMs = endTimeMs;
+        this.spans.add(span);
+    }
+
+    /**
+     * Write the timeline next to the results address and print a summary of the phases and the critical path.
+     */
+    public void write(final File directory) {
+        if (this.spans.isEmpty()) {
+            return;
+        }
+        final List<Span> spans = this.sortedSpans();
+
+        try (PrintWriter json = new PrintWriter(new File(directory, JSON_FILE), "UTF-8");
+             PrintWriter trace = new PrintWriter(new File(directory, TRACE_FILE), "UTF-8")) {
+            writeJson(json, spans);
+            writeTrace(trace, spans);
+            System.out.format("Wrote run timeline to %s and %s%n", new File(directory, JSON_FILE).getAbsolutePath(), new File(directory, TRACE_FILE).getAbsolutePath());
+        } catch (final IOException e) {
+            System.err.println("Can't write run timeline: " + e);
+        }
+
+        final PrintWriter console = new PrintWriter(System.out);
+        writeSummary(console, spans);
+        console.flush();
+    }
+
+    private List<Span> sortedSpans() {
+        final List<Span> spans = new ArrayList<>(this.spans);
+        spans.sort(Comparator.comparingLong((Span span) -> span.startTimeMs).thenComparing(span -> span.track));
+        return spans;
+    }
+
+    private static void writeJson(final PrintWriter out, final List<Span> spans) {
+        out.println("[");
+        for (int i = 0; i < spans.size(); i++) {
+            final Span span = spans.get(i);
+            out.format(Locale.ROOT, "  {\"host\":\"%s\",\"phase\":\"%s\",\"start\":%d,\"end\":%d,\"durationMs\":%d,\"bytes\":%d,\"retries\":%d}%s%n",
+                    escape(span.track), escape(span.phase), span.startTimeMs, span.endTimeMs, span.getDurationMs(), span.bytes, span.retryCount,
+                    i < spans.size() - 1 ? "," : "");
+        }
+        out.println("]");
+    }
+
+    private static void writeTrace(final PrintWriter out, final List<Span> spans) {
+        final long originMs = spans.get(0).startTimeMs;
+        final Map<String, Integer> trackIds = new LinkedHashMap<>();
+        trackIds.put(PLUGIN, 0);
+        for (final Span span : spans) {
+            trackIds.computeIfAbsent(span.track, track -> trackIds.size());
+        }
+
+        out.println("{\"traceEvents\":[");
+        for (final Map.Entry<String, Integer> track : trackIds.entrySet()) {
+            out.format(Locale.ROOT, "  {\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":%d,\"args\":{\"name\":\"%s\"}},%n",
+                    track.getValue(), escape(track.getKey()));
+        }
+        for (int i = 0; i < spans.size(); i++) {
+            final Span span = spans.get(i);
+            // Timestamps are in microseconds.
+            out.format(Locale.ROOT, "  {\"name\":\"%s\",\"cat\":\"gatling\",\"ph\":\"X\",\"pid\":1,\"tid\":%d,\"ts\":%d,\"dur\":%d,\"args\":{\"bytes\":%d,\"retries\":%d}}%s%n",
+                    escape(span.phase), trackIds.get(span.track), (span.startTimeMs - originMs) * 1000, span.getDurationMs() * 1000,
+                    span.bytes, span.retryCount, i < spans.size() - 1 ? "," : "");
+        }
+        out.println("],\"displayTimeUnit\":\"ms\"}");
+    }
+
+    private static void writeSummary(final PrintWriter out, final List<Span> spans) {
+        long startTimeMs = Long.MAX_VALUE;
+        long endTimeMs = Long.MIN_VALUE;
+        final Map<String, List<Span>> spansByPhase = new TreeMap<>();
+        for (final Span span : spans) {
+            startTimeMs = Math.min(startTimeMs, span.startTimeMs);
+            endTimeMs = Math.max(endTimeMs, span.endTimeMs);
+            spansByPhase.computeIfAbsent(span.phase, phase -> new ArrayList<>()).add(span);
+        }
+        final long wallTimeMs = Math.max(1, endTimeMs - startTimeMs);
+
+        out.format("Run phases (wall time %d s):%n", wallTimeMs / 1000);
+        out.format("  %-20s %6s %10s %10s %12s %8s%n", "phase", "count", "mean ms", "max ms", "bytes", "retries");
+        for (final Map.Entry<String, List<Span>> phase : spansByPhase.entrySet()) {
+            long totalMs = 0;
+            long maxMs = 0;
+            long bytes = 0;
+            int retries = 0;
+            for (final Span span : phase.getValue()) {
+                totalMs += span.getDurationMs();
+                maxMs = Math.max(maxMs, span.getDurationMs());
+                bytes += span.bytes;
+                retries += span.retryCount;
+            }
+            out.format("  %-20s %6d %10d %10d %12d %8d%n", phase.getKey(), phase.getValue().size(), totalMs / phase.getValue().size(), maxMs, bytes, retries);
+        }
+
+        out.format("Critical path:%n");
+        for (final Span span : criticalPath(spans)) {
+            out.format(Locale.ROOT, "  %-20s %-40s %8d ms %5.1f%%%n", span.phase, span.track, span.getDurationMs(), 100.0 * span.getDurationMs() / wallTimeMs);
+        }
+    }
+
+    /**
+     * Walk back from the phase which ended last, each time to the phase which ended last before the current one
+     * started. Those are the phases the end of the run waited for.
+     */
+    static List<Span> criticalPath(final List<Span> spans) {
+        final List<Span> path = new ArrayList<>();
+        Span current = null;
+        for (final Span span : spans) {
+            if (current == null || span.endTimeMs > current.endTimeMs) {
+                current = span;
+            }
+        }
+
+        while (current != null) {
+            path.add(0, current);
+            Span previous = null;
+            for (final Span span : spans) {
+                if (span != current && span.endTimeMs <= current.startTimeMs + CRITICAL_PATH_SLACK_MS && span.startTimeMs < current.startTimeMs
+                        && (previous == null || span.endTimeMs > previous.endTimeMs
+                        // Prefer staying on the same host, its phases run back to back.
+                        || (span.endTimeMs == previous.endTimeMs && span.track.equals(current.track)))) {
+                    previous = span;
+                }
+            }
+            current = previous;
+        }
+        return path;
+    }
+
+    private static String escape(final String text) {
+        return text.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Work done in a phase. The span can be used to record the bytes transferred.
+     */
+    public interface Action<E extends Exception> {
+        void run(Span span) throws E;
+    }
+
+    /**
+     * Work done in a phase which returns a result.
+     */
+    public interface Call<R, E extends Exception> {
+        R call(Span span) throws E;
+    }
+
+    /**
+     * A phase of a run on one track. Closing the span ends the phase.
+     */
+    public class Span implements AutoCloseable {
+        private final String track;
+        private final String phase;
+        private final long startTimeMs;
+        private final IntSupplier retries;
+        private final int initialRetries;
+        private long endTimeMs;
+        private long bytes;
+        private int retryCount;
+
+        private Span(final String track, final String phase, final long startTimeMs, final IntSupplier retries) {
+            this.track = track;
+            this.phase = phase;
+            this.startTimeMs = startTimeMs;
+            this.retries = retries;
+            this.initialRetries = retries != null ? retries.getAsInt() : 0;
+        }
+
+        public void addBytes(final long bytes) {
+            this.bytes += bytes;
+        }
+
+        public long getDurationMs() {
+            return this.endTimeMs - this.startTimeMs;
+        }
+
+        @Override
+        public void close() {
+            this.endTimeMs = System.currentTimeMillis();
+            if (this.retries != null) {
+                this.retryCount = this.retries.getAsInt() - this.initialRetries;
+            }
+            RunTimeline.this.spans.add(this);
+        }
+    }
+}
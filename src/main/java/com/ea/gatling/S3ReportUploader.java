@@ -0,0 +1,248 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import com.amazonaws.services.s3.model.CannedAccessControlList;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.transfer.TransferManager;
+import com.amazonaws.services.s3.transfer.Upload;
+import com.amazonaws.services.s3.internal.Mimetypes;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Uploads a report directory to S3 with a bounded number of concurrent uploads. Large files are split into multipart
+ * uploads by the transfer manager, the text assets of the report are stored gzip compressed, failed uploads are retried
+ * with backoff and the whole upload has to finish within one deadline. Uploads still running at the deadline are
+ * aborted, and files which could not be uploaded in time are reported.
+ */
+public class S3ReportUploader {
+
+    private static final int MAX_ATTEMPTS = 4;
+    private static final long INITIAL_RETRY_SLEEP_TIME_MS = 500;
+    private static final long BACKOFF_FACTOR = 2;
+
+    /**
+     * Report assets which browsers fetch and decompress transparently. The Gatling report is mostly HTML, JavaScript and
+     * JSON. Raw results like simulation logs are stored as they are, so they can be downloaded and reported on again.
+     */
+    private static final String[] COMPRESSIBLE_EXTENSIONS = {".html", ".js", ".css", ".json", ".svg"};
+
+    private final TransferManager transferManager;
+    private final int concurrency;
+    private final long timeoutMs;
+
+    private final AtomicInteger uploadedFiles = new AtomicInteger();
+    private final AtomicLong uploadedBytes = new AtomicLong();
+    private final AtomicInteger retries = new AtomicInteger();
+    private final Set<String> pendingFiles = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final Set<Upload> activeUploads = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private volatile boolean aborted;
+
+    public S3ReportUploader(final TransferManager transferManager, final int concurrency, final long timeoutMs) {
+        this.transferManager = transferManager;
+        this.concurrency = concurrency;
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Recursively upload sourceDirectory to targetDirectory.
+     *
+     * @return The paths of all files that could not be uploaded.
+     */
+    public List<String> upload(final String s3bucket, final String targetDirectory, final File sourceDirectory) {
+        final long uploadStartTimeMs = System.currentTimeMillis();
+        final long deadlineMs = uploadStartTimeMs + this.timeoutMs;
+
+        final List<FileUpload> uploads = new ArrayList<>();
+        this.collect(targetDirectory, sourceDirectory, uploads);
+        System.out.format("Uploading %d files to S3 location %s/%s with %d concurrent uploads%n", uploads.size(), s3bucket, targetDirectory, this.concurrency);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(this.concurrency);
+        for (final FileUpload upload : uploads) {
+            this.pendingFiles.add(upload.file.getAbsolutePath());
+            executor.execute(() -> this.uploadWithRetries(s3bucket, upload, deadlineMs));
+        }
+        executor.shutdown();
+
+        try {
+            if (!executor.awaitTermination(Math.max(0, deadlineMs - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+                System.err.format("Timed out uploading report to S3 after %d ms. Report might be incomplete.%n", this.timeoutMs);
+                // Abort before interrupting, the interrupted waiters would forget their uploads otherwise.
+                this.abortActiveUploads();
+                executor.shutdownNow();
+            }
+        } catch (final InterruptedException e) {
+            this.abortActiveUploads();
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        final long elapsedMs = Math.max(1, System.currentTimeMillis() - uploadStartTimeMs);
+        final List<String> skippedFiles = new ArrayList<>(this.pendingFiles);
+        Collections.sort(skippedFiles);
+
+        System.out.format("Uploaded %d of %d files (%d bytes) in %d ms, %.2f MB/s, %d retries%n",
+                this.uploadedFiles.get(), uploads.size(), this.uploadedBytes.get(), elapsedMs,
+                this.uploadedBytes.get() / 1024.0 / 1024.0 / (elapsedMs / 1000.0), this.retries.get());
+        for (final String skippedFile : skippedFiles) {
+            System.err.format("Skipped %s. Report might be incomplete.%n", skippedFile);
+        }
+
+        return skippedFiles;
+    }
+
+    private void collect(final String targetDirectory, final File sourceDirectory, final List<FileUpload> uploads) {
+        final File[] files = sourceDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (final File file : files) {
+            if (file.isDirectory()) {
+                this.collect(targetDirectory + "/" + file.getName(), file, uploads);
+            } else if (file.isFile()) {
+                uploads.add(new FileUpload(file, targetDirectory + "/" + file.getName()));
+            }
+        }
+    }
+
+    private void uploadWithRetries(final String s3bucket, final FileUpload fileUpload, final long deadlineMs) {
+        long sleepTimeMs = INITIAL_RETRY_SLEEP_TIME_MS;
+
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS && System.currentTimeMillis() < deadlineMs; attempt++) {
+            try {
+                final long bytes = this.uploadFile(s3bucket, fileUpload);
+                this.uploadedFiles.incrementAndGet();
+                this.uploadedBytes.addAndGet(bytes);
+                this.pendingFiles.remove(fileUpload.file.getAbsolutePath());
+                return;
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (final Exception e) {
+                System.out.format("Failed to upload to S3 %s/%s (attempt %d of %d): %s%n", s3bucket, fileUpload.key, attempt, MAX_ATTEMPTS, e.getMessage());
+                if (attempt == MAX_ATTEMPTS) {
+                    return;
+                }
+                this.retries.incrementAndGet();
+
+                try {
+                    Thread.sleep(Math.min(sleepTimeMs, Math.max(0, deadlineMs - System.currentTimeMillis())));
+                } catch (final InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                sleepTimeMs *= BACKOFF_FACTOR;
+            }
+        }
+    }
+
+    /**
+     * @return The number of bytes sent to S3.
+     */
+    private long uploadFile(final String s3bucket, final FileUpload fileUpload) throws IOException, InterruptedException {
+        final File file = fileUpload.file;
+        final boolean compress = isCompressible(file);
+        final File uploadedFile = compress ? gzip(file) : file;
+
+        try {
+            final PutObjectRequest putRequest = new PutObjectRequest(s3bucket, fileUpload.key, uploadedFile)
+                    .withCannedAcl(CannedAccessControlList.PublicRead);
+            if (compress) {
+                final ObjectMetadata metadata = new ObjectMetadata();
+                metadata.setContentType(Mimetypes.getInstance().getMimetype(file));
+                metadata.setContentEncoding("gzip");
+                putRequest.setMetadata(metadata);
+            }
+
+            final Upload upload = this.transferManager.upload(putRequest);
+            this.activeUploads.add(upload);
+            if (this.aborted) {
+                // Started while the others were being aborted.
+                upload.abort();
+            }
+            try {
+                upload.waitForCompletion();
+            } finally {
+                this.activeUploads.remove(upload);
+            }
+            return uploadedFile.length();
+        } finally {
+            if (compress && !uploadedFile.delete()) {
+                uploadedFile.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Stop the transfers still running in the transfer manager. Interrupting the threads waiting for them is not enough,
+     * the transfers would keep going in the background and could still complete after the deadline.
+     */
+    private void abortActiveUploads() {
+        this.aborted = true;
+        for (final Upload upload : this.activeUploads) {
+            try {
+                upload.abort();
+            } catch (final RuntimeException e) {
+                System.err.format("Can't abort upload %s: %s%n", upload.getDescription(), e.getMessage());
+            }
+        }
+        this.activeUploads.clear();
+    }
+
+    private static boolean isCompressible(final File file) {
+        final String name = file.getName().toLowerCase(Locale.ROOT);
+        for (final String extension : COMPRESSIBLE_EXTENSIONS) {
+            if (name.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static File gzip(final File file) throws IOException {
+        final File compressed = File.createTempFile("gatling-report", ".gz");
+        try (InputStream is = new FileInputStream(file); OutputStream os = new GZIPOutputStream(new FileOutputStream(compressed))) {
+            final byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                os.write(buffer, 0, read);
+            }
+        } catch (final IOException e) {
+            Files.deleteIfExists(compressed.toPath());
+            throw e;
+        }
+        return compressed;
+    }
+
+    private static class FileUpload {
+        private final File file;
+        private final String key;
+
+        FileUpload(final File file, final String key) {
+            this.file = file;
+            this.key = key;
+        }
+    }
+}
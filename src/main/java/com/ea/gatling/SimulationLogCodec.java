@@ -0,0 +1,429 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compact encoding of a simulation log for transfer and storage. Gatling repeats the scenario, request names and
+ * statuses on every line and writes timestamps as 13 digit numbers, so the text log is many times larger than its
+ * content. The compact log stores every record exactly, but:
+ * <ul>
+ * <li>strings are replaced by their index in a dictionary, which is written the first time a string occurs,</li>
+ * <li>timestamps are stored as the difference to the previous timestamp, so the end of a request is its response time,</li>
+ * <li>numbers are written as variable length integers,</li>
+ * <li>and records are compressed in blocks, each of which can be decoded on its own.</li>
+ * </ul>
+ * The decoder produces the text log block by block, so logs of any size are decoded in constant memory. Line breaks are
+ * normalized to \n.
+ * <p>
+ * Runs on the load generators from the plugin jar to encode a log before it is downloaded, and must only depend on the
+ * JDK, like the {@link SimulationLogSummarizer}.
+ * <p>
+ * Usage: java -cp gatling-aws-maven-plugin.jar com.ea.gatling.SimulationLogCodec encode|decode input output
+ */
+public class SimulationLogCodec {
+
+    /**
+     * File name suffix of compact logs. Gatling ignores them, since it reads all .log files of a results directory.
+     */
+    public static final String SUFFIX = ".slz";
+
+    private static final byte[] MAGIC = {'G', 'S', 'L', 'Z'};
+    private static final int VERSION = 1;
+    /**
+     * Raw size after which a block is compressed and written.
+     */
+    private static final int BLOCK_SIZE = 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int NEW_STRING = 0;
+    private static final int NUMBER = 1;
+    private static final int DICTIONARY_OFFSET = 2;
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length != 3 || !("encode".equals(args[0]) || "decode".equals(args[0]))) {
+            System.err.println("Usage: SimulationLogCodec encode|decode <input> <output>");
+            System.exit(2);
+        }
+
+        final long startTimeMs = System.currentTimeMillis();
+        final File input = new File(args[1]);
+        final File output = new File(args[2]);
+        if ("encode".equals(args[0])) {
+            encode(input, output);
+        } else {
+            decode(input, output);
+        }
+
+        System.out.format("%sd %s (%d bytes) into %s (%d bytes) in %d ms%n", "encode".equals(args[0]) ? "Encode" : "Decode",
+                input, input.length(), output, output.length(), System.currentTimeMillis() - startTimeMs);
+    }
+
+    public static void encode(final File simulationLog, final File compactLog) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(simulationLog), StandardCharsets.UTF_8), BUFFER_SIZE);
+             Encoder encoder = new Encoder(new FileOutputStream(compactLog))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                encoder.write(line);
+            }
+        }
+    }
+
+    public static void decode(final File compactLog, final File simulationLog) throws IOException {
+        try (Reader reader = new Decoder(new FileInputStream(compactLog));
+             Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(simulationLog), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            final char[] buffer = new char[BUFFER_SIZE];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                writer.write(buffer, 0, read);
+            }
+        }
+    }
+
+    /**
+     * @return True if the file starts like a compact log.
+     */
+    public static boolean isCompact(final File file) throws IOException {
+        try (InputStream is = new FileInputStream(file)) {
+            final byte[] magic = new byte[MAGIC.length];
+            int read = 0;
+            int count;
+            while (read < magic.length && (count = is.read(magic, read, magic.length - read)) != -1) {
+                read += count;
+            }
+            return read == magic.length && Arrays.equals(magic, MAGIC);
+        }
+    }
+
+    /**
+     * Open a simulation log for reading line by line, whether it is a text or a compact log.
+     */
+    public static BufferedReader openReader(final File file) throws IOException {
+        final Reader reader = isCompact(file)
+                ? new Decoder(new FileInputStream(file))
+                : new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8);
+        return new BufferedReader(reader, BUFFER_SIZE);
+    }
+
+    /**
+     * Encodes the lines of a simulation log one by one.
+     */
+    public static class Encoder implements Closeable {
+        private final OutputStream out;
+        private final Deflater deflater = new Deflater();
+        private final ByteArrayOutputStream block = new ByteArrayOutputStream(BLOCK_SIZE + BUFFER_SIZE);
+        private final Map<String, Integer> dictionary = new HashMap<>();
+        private final byte[] compressed = new byte[BUFFER_SIZE];
+        private long lastTimestamp;
+
+        public Encoder(final OutputStream out) throws IOException {
+            this.out = new BufferedOutputStream(out, BUFFER_SIZE);
+            this.out.write(MAGIC);
+            this.out.write(VERSION);
+        }
+
+        public void write(final String line) throws IOException {
+            final String[] fields = line.split("\t", -1);
+            final int[] timestampFields = SimulationLogRecord.timestampFields(fields[0]);
+            writeVarint(this.block, fields.length);
+
+            for (int i = 0; i < fields.length; i++) {
+                final boolean timestamp = contains(timestampFields, i);
+                if (isNumber(fields[i])) {
+                    final long value = Long.parseLong(fields[i]);
+                    writeVarint(this.block, NUMBER);
+                    writeVarint(this.block, zigZag(value - (timestamp ? this.lastTimestamp : 0)));
+                    if (timestamp) {
+                        this.lastTimestamp = value;
+                    }
+                } else {
+                    this.writeString(fields[i]);
+                }
+            }
+
+            if (this.block.size() >= BLOCK_SIZE) {
+                this.flushBlock();
+            }
+        }
+
+        private void writeString(final String value) {
+            final Integer index = this.dictionary.get(value);
+            if (index != null) {
+                writeVarint(this.block, DICTIONARY_OFFSET + index);
+                return;
+            }
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(this.block, NEW_STRING);
+            writeVarint(this.block, bytes.length);
+            this.block.write(bytes, 0, bytes.length);
+            this.dictionary.put(value, this.dictionary.size());
+        }
+
+        /**
+         * Compress the block and start a new one. Every block has its own dictionary and timestamp base.
+         */
+        private void flushBlock() throws IOException {
+            if (this.block.size() == 0) {
+                return;
+            }
+            final byte[] raw = this.block.toByteArray();
+            final ByteArrayOutputStream deflated = new ByteArrayOutputStream(raw.length / 4);
+            this.deflater.reset();
+            this.deflater.setInput(raw);
+            this.deflater.finish();
+            while (!this.deflater.finished()) {
+                final int count = this.deflater.deflate(this.compressed);
+                deflated.write(this.compressed, 0, count);
+            }
+
+            writeVarint(this.out, raw.length);
+            writeVarint(this.out, deflated.size());
+            deflated.writeTo(this.out);
+
+            this.block.reset();
+            this.dictionary.clear();
+            this.lastTimestamp = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                this.flushBlock();
+            } finally {
+                this.deflater.end();
+                this.out.close();
+            }
+        }
+    }
+
+    /**
+     * Decodes a compact log into the lines of the text log, one block at a time.
+     */
+    public static class Decoder extends Reader {
+        private final DataInputStream in;
+        private final Inflater inflater = new Inflater();
+        private final List<String> dictionary = new ArrayList<>();
+        private final StringBuilder text = new StringBuilder();
+        private int textPosition;
+
+        public Decoder(final InputStream in) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+            final byte[] magic = new byte[MAGIC.length];
+            this.in.readFully(magic);
+            final int version = this.in.read();
+            if (!Arrays.equals(magic, MAGIC) || version != VERSION) {
+                throw new IOException("Not a compact simulation log of version " + VERSION);
+            }
+        }
+
+        @Override
+        public int read(final char[] buffer, final int offset, final int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (this.textPosition == this.text.length() && !this.readBlock()) {
+                return -1;
+            }
+            final int count = Math.min(length, this.text.length() - this.textPosition);
+            this.text.getChars(this.textPosition, this.textPosition + count, buffer, offset);
+            this.textPosition += count;
+            return count;
+        }
+
+        /**
+         * @return False at the end of the log.
+         */
+        private boolean readBlock() throws IOException {
+            final int first = this.in.read();
+            if (first == -1) {
+                return false;
+            }
+            final int rawLength = (int) readVarint(this.in, first);
+            final int compressedLength = (int) readVarint(this.in, this.in.read());
+            final byte[] compressed = new byte[compressedLength];
+            this.in.readFully(compressed);
+
+            final byte[] raw = new byte[rawLength];
+            this.inflater.reset();
+            this.inflater.setInput(compressed);
+            try {
+                int inflated = 0;
+                while (inflated < rawLength) {
+                    final int count = this.inflater.inflate(raw, inflated, rawLength - inflated);
+                    if (count == 0 && (this.inflater.finished() || this.inflater.needsInput())) {
+                        throw new EOFException("Truncated block in compact simulation log");
+                    }
+                    inflated += count;
+                }
+            } catch (final DataFormatException e) {
+                throw new IOException("Corrupt block in compact simulation log", e);
+            }
+
+            this.text.setLength(0);
+            this.textPosition = 0;
+            this.dictionary.clear();
+            this.decodeBlock(raw);
+            return true;
+        }
+
+        private void decodeBlock(final byte[] raw) throws IOException {
+            final int[] position = {0};
+            long lastTimestamp = 0;
+            while (position[0] < raw.length) {
+                final int fieldCount = (int) readVarint(raw, position);
+                int[] timestampFields = null;
+                for (int i = 0; i < fieldCount; i++) {
+                    if (i > 0) {
+                        this.text.append(SimulationLogRecord.SEPARATOR);
+                    }
+                    final int code = (int) readVarint(raw, position);
+                    final String value;
+                    if (code == NUMBER) {
+                        final long delta = unZigZag(readVarint(raw, position));
+                        if (timestampFields != null && contains(timestampFields, i)) {
+                            lastTimestamp += delta;
+                            this.text.append(lastTimestamp);
+                        } else {
+                            this.text.append(delta);
+                        }
+                        value = null;
+                    } else if (code == NEW_STRING) {
+                        final int length = (int) readVarint(raw, position);
+                        if (length < 0 || position[0] + length > raw.length) {
+                            throw new IOException("Corrupt string in compact simulation log");
+                        }
+                        value = new String(raw, position[0], length, StandardCharsets.UTF_8);
+                        position[0] += length;
+                        this.dictionary.add(value);
+                    } else if (code - DICTIONARY_OFFSET < this.dictionary.size()) {
+                        value = this.dictionary.get(code - DICTIONARY_OFFSET);
+                    } else {
+                        throw new IOException("Unknown dictionary entry in compact simulation log: " + code);
+                    }
+
+                    if (value != null) {
+                        this.text.append(value);
+                    }
+                    if (i == 0) {
+                        // Like the encoder, take the timestamp fields from the record type.
+                        timestampFields = SimulationLogRecord.timestampFields(value == null ? "" : value);
+                    }
+                }
+                this.text.append('\n');
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.inflater.end();
+            this.in.close();
+        }
+    }
+
+    /**
+     * @return True for integers which survive parsing and printing unchanged, e.g. not "007" or "+1".
+     */
+    static boolean isNumber(final String value) {
+        final int length = value.length();
+        final int start = length > 0 && value.charAt(0) == '-' ? 1 : 0;
+        if (length == start || length - start > 18 || (value.charAt(start) == '0' && (length - start > 1 || start == 1))) {
+            return false;
+        }
+        for (int i = start; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean contains(final int[] values, final int value) {
+        for (final int candidate : values) {
+            if (candidate == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long zigZag(final long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(final long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarint(final OutputStream out, final long value) {
+        try {
+            long remaining = value;
+            while ((remaining & ~0x7FL) != 0) {
+                out.write((int) ((remaining & 0x7F) | 0x80));
+                remaining >>>= 7;
+            }
+            out.write((int) remaining);
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long readVarint(final byte[] raw, final int[] position) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position[0] >= raw.length) {
+                throw new EOFException("Truncated number in compact simulation log");
+            }
+            final int b = raw[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt number in compact simulation log");
+    }
+
+    private static long readVarint(final InputStream in, final int first) throws IOException {
+        long value = 0;
+        int b = first;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (b == -1) {
+                throw new EOFException("Truncated compact simulation log");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            b = in.read();
+        }
+        throw new IOException("Corrupt number in compact simulation log");
+    }
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Merges the simulation logs of all load generators into a single log ordered by time. Only the current record of
+ * every input is held in memory, so the memory footprint depends on the number of inputs but not on their size.
+ * The RUN headers of all inputs are collapsed into one header with the earliest start time, so the merged log
+ * describes a single run. Timestamps of an input can be corrected by the clock offset of the load generator it came from.
+ */
+public class SimulationLogMerger {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final List<File> inputs = new ArrayList<>();
+    private final List<Long> clockOffsetsMs = new ArrayList<>();
+    private long mergedRecords;
+
+    public void addInput(final File input) {
+        this.addInput(input, 0);
+    }
+
+    /**
+     * @param clockOffsetMs Offset of the clock of the load generator which wrote the input, relative to the local clock.
+     *                      It is subtracted from all timestamps of the input.
+     */
+    public void addInput(final File input, final long clockOffsetMs) {
+        this.inputs.add(input);
+        this.clockOffsetsMs.add(clockOffsetMs);
+    }
+
+    /**
+     * @return Number of records written to the merged log, not counting the RUN header.
+     */
+    public long getMergedRecords() {
+        return this.mergedRecords;
+    }
+
+    public void merge(final File output) throws IOException {
+        final long mergeStartTimeMs = System.currentTimeMillis();
+        final List<Source> sources = new ArrayList<>();
+
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            SimulationLogRecord runHeader = null;
+            final PriorityQueue<Source> queue = new PriorityQueue<>();
+
+            for (int i = 0; i < this.inputs.size(); i++) {
+                final Source source = new Source(this.inputs.get(i), sources.size(), -this.clockOffsetsMs.get(i));
+                sources.add(source);
+
+                // The RUN header is the first line of a simulation log.
+                while (source.current != null && source.current.is(SimulationLogRecord.RUN)) {
+                    if (runHeader == null || source.current.getTimestamp() < runHeader.getTimestamp()) {
+                        runHeader = this.normalizedRunHeader(runHeader, source.current);
+                    }
+                    source.advance();
+                }
+                if (source.current != null) {
+                    queue.add(source);
+                }
+            }
+
+            if (runHeader != null) {
+                writer.write(runHeader.getLine());
+                writer.write('\n');
+            }
+
+            while (!queue.isEmpty()) {
+                final Source source = queue.poll();
+                if (!source.current.is(SimulationLogRecord.RUN)) {
+                    writer.write(source.current.getLine());
+                    writer.write('\n');
+                    this.mergedRecords++;
+                }
+                if (source.advance()) {
+                    queue.add(source);
+                }
+            }
+        } finally {
+            for (final Source source : sources) {
+                source.close();
+            }
+        }
+
+        System.out.format("Merged %d records from %d simulation logs into %s in %d ms%n",
+                this.mergedRecords, this.inputs.size(), output.getAbsolutePath(), System.currentTimeMillis() - mergeStartTimeMs);
+    }
+
+    /**
+     * Keep the simulation id of the first header so all records end up in one run, but use the earliest start time.
+     */
+    private SimulationLogRecord normalizedRunHeader(final SimulationLogRecord firstHeader, final SimulationLogRecord earlierHeader) {
+        if (firstHeader == null) {
+            return earlierHeader;
+        }
+
+        final StringBuilder line = new StringBuilder();
+        for (int i = 0; i < firstHeader.getFieldCount(); i++) {
+            if (i > 0) {
+                line.append(SimulationLogRecord.SEPARATOR);
+            }
+            line.append(i == 4 ? earlierHeader.getField(4) : firstHeader.getField(i));
+        }
+        return new SimulationLogRecord(line.toString());
+    }
+
+    private static class Source implements Comparable<Source>, Closeable {
+        private final BufferedReader reader;
+        private final int index;
+        private final long shiftMs;
+        private SimulationLogRecord current;
+        private long timestamp;
+
+        Source(final File file, final int index, final long shiftMs) throws IOException {
+            this.reader = SimulationLogCodec.openReader(file);
+            this.index = index;
+            this.shiftMs = shiftMs;
+            this.advance();
+        }
+
+        /**
+         * @return False once the input is exhausted.
+         */
+        boolean advance() throws IOException {
+            String line;
+            do {
+                line = this.reader.readLine();
+            } while (line != null && line.isEmpty());
+
+            if (line == null) {
+                this.current = null;
+                return false;
+            }
+
+            final SimulationLogRecord record = new SimulationLogRecord(line);
+            this.current = this.shiftMs == 0 ? record : record.shiftedBy(this.shiftMs);
+            this.timestamp = this.current.getTimestamp();
+            return true;
+        }
+
+        @Override
+        public int compareTo(final Source other) {
+            final int byTime = Long.compare(this.timestamp, other.timestamp);
+            return byTime != 0 ? byTime : Integer.compare(this.index, other.index);
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.reader.close();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+/**
+ * A single line of a Gatling simulation.log. The file is tab separated and the first column names the record type:
+ * <pre>
+ * RUN      simulationClass  userDefinedId  simulationId  start  description  version
+ * USER     scenario  userId  START|END  start  end
+ * REQUEST  scenario  userId  groups  name  start  end  OK|KO  message  [extra info]
+ * GROUP    scenario  userId  groups  start  end  cumulatedResponseTime  OK|KO
+ * ERROR    message  timestamp
+ * </pre>
+ */
+public class SimulationLogRecord {
+
+    public static final String RUN = "RUN";
+    public static final String USER = "USER";
+    public static final String REQUEST = "REQUEST";
+    public static final String GROUP = "GROUP";
+    public static final String ERROR = "ERROR";
+
+    public static final char SEPARATOR = '\t';
+
+    private final String line;
+    private final String[] fields;
+
+    public SimulationLogRecord(final String line) {
+        this.line = line;
+        this.fields = line.split("\t", -1);
+    }
+
+    public String getLine() {
+        return this.line;
+    }
+
+    public String getType() {
+        return this.fields[0];
+    }
+
+    public boolean is(final String type) {
+        return type.equals(this.fields[0]);
+    }
+
+    public String getField(final int index) {
+        return index < this.fields.length ? this.fields[index] : "";
+    }
+
+    public int getFieldCount() {
+        return this.fields.length;
+    }
+
+    public String getScenario() {
+        return this.getField(1);
+    }
+
+    public String getRequestName() {
+        return this.getField(4);
+    }
+
+    public long getRequestStart() {
+        return this.getLong(5);
+    }
+
+    public long getRequestEnd() {
+        return this.getLong(6);
+    }
+
+    public boolean isOk() {
+        if (this.is(REQUEST) || this.is(GROUP)) {
+            return "OK".equals(this.getField(7));
+        }
+        return !this.is(ERROR);
+    }
+
+    public boolean isUserStart() {
+        return this.is(USER) && "START".equals(this.getField(3));
+    }
+
+    public boolean isUserEnd() {
+        return this.is(USER) && "END".equals(this.getField(3));
+    }
+
+    /**
+     * @return The time the record was written at, i.e. the end of a request or group, the start or end of a user and
+     * the start of the run. Returns Long.MIN_VALUE for records without a timestamp.
+     */
+    public long getTimestamp() {
+        switch (this.fields[0]) {
+            case RUN:
+                return this.getLong(4);
+            case USER:
+                return this.isUserStart() ? this.getLong(4) : this.getLong(5);
+            case REQUEST:
+                return this.getLong(6);
+            case GROUP:
+                return this.getLong(5);
+            case ERROR:
+                return this.getLong(2);
+            default:
+                return Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * @return The indices of all fields holding an epoch timestamp in milliseconds.
+     */
+    public int[] getTimestampFields() {
+        return timestampFields(this.fields[0]);
+    }
+
+    /**
+     * @return The indices of all fields holding an epoch timestamp in milliseconds in records of the given type.
+     */
+    static int[] timestampFields(final String type) {
+        switch (type) {
+            case RUN:
+                return new int[]{4};
+            case USER:
+                return new int[]{4, 5};
+            case REQUEST:
+                return new int[]{5, 6};
+            case GROUP:
+                return new int[]{4, 5};
+            case ERROR:
+                return new int[]{2};
+            default:
+                return new int[0];
+        }
+    }
+
+    /**
+     * @return A copy of this record with all timestamps moved by the given number of milliseconds.
+     */
+    public SimulationLogRecord shiftedBy(final long deltaMs) {
+        final String[] shifted = this.fields.clone();
+        for (final int index : this.getTimestampFields()) {
+            final long timestamp = this.getLong(index);
+            if (index < shifted.length && timestamp != Long.MIN_VALUE) {
+                shifted[index] = Long.toString(timestamp + deltaMs);
+            }
+        }
+        return new SimulationLogRecord(String.join(String.valueOf(SEPARATOR), shifted));
+    }
+
+    private long getLong(final int index) {
+        try {
+            return Long.parseLong(this.getField(index));
+        } catch (final NumberFormatException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Command line entry point run on the load generators to reduce a simulation log to a {@link SimulationLogSummary}.
+ * Runs from the plugin jar and must only depend on the JDK, since none of the plugin dependencies are available there.
+ * <p>
+ * Usage: java -cp gatling-aws-maven-plugin.jar com.ea.gatling.SimulationLogSummarizer simulation.log summary.gz bucketSeconds
+ */
+public class SimulationLogSummarizer {
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: SimulationLogSummarizer <simulation.log> <summary.gz> <bucketSeconds>");
+            System.exit(2);
+        }
+
+        final long startTimeMs = System.currentTimeMillis();
+        final File simulationLog = new File(args[0]);
+        final File summaryFile = new File(args[1]);
+        SimulationLogSummary.summarize(simulationLog, Long.parseLong(args[2]) * 1000).write(summaryFile);
+
+        System.out.format("Summarized %s (%d bytes) into %s (%d bytes) in %d ms%n", simulationLog, simulationLog.length(),
+                summaryFile, summaryFile.length(), System.currentTimeMillis() - startTimeMs);
+    }
+}
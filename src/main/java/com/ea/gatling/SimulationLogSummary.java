@@ -0,0 +1,239 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compact summary of a simulation log: response time histograms per request name and time bucket, split by OK and
+ * KO, plus error and user counts. Summaries of several load generators can be merged without losing precision, which
+ * allows shipping summaries instead of raw logs.
+ */
+public class SimulationLogSummary {
+
+    private static final String SUMMARY = "SUMMARY";
+    private static final String HISTOGRAM = "HISTOGRAM";
+    private static final String FORMAT_VERSION = "1";
+    private static final String OK = "OK";
+    private static final String KO = "KO";
+
+    private final long bucketMs;
+    private final Map<String, Map<Long, LatencyHistogram>> okHistograms = new TreeMap<>();
+    private final Map<String, Map<Long, LatencyHistogram>> koHistograms = new TreeMap<>();
+    private final Map<String, Long> errors = new TreeMap<>();
+    private long runStart = Long.MAX_VALUE;
+    private long runEnd = Long.MIN_VALUE;
+    private long usersStarted;
+    private long usersEnded;
+
+    public SimulationLogSummary(final long bucketMs) {
+        this.bucketMs = bucketMs;
+    }
+
+    public void record(final SimulationLogRecord record) {
+        final long timestamp = record.getTimestamp();
+        if (timestamp != Long.MIN_VALUE && !record.is(SimulationLogRecord.RUN)) {
+            this.runStart = Math.min(this.runStart, timestamp);
+            this.runEnd = Math.max(this.runEnd, timestamp);
+        }
+
+        if (record.is(SimulationLogRecord.REQUEST)) {
+            final long bucket = record.getRequestEnd() - record.getRequestEnd() % this.bucketMs;
+            final Map<String, Map<Long, LatencyHistogram>> histograms = record.isOk() ? this.okHistograms : this.koHistograms;
+            histogram(histograms, record.getRequestName(), bucket).record(record.getRequestEnd() - record.getRequestStart());
+            if (!record.isOk()) {
+                this.errors.merge(record.getField(8), 1L, Long::sum);
+            }
+        } else if (record.isUserStart()) {
+            this.usersStarted++;
+        } else if (record.isUserEnd()) {
+            this.usersEnded++;
+        } else if (record.is(SimulationLogRecord.ERROR)) {
+            this.errors.merge(record.getField(1), 1L, Long::sum);
+        }
+    }
+
+    public void merge(final SimulationLogSummary other) {
+        mergeHistograms(this.okHistograms, other.okHistograms);
+        mergeHistograms(this.koHistograms, other.koHistograms);
+        for (final Map.Entry<String, Long> error : other.errors.entrySet()) {
+            this.errors.merge(error.getKey(), error.getValue(), Long::sum);
+        }
+        this.runStart = Math.min(this.runStart, other.runStart);
+        this.runEnd = Math.max(this.runEnd, other.runEnd);
+        this.usersStarted += other.usersStarted;
+        this.usersEnded += other.usersEnded;
+    }
+
+    public static SimulationLogSummary summarize(final File simulationLog, final long bucketMs) throws IOException {
+        final SimulationLogSummary summary = new SimulationLogSummary(bucketMs);
+        try (BufferedReader reader = SimulationLogCodec.openReader(simulationLog)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    summary.record(new SimulationLogRecord(line));
+                }
+            }
+        }
+        return summary;
+    }
+
+    public void write(final File file) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file)), StandardCharsets.UTF_8))) {
+            writer.write(String.join("\t", SUMMARY, FORMAT_VERSION, Long.toString(this.bucketMs), Long.toString(this.runStart),
+                    Long.toString(this.runEnd), Long.toString(this.usersStarted), Long.toString(this.usersEnded)));
+            writer.write('\n');
+            writeHistograms(writer, OK, this.okHistograms);
+            writeHistograms(writer, KO, this.koHistograms);
+            for (final Map.Entry<String, Long> error : this.errors.entrySet()) {
+                writer.write(String.join("\t", SimulationLogRecord.ERROR, Long.toString(error.getValue()), sanitize(error.getKey())));
+                writer.write('\n');
+            }
+        }
+    }
+
+    public static SimulationLogSummary read(final File file) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(file)), StandardCharsets.UTF_8))) {
+            final String[] header = reader.readLine().split("\t");
+            if (!SUMMARY.equals(header[0]) || !FORMAT_VERSION.equals(header[1])) {
+                throw new IOException("Not a simulation log summary: " + file);
+            }
+
+            final SimulationLogSummary summary = new SimulationLogSummary(Long.parseLong(header[2]));
+            summary.runStart = Long.parseLong(header[3]);
+            summary.runEnd = Long.parseLong(header[4]);
+            summary.usersStarted = Long.parseLong(header[5]);
+            summary.usersEnded = Long.parseLong(header[6]);
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] fields = line.split("\t", -1);
+                if (HISTOGRAM.equals(fields[0])) {
+                    final Map<String, Map<Long, LatencyHistogram>> histograms = OK.equals(fields[3]) ? summary.okHistograms : summary.koHistograms;
+                    histogram(histograms, fields[1], Long.parseLong(fields[2])).merge(LatencyHistogram.deserialize(fields[4]));
+                } else if (SimulationLogRecord.ERROR.equals(fields[0])) {
+                    summary.errors.merge(fields[2], Long.parseLong(fields[1]), Long::sum);
+                }
+            }
+            return summary;
+        }
+    }
+
+    /**
+     * Write a human readable report with statistics per request name over the whole run.
+     */
+    public void writeReport(final PrintWriter out) {
+        final double durationSeconds = Math.max(1, this.runEnd - this.runStart) / 1000.0;
+        out.format("Run duration: %.0f s, users started: %d, users ended: %d%n%n", durationSeconds, this.usersStarted, this.usersEnded);
+        out.format("%-40s %10s %10s %8s %9s %7s %7s %7s %7s %7s %7s%n",
+                "Request", "OK", "KO", "KO %", "req/s", "min", "p50", "p95", "p99", "max", "mean");
+
+        final LatencyHistogram global = new LatencyHistogram();
+        long globalKo = 0;
+        final TreeMap<String, Boolean> names = new TreeMap<>();
+        this.okHistograms.keySet().forEach(name -> names.put(name, true));
+        this.koHistograms.keySet().forEach(name -> names.put(name, true));
+
+        for (final String name : names.keySet()) {
+            final LatencyHistogram ok = total(this.okHistograms.get(name));
+            final LatencyHistogram ko = total(this.koHistograms.get(name));
+            this.writeReportLine(out, name, ok, ko.getTotalCount(), durationSeconds);
+            global.merge(ok);
+            globalKo += ko.getTotalCount();
+        }
+        this.writeReportLine(out, "Global", global, globalKo, durationSeconds);
+
+        if (!this.errors.isEmpty()) {
+            out.format("%nErrors:%n");
+            for (final Map.Entry<String, Long> error : this.errors.entrySet()) {
+                out.format("%10d  %s%n", error.getValue(), error.getKey());
+            }
+        }
+    }
+
+    /**
+     * Write statistics per time bucket and request name as CSV, e.g. for plotting throughput and response times.
+     */
+    public void writeTimeline(final PrintWriter out) {
+        out.println("bucket_start,request,ok,ko,p50,p95,p99,max");
+        final TreeMap<Long, TreeMap<String, LatencyHistogram[]>> buckets = new TreeMap<>();
+        collectBuckets(buckets, this.okHistograms, 0);
+        collectBuckets(buckets, this.koHistograms, 1);
+
+        for (final Map.Entry<Long, TreeMap<String, LatencyHistogram[]>> bucket : buckets.entrySet()) {
+            for (final Map.Entry<String, LatencyHistogram[]> request : bucket.getValue().entrySet()) {
+                final LatencyHistogram ok = request.getValue()[0] == null ? new LatencyHistogram() : request.getValue()[0];
+                final long ko = request.getValue()[1] == null ? 0 : request.getValue()[1].getTotalCount();
+                out.format("%d,\"%s\",%d,%d,%d,%d,%d,%d%n", bucket.getKey(), request.getKey().replace("\"", "\"\""),
+                        ok.getTotalCount(), ko, ok.getValueAtPercentile(50), ok.getValueAtPercentile(95),
+                        ok.getValueAtPercentile(99), ok.getMax());
+            }
+        }
+    }
+
+    private void writeReportLine(final PrintWriter out, final String name, final LatencyHistogram ok, final long ko, final double durationSeconds) {
+        final long total = ok.getTotalCount() + ko;
+        out.format("%-40s %10d %10d %7.2f%% %9.1f %7d %7d %7d %7d %7d %7.0f%n",
+                name.length() > 40 ? name.substring(0, 40) : name, ok.getTotalCount(), ko,
+                total == 0 ? 0.0 : 100.0 * ko / total, total / durationSeconds,
+                ok.getMin(), ok.getValueAtPercentile(50), ok.getValueAtPercentile(95), ok.getValueAtPercentile(99),
+                ok.getMax(), ok.getMean());
+    }
+
+    private static void collectBuckets(final TreeMap<Long, TreeMap<String, LatencyHistogram[]>> buckets, final Map<String, Map<Long, LatencyHistogram>> histograms, final int slot) {
+        for (final Map.Entry<String, Map<Long, LatencyHistogram>> request : histograms.entrySet()) {
+            for (final Map.Entry<Long, LatencyHistogram> bucket : request.getValue().entrySet()) {
+                buckets.computeIfAbsent(bucket.getKey(), key -> new TreeMap<>())
+                        .computeIfAbsent(request.getKey(), key -> new LatencyHistogram[2])[slot] = bucket.getValue();
+            }
+        }
+    }
+
+    private static LatencyHistogram total(final Map<Long, LatencyHistogram> buckets) {
+        final LatencyHistogram total = new LatencyHistogram();
+        if (buckets != null) {
+            buckets.values().forEach(total::merge);
+        }
+        return total;
+    }
+
+    private static LatencyHistogram histogram(final Map<String, Map<Long, LatencyHistogram>> histograms, final String name, final long bucket) {
+        return histograms.computeIfAbsent(name, key -> new TreeMap<>()).computeIfAbsent(bucket, key -> new LatencyHistogram());
+    }
+
+    private static void mergeHistograms(final Map<String, Map<Long, LatencyHistogram>> target, final Map<String, Map<Long, LatencyHistogram>> source) {
+        for (final Map.Entry<String, Map<Long, LatencyHistogram>> request : source.entrySet()) {
+            for (final Map.Entry<Long, LatencyHistogram> bucket : request.getValue().entrySet()) {
+                histogram(target, request.getKey(), bucket.getKey()).merge(bucket.getValue());
+            }
+        }
+    }
+
+    private static void writeHistograms(final Writer writer, final String status, final Map<String, Map<Long, LatencyHistogram>> histograms) throws IOException {
+        for (final Map.Entry<String, Map<Long, LatencyHistogram>> request : histograms.entrySet()) {
+            for (final Map.Entry<Long, LatencyHistogram> bucket : request.getValue().entrySet()) {
+                writer.write(String.join("\t", HISTOGRAM, sanitize(request.getKey()), Long.toString(bucket.getKey()), status, bucket.getValue().serialize()));
+                writer.write('\n');
+            }
+        }
+    }
+
+    private static String sanitize(final String text) {
+        return text.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Checks the live metrics against abort rules, e.g. an error rate above X% or a p99 response time above Y ms sustained
+ * for Z seconds. Once a rule has been breached for long enough, the abort action is run exactly once. An interval in
+ * which users are active but no request completes, e.g. because all of them time out, counts as a breach. An interval
+ * without any users, e.g. before the first user starts, neither breaches nor meets the thresholds.
+ */
+public class SloGuard implements LiveMetricsReporter.SnapshotListener {
+
+    private final Double maxErrorRate;
+    private final Long maxP99Ms;
+    private final long sustainMs;
+    private final Runnable abortAction;
+
+    private final AtomicBoolean aborted = new AtomicBoolean();
+    private long breachStartMs = -1;
+    private volatile String abortReason;
+
+    /**
+     * @param maxErrorRate Maximum percentage of failed requests, or null to not check the error rate.
+     * @param maxP99Ms Maximum 99th percentile response time in milliseconds, or null to not check response times.
+     * @param sustainMs How long a rule has to be breached before the test is aborted.
+     * @param abortAction Stops the test on all load generators.
+     */
+    public SloGuard(final Double maxErrorRate, final Long maxP99Ms, final long sustainMs, final Runnable abortAction) {
+        this.maxErrorRate = maxErrorRate;
+        this.maxP99Ms = maxP99Ms;
+        this.sustainMs = sustainMs;
+        this.abortAction = abortAction;
+    }
+
+    @Override
+    public void onSnapshot(final LiveMetrics.Snapshot snapshot) {
+        if (this.aborted.get()) {
+            return;
+        }
+
+        if (snapshot.getGlobal().getIntervalCount() == 0 && snapshot.getActiveUsers() == 0) {
+            // Nothing to judge, keep the current state.
+            return;
+        }
+
+        final String breach = this.findBreach(snapshot);
+        if (breach == null) {
+            if (this.breachStartMs >= 0) {
+                System.out.println("SLO guard: thresholds met again");
+            }
+            this.breachStartMs = -1;
+            return;
+        }
+
+        if (this.breachStartMs < 0) {
+            // The breach was observed over the whole interval of this snapshot.
+            this.breachStartMs = snapshot.getTimestampMs() - (long) (snapshot.getIntervalSeconds() * 1000);
+        }
+
+        final long breachDurationMs = snapshot.getTimestampMs() - this.breachStartMs;
+        System.out.format("SLO guard: %s for %d s%n", breach, breachDurationMs / 1000);
+
+        if (breachDurationMs >= this.sustainMs && this.aborted.compareAndSet(false, true)) {
+            this.abortReason = String.format("%s for %d s", breach, breachDurationMs / 1000);
+            System.out.format("SLO guard: aborting load test on all load generators, %s%n", this.abortReason);
+            this.abortAction.run();
+        }
+    }
+
+    public boolean isAborted() {
+        return this.aborted.get();
+    }
+
+    /**
+     * @return Description of the breach which caused the abort, or null if the test was not aborted.
+     */
+    public String getAbortReason() {
+        return this.abortReason;
+    }
+
+    private String findBreach(final LiveMetrics.Snapshot snapshot) {
+        final LiveMetrics.RequestSnapshot global = snapshot.getGlobal();
+        if (global.getIntervalCount() == 0) {
+            return String.format("no request completed with %d active users", snapshot.getActiveUsers());
+        }
+        if (this.maxErrorRate != null && global.getErrorRate() > this.maxErrorRate) {
+            return String.format(Locale.ROOT, "error rate %.2f%% above %.2f%%", global.getErrorRate(), this.maxErrorRate);
+        }
+        if (this.maxP99Ms != null && global.getP99() > this.maxP99Ms) {
+            return String.format(Locale.ROOT, "p99 response time %d ms above %d ms", global.getP99(), this.maxP99Ms);
+        }
+        return null;
+    }
+}
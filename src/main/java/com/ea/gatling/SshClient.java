@@ -3,25 +3,29 @@
  */
 package com.ea.gatling;
 
-import net.schmizz.sshj.Config;
-import net.schmizz.sshj.DefaultConfig;
 import net.schmizz.sshj.SSHClient;
 import net.schmizz.sshj.connection.channel.direct.Session;
 import net.schmizz.sshj.connection.channel.direct.Session.Command;
-import net.schmizz.sshj.transport.verification.PromiscuousVerifier;
 
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.Objects;
 
 public class SshClient {
 
-    private static final long MAX_ATTEMPTS = 8;
-    private static final long INITIAL_SLEEP_TIME_MS = 100;
-    private static final long BACKOFF_FACTOR = 2;
-
-    private static final Config DEFAULT_CONFIG = new DefaultConfig();
+    private static final SshConnectionPool CONNECTION_POOL = new SshConnectionPool();
+    private static final String BUNDLE_UNPACK_COMMAND = "tar xzf -";
+    private static final int SSH_PORT = 22;
+    private static final int SSH_PROBE_TIMEOUT_MS = 2000;
+    private static final long SSH_PROBE_INTERVAL_MS = 1000;
 
     public static void scpUpload(HostInfo hostInfo, FromTo fromTo) throws IOException {
         scpUpload(hostInfo, Arrays.asList(fromTo));
@@ -32,21 +36,51 @@ public class SshClient {
      */
     public static void scpUpload(HostInfo hostInfo, List<FromTo> fromTos) throws IOException {
         SSHClient ssh = getSshClient(hostInfo);
+        long startTimeMs = System.currentTimeMillis();
+        long bytes = 0;
+
+        for (FromTo ft: fromTos) {
+            System.out.format("SCP cp %s -> %s/%s%n", ft.from, hostInfo.host, ft.to);
+            ssh.newSCPFileTransfer().upload(ft.from, ft.to);
+            bytes += sizeOf(new File(ft.from));
+        }
 
+        System.out.format("SCP uploaded %d files/directories (%d bytes) to %s in %d ms%n",
+                fromTos.size(), bytes, hostInfo.host, System.currentTimeMillis() - startTimeMs);
+    }
+
+    /**
+     * Upload files as a single gzip compressed tar stream over one channel and unpack it in the home directory of the
+     * remote user in one step. This avoids a round trip per file when uploading many small files.
+     */
+    public static void uploadBundle(HostInfo hostInfo, Collection<AssetManifest.Entry> entries, boolean debugOutputEnabled) throws IOException {
+        SSHClient ssh = getSshClient(hostInfo);
+        long startTimeMs = System.currentTimeMillis();
+
+        // No PTY here, it would mangle the binary stream written to stdin.
+        Session session = ssh.startSession();
         try {
-            Session session = ssh.startSession();
-            session.allocateDefaultPTY();
-            try {
-                for (FromTo ft: fromTos) {
-                    System.out.format("SCP cp %s -> %s/%s%n", ft.from, hostInfo.host, ft.to);
-                    ssh.newSCPFileTransfer().upload(ft.from, ft.to);
-                }
-            } finally {
-                session.close();
+            if (debugOutputEnabled) {
+                System.out.println("About to run: " + BUNDLE_UNPACK_COMMAND);
+            }
+            Command cmd = session.exec(BUNDLE_UNPACK_COMMAND);
+            AssetBundle bundle = new AssetBundle();
+            try (OutputStream stdin = cmd.getOutputStream()) {
+                bundle.write(entries, stdin);
+            }
+            new CommandOutputPump(hostInfo.host, ConsoleOutputSink.INSTANCE).pump(cmd.getInputStream());
+            new CommandOutputPump(hostInfo.host, ConsoleOutputSink.INSTANCE).pump(cmd.getErrorStream());
+            cmd.join();
+
+            System.out.format("Bundle uploaded %d files (%d bytes, %d bytes compressed) to %s in %d ms%n",
+                    bundle.getFileCount(), bundle.getRawBytes(), bundle.getCompressedBytes(), hostInfo.host,
+                    System.currentTimeMillis() - startTimeMs);
+
+            if (!printExitCode(cmd.getExitStatus())) {
+                throw new IOException(String.format("Unpacking bundle on %s failed with exit code %d", hostInfo.host, cmd.getExitStatus()));
             }
         } finally {
-            ssh.disconnect();
-            ssh.close();
+            session.close();
         }
     }
 
@@ -54,119 +88,211 @@ public class SshClient {
     public static void scpDownload(HostInfo hostInfo, FromTo fromTo) throws IOException {
         SSHClient ssh = getSshClient(hostInfo);
 
+        ssh.newSCPFileTransfer().download(fromTo.from, fromTo.to);
+    }
+
+    public static int executeCommand(HostInfo hostInfo, String command, boolean debugOutputEnabled) throws IOException {
+        return executeCommand(hostInfo, command, debugOutputEnabled, ConsoleOutputSink.INSTANCE);
+    }
+
+    /**
+     * Run a command on a remote host and stream its output, line by line, to the given sink.
+     *
+     * @return The exit code of the command.
+     */
+    public static int executeCommand(HostInfo hostInfo, String command, boolean debugOutputEnabled, OutputSink outputSink) throws IOException {
+        SSHClient ssh = getSshClient(hostInfo);
+
+        Session session = ssh.startSession();
+        session.allocateDefaultPTY();
         try {
-            Session session = ssh.startSession();
-            session.allocateDefaultPTY();
-            try {
-                ssh.newSCPFileTransfer().download(fromTo.from, fromTo.to);
-            } finally {
-                session.close();
+            if (debugOutputEnabled) {
+                System.out.println("About to run: " + command);
             }
+            Command cmd = session.exec(command);
+            new CommandOutputPump(hostInfo.host, outputSink).pump(cmd.getInputStream());
+            cmd.join();
+            printExitCode(cmd.getExitStatus());
+            return cmd.getExitStatus();
         } finally {
-            ssh.disconnect();
-            ssh.close();
+            session.close();
         }
     }
 
-    public static int executeCommand(HostInfo hostInfo, String command, boolean debugOutputEnabled) throws IOException {
+    /**
+     * Run a command on a remote host and copy its standard output as is to the given stream, e.g. to download a part
+     * of a file. No PTY is allocated, so binary output and line endings arrive unchanged.
+     *
+     * @return The exit code of the command.
+     */
+    public static int streamCommandOutput(HostInfo hostInfo, String command, boolean debugOutputEnabled, OutputStream output) throws IOException {
         SSHClient ssh = getSshClient(hostInfo);
 
+        Session session = ssh.startSession();
         try {
-            Session session = ssh.startSession();
-            session.allocateDefaultPTY();
-            try {
-                if (debugOutputEnabled) {
-                    System.out.println("About to run: " + command);
-                }
-                Command cmd = session.exec(command);
-                readCommandOutput(cmd);
-                cmd.join();
-                printExitCode(cmd.getExitStatus());
-                return cmd.getExitStatus();
-            } finally {
-                session.close();
+            if (debugOutputEnabled) {
+                System.out.println("About to run: " + command);
+            }
+            Command cmd = session.exec(command);
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = cmd.getInputStream().read(buffer)) != -1) {
+                output.write(buffer, 0, read);
             }
+            new CommandOutputPump(hostInfo.host, ConsoleOutputSink.INSTANCE).pump(cmd.getErrorStream());
+            cmd.join();
+            return cmd.getExitStatus() == null ? -1 : cmd.getExitStatus();
         } finally {
-            ssh.disconnect();
-            ssh.close();
+            session.close();
         }
     }
 
-    public static boolean printExitCode(int exitCode) {
-        boolean success = exitCode == 0;
-        if (!success) {
-            System.out.format("%nexit code: %d%n", exitCode);
+    /**
+     * Start a command on a remote host and stream its output, line by line, to the given sink on a background thread.
+     * The command runs until it exits or the returned handle is stopped.
+     */
+    public static BackgroundCommand startCommand(HostInfo hostInfo, String command, boolean debugOutputEnabled, OutputSink outputSink) throws IOException {
+        SSHClient ssh = getSshClient(hostInfo);
+
+        Session session = ssh.startSession();
+        // With a PTY, closing the session hangs up the remote command.
+        session.allocateDefaultPTY();
+        if (debugOutputEnabled) {
+            System.out.println("About to start: " + command);
         }
-        return success;
+        Command cmd = session.exec(command);
+        return new BackgroundCommand(hostInfo.host, session, cmd.getInputStream(), outputSink);
     }
 
-    private static void readCommandOutput(Command cmd) throws IOException {
-        byte[] tmp = new byte[1024];
-        InputStream is = cmd.getInputStream();
-        while (true) {
-            while (is.available() > 0) {
-                int i = is.read(tmp, 0, 1024);
-                if (i < 0) {
-                    break;
+    /**
+     * Wait until the SSH daemon of a freshly started host accepts connections and sends its identification. This is
+     * much earlier than the EC2 status checks pass, and probing is cheap compared to a full SSH handshake.
+     */
+    public static void waitUntilReachable(String host, long timeoutMs) throws IOException {
+        long startTimeMs = System.currentTimeMillis();
+        IOException lastException = null;
+
+        while (System.currentTimeMillis() - startTimeMs < timeoutMs) {
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(host, SSH_PORT), SSH_PROBE_TIMEOUT_MS);
+                socket.setSoTimeout(SSH_PROBE_TIMEOUT_MS);
+                byte[] banner = new byte[4];
+                int read = 0;
+                while (read < banner.length) {
+                    int count = socket.getInputStream().read(banner, read, banner.length - read);
+                    if (count < 0) {
+                        break;
+                    }
+                    read += count;
                 }
-                System.out.print(new String(tmp, 0, i));
-            }
-            if (!cmd.isOpen()) {
-                if (is.available() > 0) {
-                    continue;
+                if (read == banner.length && "SSH-".equals(new String(banner, StandardCharsets.US_ASCII))) {
+                    System.out.format("%s > SSH reachable after %d ms%n", host, System.currentTimeMillis() - startTimeMs);
+                    return;
                 }
-                printExitCode(cmd.getExitStatus());
-                break;
+            } catch (IOException e) {
+                lastException = e;
             }
+
             try {
-                Thread.sleep(1000);
-            } catch (Exception ee) {
+                Thread.sleep(SSH_PROBE_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for SSH on " + host);
             }
         }
+
+        throw new IOException(String.format("SSH on %s not reachable within %d ms", host, timeoutMs), lastException);
     }
 
-    private static SSHClient getSshClient(HostInfo hostInfo) throws IOException {
-        long sleepTimeMs = INITIAL_SLEEP_TIME_MS;
+    /**
+     * Quote a string for use as a single argument in a remote shell command.
+     */
+    public static String quote(String argument) {
+        return "'" + argument.replace("'", "'\\''") + "'";
+    }
 
-        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
-            try {
-                SSHClient ssh = new SSHClient(DEFAULT_CONFIG);
-                ssh.addHostKeyVerifier(new PromiscuousVerifier());
-                ssh.connect(hostInfo.host);
-                ssh.authPublickey(hostInfo.user, hostInfo.privateKeyPath);
-                ssh.useCompression();
-                return ssh;
-            } catch (IOException exception) {
-                System.out.format("Failed to login to host %s as user %s. Exception: %s.%n", hostInfo.host, hostInfo.user, exception.getMessage());
-                System.out.format("Attempt %d of %d. Sleeping for %d ms.%n", attempt, MAX_ATTEMPTS, sleepTimeMs);
-
-                boolean lastAttempt = attempt == MAX_ATTEMPTS;
-
-                if (lastAttempt) {
-                    throw exception;
-                }
+    /**
+     * @return The pool holding the SSH connections shared by all commands and transfers of this run.
+     */
+    public static SshConnectionPool getConnectionPool() {
+        return CONNECTION_POOL;
+    }
+
+    public static boolean printExitCode(int exitCode) {
+        boolean success = exitCode == 0;
+        if (!success) {
+            System.out.format("%nexit code: %d%n", exitCode);
+        }
+        return success;
+    }
 
-                try {
-                    Thread.sleep(sleepTimeMs);
-                } catch (InterruptedException e) {
+    private static long sizeOf(File file) {
+        if (file.isDirectory()) {
+            long size = 0;
+            File[] children = file.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    size += sizeOf(child);
                 }
-                sleepTimeMs *= BACKOFF_FACTOR;
             }
+            return size;
         }
+        return file.length();
+    }
 
-        throw new RuntimeException(String.format("Unable to login to host %s as user %s after %d attempts.", hostInfo.host, hostInfo.user, MAX_ATTEMPTS));
+    private static SSHClient getSshClient(HostInfo hostInfo) throws IOException {
+        return CONNECTION_POOL.acquire(hostInfo);
     }
 
     static class HostInfo {
         private final String host;
+        private final int port;
         private final String user;
         private final String privateKeyPath;
 
         public HostInfo(String host, String user, String privateKeyPath) {
+            this(host, SSH_PORT, user, privateKeyPath);
+        }
+
+        public HostInfo(String host, int port, String user, String privateKeyPath) {
             this.host = host;
+            this.port = port;
             this.user = user;
             this.privateKeyPath = privateKeyPath;
         }
+
+        public String getHost() {
+            return host;
+        }
+
+        public int getPort() {
+            return port;
+        }
+
+        public String getUser() {
+            return user;
+        }
+
+        public String getPrivateKeyPath() {
+            return privateKeyPath;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof HostInfo)) {
+                return false;
+            }
+            HostInfo other = (HostInfo) o;
+            return Objects.equals(host, other.host) && port == other.port && Objects.equals(user, other.user) && Objects.equals(privateKeyPath, other.privateKeyPath);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(host, port, user, privateKeyPath);
+        }
     }
 
     static class FromTo {
@@ -177,5 +303,13 @@ public class SshClient {
             this.from = from;
             this.to = to;
         }
+
+        public String getFrom() {
+            return from;
+        }
+
+        public String getTo() {
+            return to;
+        }
     }
 }
@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import net.schmizz.keepalive.KeepAliveProvider;
+import net.schmizz.sshj.DefaultConfig;
+import net.schmizz.sshj.SSHClient;
+import net.schmizz.sshj.transport.verification.PromiscuousVerifier;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps one authenticated SSH connection per load generator alive for the whole run. Callers open new sessions and
+ * SCP transfers on the shared connection instead of paying for TCP connect, key exchange and authentication on every
+ * step. Connections that dropped are transparently re-established on the next acquire.
+ */
+public class SshConnectionPool {
+
+    private static final long MAX_ATTEMPTS = 8;
+    private static final long INITIAL_SLEEP_TIME_MS = 100;
+    private static final long BACKOFF_FACTOR = 2;
+    private static final int KEEP_ALIVE_INTERVAL_SECONDS = 15;
+
+    private final DefaultConfig config = new DefaultConfig();
+    private final Map<SshClient.HostInfo, SSHClient> connections = new ConcurrentHashMap<>();
+    private final Map<SshClient.HostInfo, Object> locks = new ConcurrentHashMap<>();
+    private final Map<SshClient.HostInfo, AtomicInteger> failedAttempts = new ConcurrentHashMap<>();
+
+    private final AtomicLong connects = new AtomicLong();
+    private final AtomicLong reconnects = new AtomicLong();
+    private final AtomicLong connectsSaved = new AtomicLong();
+    private final AtomicLong handshakeTimeMs = new AtomicLong();
+
+    public SshConnectionPool() {
+        this.config.setKeepAliveProvider(KeepAliveProvider.KEEP_ALIVE);
+    }
+
+    /**
+     * @return A connected and authenticated client for the given host. The client is owned by the pool and must not be closed by the caller.
+     */
+    public SSHClient acquire(final SshClient.HostInfo hostInfo) throws IOException {
+        // Hosts are driven by a single executor thread each, but lock per host in case several threads share one.
+        synchronized (this.lockFor(hostInfo)) {
+            final SSHClient existing = this.connections.get(hostInfo);
+            if (existing != null) {
+                if (this.isHealthy(existing)) {
+                    this.connectsSaved.incrementAndGet();
+                    return existing;
+                }
+                System.out.format("SSH connection to %s is no longer usable, reconnecting.%n", hostInfo.getHost());
+                this.reconnects.incrementAndGet();
+                this.closeQuietly(existing);
+                this.connections.remove(hostInfo);
+            }
+
+            final SSHClient ssh = this.connect(hostInfo);
+            this.connections.put(hostInfo, ssh);
+            return ssh;
+        }
+    }
+
+    /**
+     * Drop the pooled connection to a host, e.g. after the instance was terminated.
+     */
+    public void invalidate(final SshClient.HostInfo hostInfo) {
+        final SSHClient ssh = this.connections.remove(hostInfo);
+        if (ssh != null) {
+            this.closeQuietly(ssh);
+        }
+    }
+
+    public void closeAll() {
+        for (final SshClient.HostInfo hostInfo : this.connections.keySet()) {
+            this.invalidate(hostInfo);
+        }
+    }
+
+    public void printStatistics() {
+        final long connects = this.connects.get();
+        System.out.format("SSH connections opened: %d (reconnects: %d), connects saved by reuse: %d, total handshake time: %d ms, average handshake time: %d ms%n",
+                connects, this.reconnects.get(), this.connectsSaved.get(), this.handshakeTimeMs.get(),
+                connects == 0 ? 0 : this.handshakeTimeMs.get() / connects);
+    }
+
+    /**
+     * @return Number of failed connection attempts to the host so far.
+     */
+    public int getFailedAttempts(final SshClient.HostInfo hostInfo) {
+        final AtomicInteger attempts = this.failedAttempts.get(hostInfo);
+        return attempts == null ? 0 : attempts.get();
+    }
+
+    private boolean isHealthy(final SSHClient ssh) {
+        return ssh.isConnected() && ssh.isAuthenticated();
+    }
+
+    private SSHClient connect(final SshClient.HostInfo hostInfo) throws IOException {
+        long sleepTimeMs = INITIAL_SLEEP_TIME_MS;
+
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            final long handshakeStartTimeMs = System.currentTimeMillis();
+            final SSHClient ssh = new SSHClient(this.config);
+            try {
+                ssh.addHostKeyVerifier(new PromiscuousVerifier());
+                ssh.connect(hostInfo.getHost(), hostInfo.getPort());
+                ssh.authPublickey(hostInfo.getUser(), hostInfo.getPrivateKeyPath());
+                ssh.useCompression();
+                ssh.getConnection().getKeepAlive().setKeepAliveInterval(KEEP_ALIVE_INTERVAL_SECONDS);
+
+                this.connects.incrementAndGet();
+                this.handshakeTimeMs.addAndGet(System.currentTimeMillis() - handshakeStartTimeMs);
+                return ssh;
+            } catch (IOException exception) {
+                this.closeQuietly(ssh);
+                this.failedAttempts.computeIfAbsent(hostInfo, key -> new AtomicInteger()).incrementAndGet();
+                System.out.format("Failed to login to host %s as user %s. Exception: %s.%n", hostInfo.getHost(), hostInfo.getUser(), exception.getMessage());
+                System.out.format("Attempt %d of %d. Sleeping for %d ms.%n", attempt, MAX_ATTEMPTS, sleepTimeMs);
+
+                boolean lastAttempt = attempt == MAX_ATTEMPTS;
+
+                if (lastAttempt) {
+                    throw exception;
+                }
+
+                try {
+                    Thread.sleep(sleepTimeMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException(String.format("Interrupted while connecting to host %s", hostInfo.getHost()));
+                }
+                sleepTimeMs *= BACKOFF_FACTOR;
+            }
+        }
+
+        throw new RuntimeException(String.format("Unable to login to host %s as user %s after %d attempts.", hostInfo.getHost(), hostInfo.getUser(), MAX_ATTEMPTS));
+    }
+
+    private Object lockFor(final SshClient.HostInfo hostInfo) {
+        // HostInfo is a value object, so intern one lock per distinct host/user/key combination.
+        return this.locks.computeIfAbsent(hostInfo, key -> new Object());
+    }
+
+    private void closeQuietly(final SSHClient ssh) {
+        try {
+            ssh.disconnect();
+            ssh.close();
+        } catch (IOException e) {
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lets all load generators start the simulation at the same wall clock time. Every load generator arrives once it is
+ * staged. When the last one arrived, a start time shortly in the future is picked and handed to all of them. Load
+ * generators which fail before arriving leave, so they don't hold up the others, and their load is redistributed to the
+ * ones which arrived. The clock offsets reported on arrival are kept to correct the simulation logs later.
+ */
+public class StartCoordinator {
+
+    /**
+     * Time between picking the start time and the start, which covers sending the start command to all hosts.
+     */
+    private static final long START_LEAD_TIME_MS = 5 * 1000;
+
+    private final boolean coordinated;
+    private final long maxWaitMs;
+    private final LoadPartitioner partitioner;
+    private final int initialParties;
+    private int parties;
+    private final Map<String, LoadShare> arrived = new LinkedHashMap<>();
+    private Map<String, LoadShare> redistributedShares;
+    private final Map<String, ClockOffset> clockOffsets = new HashMap<>();
+    private long startTimeMs = -1;
+    private long lastProgressMs = System.currentTimeMillis();
+
+    /**
+     * @param coordinated False to let every load generator start right away, without arriving or measuring its clock.
+     * @param parties Number of load generators.
+     * @param maxWaitMs Maximum time to wait without any other load generator arriving or failing, after which the
+     *                  arrived ones start anyway. Staging many hosts with limited concurrency takes a while, but the
+     *                  wait only gives up if staging stalled.
+     * @param partitioner Splits the load across the load generators which arrived, if some of them were lost.
+     */
+    public StartCoordinator(final boolean coordinated, final int parties, final long maxWaitMs, final LoadPartitioner partitioner) {
+        this.coordinated = coordinated;
+        this.parties = parties;
+        this.initialParties = parties;
+        this.maxWaitMs = maxWaitMs;
+        this.partitioner = partitioner;
+    }
+
+    /**
+     * @return False if every load generator starts right away.
+     */
+    public boolean isCoordinated() {
+        return this.coordinated;
+    }
+
+    /**
+     * Wait until all expected load generators arrived.
+     *
+     * @param loadShare The share of the load the host was planned with.
+     * @param clockOffset Clock offset of the host, or null if it could not be measured.
+     * @return The local time at which the simulation should start, or -1 to start right away.
+     */
+    public synchronized long arrive(final String host, final LoadShare loadShare, final ClockOffset clockOffset) {
+        if (clockOffset != null) {
+            this.clockOffsets.put(host, clockOffset);
+        }
+        if (!this.coordinated) {
+            return -1;
+        }
+
+        this.arrived.put(host, loadShare);
+        this.lastProgressMs = System.currentTimeMillis();
+        this.releaseIfComplete();
+
+        while (this.startTimeMs < 0) {
+            final long remainingMs = this.lastProgressMs + this.maxWaitMs - System.currentTimeMillis();
+            if (remainingMs <= 0) {
+                System.out.format("Gave up waiting for %d load generators after %d s without progress, starting the others%n",
+                        this.parties - this.arrived.size(), this.maxWaitMs / 1000);
+                this.release();
+                break;
+            }
+            try {
+                this.wait(remainingMs);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return -1;
+            }
+        }
+        return this.startTimeMs;
+    }
+
+    /**
+     * Called once per load generator when it is done. Stops waiting for it if it failed before it arrived.
+     *
+     * @param host The host of the load generator, or null if its instance never started.
+     */
+    public synchronized void leave(final String host) {
+        if (host == null || !this.arrived.containsKey(host)) {
+            this.parties--;
+            this.lastProgressMs = System.currentTimeMillis();
+            this.releaseIfComplete();
+        }
+    }
+
+    /**
+     * @return The share of the load the host should generate, or null if its share went to the other load generators
+     * because it arrived too late.
+     */
+    public synchronized LoadShare getLoadShare(final String host, final LoadShare plannedShare) {
+        if (this.redistributedShares == null) {
+            return plannedShare;
+        }
+        return this.redistributedShares.get(host);
+    }
+
+    /**
+     * @return Clock offsets of all load generators which reported one, by host.
+     */
+    public synchronized Map<String, ClockOffset> getClockOffsets() {
+        return new HashMap<>(this.clockOffsets);
+    }
+
+    /**
+     * Print the clock offsets and the remaining error after correcting timestamps with them.
+     */
+    public synchronized void printClockOffsets() {
+        if (this.clockOffsets.isEmpty()) {
+            return;
+        }
+        long minOffsetMs = Long.MAX_VALUE;
+        long maxOffsetMs = Long.MIN_VALUE;
+        long maxUncertaintyMs = 0;
+        for (final Map.Entry<String, ClockOffset> entry : this.clockOffsets.entrySet()) {
+            System.out.format("Clock offset of %s: %s%n", entry.getKey(), entry.getValue());
+            minOffsetMs = Math.min(minOffsetMs, entry.getValue().getOffsetMs());
+            maxOffsetMs = Math.max(maxOffsetMs, entry.getValue().getOffsetMs());
+            maxUncertaintyMs = Math.max(maxUncertaintyMs, entry.getValue().getUncertaintyMs());
+        }
+        System.out.format("Clock skew between load generators: %d ms, residual skew after correction: at most %d ms%n",
+                maxOffsetMs - minOffsetMs, 2 * maxUncertaintyMs);
+    }
+
+    private void releaseIfComplete() {
+        if (this.startTimeMs < 0 && !this.arrived.isEmpty() && this.arrived.size() >= this.parties) {
+            this.release();
+        }
+    }
+
+    private void release() {
+        if (this.arrived.size() < this.initialParties && this.partitioner != null) {
+            this.redistribute();
+        }
+        this.startTimeMs = System.currentTimeMillis() + START_LEAD_TIME_MS;
+        System.out.format("%d load generators staged, starting the simulation at %tT.%<tL%n", this.arrived.size(), this.startTimeMs);
+        this.notifyAll();
+    }
+
+    private void redistribute() {
+        final List<Map.Entry<String, LoadShare>> hosts = new ArrayList<>(this.arrived.entrySet());
+        hosts.sort(Comparator.comparingInt(host -> host.getValue().getNumInstance()));
+        final List<String> instanceTypes = new ArrayList<>();
+        for (final Map.Entry<String, LoadShare> host : hosts) {
+            instanceTypes.add(host.getValue().getInstanceType());
+        }
+
+        final List<LoadShare> shares = this.partitioner.partition(instanceTypes);
+        this.redistributedShares = new HashMap<>();
+        for (int i = 0; i < hosts.size(); i++) {
+            this.redistributedShares.put(hosts.get(i).getKey(), shares.get(i));
+        }
+        System.out.format("%d of %d load generators were lost before the start, redistributing their load%n",
+                this.initialParties - hosts.size(), this.initialParties);
+    }
+
+    /**
+     * Splits the load across load generators.
+     */
+    public interface LoadPartitioner {
+        /**
+         * @param instanceTypes Instance type of every load generator, in the order of their instance numbers.
+         */
+        List<LoadShare> partition(List<String> instanceTypes);
+    }
+}
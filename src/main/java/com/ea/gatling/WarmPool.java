@@ -0,0 +1,329 @@
+/**
+ * Copyright (C) 2016 Electronic Arts Inc. All rights reserved.
+ */
+package com.ea.gatling;
+
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.Tag;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A pool of load generators which stay running between load tests and are leased to one run at a time.
+ * <p>
+ * EC2 has no conditional writes for tags, so a lease is claimed optimistically: the claimant writes its lease tag,
+ * waits until concurrent claims of the same instances must have landed, and reads the tags back. Only instances which
+ * still carry its own lease belong to it. Leases expire unless they are renewed, so instances of a crashed build
+ * return to the pool by themselves. Free instances which were idle for longer than the TTL are terminated, after the
+ * reaper claimed them the same way, so a build leasing them at the same time never gets an instance being terminated.
+ * Instances running a detached load test hold a lease which never expires until the collect goal releases it.
+ */
+public class WarmPool {
+
+    static final String LEASE_TAG = "gatling-lease";
+    static final String IDLE_SINCE_TAG = "gatling-idle-since";
+
+    private static final String LEASE_SEPARATOR = "|";
+    private static final long NEVER_EXPIRES = Long.MAX_VALUE;
+    private static final int MAX_CLAIM_ROUNDS = 3;
+    /**
+     * Claims are only written this soon after the pool was read, so concurrent claims land within the settle time.
+     */
+    private static final long CLAIM_WINDOW_MS = 2 * 1000;
+    private static final long CLAIM_SETTLE_MS = 3 * CLAIM_WINDOW_MS;
+
+    private final AwsGatlingRunner runner;
+    private final String instanceType;
+    private final long leaseDurationMs;
+    private final long idleTtlMs;
+    private final String leaseId;
+    private final Map<String, Instance> leased = new HashMap<>();
+    private ScheduledExecutorService renewal;
+
+    private int reused;
+    private int launched;
+    private int conflicts;
+    private int reaped;
+    private long leaseTimeMs;
+
+    /**
+     * @param leaseOwner Readable name of the lease owner, e.g. the test name.
+     * @param leaseDurationMs Time after which a lease expires unless it is renewed.
+     * @param idleTtlMs Time after which a free instance is terminated.
+     */
+    public WarmPool(final AwsGatlingRunner runner, final String instanceType, final String leaseOwner, final long leaseDurationMs, final long idleTtlMs) {
+        this.runner = runner;
+        this.instanceType = instanceType;
+        this.leaseDurationMs = leaseDurationMs;
+        this.idleTtlMs = idleTtlMs;
+        this.leaseId = leaseOwner.replace(LEASE_SEPARATOR, "-") + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    /**
+     * Lease the given number of instances from the pool. If there are not enough free instances, the pool grows by
+     * launching the missing ones with the lease already applied.
+     *
+     * @return The leased instances by instance ID. Newly launched instances may still be pending.
+     */
+    public Map<String, Instance> lease(final int count, final Launcher launcher) {
+        final long startTimeMs = System.currentTimeMillis();
+
+        for (int round = 0; round < MAX_CLAIM_ROUNDS && this.leased.size() < count; round++) {
+            final long readTimeMs = System.currentTimeMillis();
+            final List<Instance> free = this.freeInstances(this.runner.findTaggedInstances(this.instanceType).values());
+            if (free.isEmpty()) {
+                break;
+            }
+            if (System.currentTimeMillis() - readTimeMs > CLAIM_WINDOW_MS) {
+                // The pool may have changed in the meantime, read it again.
+                continue;
+            }
+
+            final List<String> candidates = new ArrayList<>();
+            for (final Instance instance : free.subList(0, Math.min(count - this.leased.size(), free.size()))) {
+                candidates.add(instance.getInstanceId());
+            }
+            this.runner.tagInstances(candidates, this.newLeaseTag());
+            if (!sleep(CLAIM_SETTLE_MS)) {
+                // The claims expire by themselves.
+                throw new IllegalStateException("Interrupted while leasing instances from the warm pool");
+            }
+
+            for (final Instance instance : this.runner.describeInstances(candidates).values()) {
+                if (this.leaseId.equals(leaseOwner(instance))) {
+                    this.leased.put(instance.getInstanceId(), instance);
+                    this.reused++;
+                } else {
+                    System.out.format("Instance %s was leased by %s at the same time%n", instance.getInstanceId(), leaseOwner(instance));
+                    this.conflicts++;
+                }
+            }
+        }
+
+        final int missing = count - this.leased.size();
+        if (missing > 0) {
+            System.out.format("Warm pool has no free instances left, launching %d%n", missing);
+            final Map<String, Instance> newInstances = launcher.launch(missing, Collections.singletonList(this.newLeaseTag()));
+            this.leased.putAll(newInstances);
+            this.launched += newInstances.size();
+        }
+
+        this.leaseTimeMs = System.currentTimeMillis() - startTimeMs;
+        System.out.format("Leased %d instances as %s in %d ms%n", this.leased.size(), this.leaseId, this.leaseTimeMs);
+        return new HashMap<>(this.leased);
+    }
+
+    /**
+     * Keep extending the lease while the load test is running.
+     */
+    public void startRenewal() {
+        this.renewal = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "warm-pool-lease-renewal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final long periodMs = this.leaseDurationMs / 3;
+        this.renewal.scheduleAtFixedRate(this::renew, periodMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Return all leased instances to the pool.
+     */
+    public void release() {
+        this.stopRenewal();
+        release(this.runner, this.leased.keySet());
+    }
+
+    /**
+     * Keep the leased instances out of the pool while they run a detached load test, however long it takes. The lease
+     * never expires, the collect goal releases it or terminates the instances.
+     */
+    public void detach() {
+        this.stopRenewal();
+        if (!this.leased.isEmpty()) {
+            this.runner.tagInstances(this.leased.keySet(), new Tag(LEASE_TAG, this.leaseId + LEASE_SEPARATOR + NEVER_EXPIRES));
+        }
+    }
+
+    /**
+     * Return the given instances to the pool, whoever leased them.
+     */
+    public static void release(final AwsGatlingRunner runner, final Collection<String> instanceIds) {
+        if (instanceIds.isEmpty()) {
+            return;
+        }
+        runner.tagInstances(instanceIds, new Tag(IDLE_SINCE_TAG, Long.toString(System.currentTimeMillis())));
+        runner.untagInstances(instanceIds, LEASE_TAG);
+        System.out.format("Returned %d instances to the warm pool%n", instanceIds.size());
+    }
+
+    /**
+     * @return True if the instance is leased by a run whose lease didn't expire, e.g. by a detached load test.
+     */
+    public static boolean isLeased(final Instance instance) {
+        final String lease = tagValue(instance, LEASE_TAG);
+        return lease != null && leaseExpiry(lease) >= System.currentTimeMillis();
+    }
+
+    /**
+     * @return True if the instance is leased by a detached load test until the collect goal releases it.
+     */
+    public static boolean isDetached(final Instance instance) {
+        final String lease = tagValue(instance, LEASE_TAG);
+        return lease != null && leaseExpiry(lease) == NEVER_EXPIRES;
+    }
+
+    /**
+     * Stop extending the lease, waiting for a renewal in progress so it can't overwrite a later tag.
+     */
+    public void stopRenewal() {
+        if (this.renewal == null) {
+            return;
+        }
+        this.renewal.shutdown();
+        try {
+            this.renewal.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Terminate free instances which were idle for longer than the TTL. Instances without an idle timestamp, e.g. from
+     * ec2.keep.alive runs, start their TTL now. The instances are claimed with a lease first, like {@link #lease}
+     * does, and only the ones which still carry the reaper's lease afterwards are terminated.
+     */
+    public void reap() {
+        final long nowMs = System.currentTimeMillis();
+        final List<String> expired = new ArrayList<>();
+        final List<String> untracked = new ArrayList<>();
+
+        for (final Instance instance : this.freeInstances(this.runner.findTaggedInstances(this.instanceType).values())) {
+            final String idleSince = tagValue(instance, IDLE_SINCE_TAG);
+            if (idleSince == null) {
+                untracked.add(instance.getInstanceId());
+            } else if (nowMs - parseLong(idleSince) > this.idleTtlMs) {
+                expired.add(instance.getInstanceId());
+            }
+        }
+
+        if (!untracked.isEmpty()) {
+            this.runner.tagInstances(untracked, new Tag(IDLE_SINCE_TAG, Long.toString(nowMs)));
+        }
+        if (expired.isEmpty()) {
+            return;
+        }
+        if (System.currentTimeMillis() - nowMs > CLAIM_WINDOW_MS) {
+            // A claim written this late might land after a concurrent lease checked its own, try again next run.
+            return;
+        }
+
+        final String reaperId = this.leaseId + "-reaper";
+        this.runner.tagInstances(expired, new Tag(LEASE_TAG, reaperId + LEASE_SEPARATOR + (System.currentTimeMillis() + this.leaseDurationMs)));
+        if (!sleep(CLAIM_SETTLE_MS)) {
+            return;
+        }
+
+        final List<String> claimed = new ArrayList<>();
+        for (final Instance instance : this.runner.describeInstances(expired).values()) {
+            if (reaperId.equals(leaseOwner(instance))) {
+                claimed.add(instance.getInstanceId());
+            } else {
+                System.out.format("Instance %s was leased by %s while reaping it, keeping it%n", instance.getInstanceId(), leaseOwner(instance));
+                this.conflicts++;
+            }
+        }
+        if (!claimed.isEmpty()) {
+            System.out.format("Terminating %d instances idle for more than %d minutes%n", claimed.size(), TimeUnit.MILLISECONDS.toMinutes(this.idleTtlMs));
+            this.runner.terminateInstances(claimed);
+            this.reaped += claimed.size();
+        }
+    }
+
+    public void printStatistics() {
+        final Collection<Instance> pool = this.runner.findTaggedInstances(this.instanceType).values();
+        final int free = this.freeInstances(pool).size();
+        System.out.format("Warm pool: %d instances (%d free, %d leased), this run leased %d reused and %d launched instances in %d ms, claim conflicts: %d, reaped: %d%n",
+                pool.size(), free, pool.size() - free, this.reused, this.launched, this.leaseTimeMs, this.conflicts, this.reaped);
+    }
+
+    private void renew() {
+        try {
+            this.runner.tagInstances(this.leased.keySet(), this.newLeaseTag());
+        } catch (final RuntimeException e) {
+            System.err.println("Can't renew warm pool lease: " + e);
+        }
+    }
+
+    private List<Instance> freeInstances(final Collection<Instance> instances) {
+        final long nowMs = System.currentTimeMillis();
+        final List<Instance> free = new ArrayList<>();
+        for (final Instance instance : instances) {
+            final String lease = tagValue(instance, LEASE_TAG);
+            if (!this.leased.containsKey(instance.getInstanceId()) && (lease == null || leaseExpiry(lease) < nowMs)) {
+                free.add(instance);
+            }
+        }
+        return free;
+    }
+
+    private Tag newLeaseTag() {
+        return new Tag(LEASE_TAG, this.leaseId + LEASE_SEPARATOR + (System.currentTimeMillis() + this.leaseDurationMs));
+    }
+
+    private static String leaseOwner(final Instance instance) {
+        final String lease = tagValue(instance, LEASE_TAG);
+        return lease == null ? null : lease.substring(0, Math.max(0, lease.lastIndexOf(LEASE_SEPARATOR)));
+    }
+
+    private static long leaseExpiry(final String lease) {
+        return parseLong(lease.substring(lease.lastIndexOf(LEASE_SEPARATOR) + 1));
+    }
+
+    private static long parseLong(final String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (final NumberFormatException e) {
+            // Treat garbled tags as expired.
+            return 0;
+        }
+    }
+
+    private static String tagValue(final Instance instance, final String key) {
+        for (final Tag tag : instance.getTags()) {
+            if (key.equals(tag.getKey())) {
+                return tag.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return False if the thread was interrupted, with its interrupt flag set again.
+     */
+    private static boolean sleep(final long timeMs) {
+        try {
+            Thread.sleep(timeMs);
+            return true;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Launches new instances for the pool.
+     */
+    public interface Launcher {
+        Map<String, Instance> launch(int count, Collection<Tag> tags);
+    }
+}